@@ -0,0 +1,104 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.service.TaskArchiver;
+import com.challenge.taskdemo.service.TaskService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the same table with its DONE half left in place or moved to the archive, which is where a
+// long-running deployment ends up once history outgrows the working set
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ArchiveBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int SCAN_PAGE_SIZE = 1000;
+
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    @Param({"false", "true"})
+    private boolean archived;
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startApplication("tasks.cache.enabled=false");
+        BenchmarkData.populateTasks(context, rows);
+        taskService = context.getBean(TaskService.class);
+
+        if (archived) {
+            long start = System.nanoTime();
+            int moved = context.getBean(TaskArchiver.class).archive(Instant.now());
+            System.out.printf("%nArchived %d tasks in %d ms%n", moved, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<TaskDto> getPage() {
+        TaskQuery query = new TaskQuery();
+        query.setAfter(randomId());
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public List<TaskDto> findByNamePrefix() {
+        TaskQuery query = new TaskQuery();
+        query.setNameStartsWith("Task " + randomId());
+        query.setSort("name");
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public TaskDto get() {
+        return taskService.get(randomId());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int pageThroughAll() {
+        TaskQuery query = new TaskQuery();
+        query.setLimit(SCAN_PAGE_SIZE);
+        int total = 0;
+        List<TaskDto> page;
+
+        do {
+            page = taskService.find(query);
+            total += page.size();
+            if (!page.isEmpty()) {
+                query.setAfter(page.get(page.size() - 1).getId());
+            }
+        } while (page.size() == SCAN_PAGE_SIZE);
+
+        return total;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.TaskdemoApplication;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.search.TaskSearchIndex;
+import com.challenge.taskdemo.service.TaskStats;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+final class BenchmarkData {
+
+    private static final String POPULATE_TASKS = "INSERT INTO TASK (ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT, CHANGE_STAMP, DELETED) "
+            + "SELECT X, 'Task ' || X, 'Description of task ' || X, "
+            + "CASEWHEN(MOD(X, 2) = 0, 'DONE', 'TODO'), 0, DATEADD('SECOND', X, TIMESTAMP '2020-01-01 00:00:00'), X, FALSE "
+            + "FROM SYSTEM_RANGE(1, ?)";
+
+    private static final String RESTART_TASK_SEQUENCE = "ALTER SEQUENCE TASK_SEQ RESTART WITH %d";
+    private static final int TASK_SEQUENCE_ALLOCATION = 50;
+    private static final int POPULATE_BATCH_SIZE = 1000;
+
+    private BenchmarkData() {}
+
+    static ConfigurableApplicationContext startApplication(String... properties) {
+        return new SpringApplicationBuilder(TaskdemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run(arguments(properties));
+    }
+
+    // builder properties are only defaults, application.properties would win over them
+    private static String[] arguments(String... properties) {
+        String[] arguments = new String[properties.length];
+
+        for (int i = 0; i < properties.length; i++) {
+            arguments[i] = "--" + properties[i];
+        }
+
+        return arguments;
+    }
+
+    static void populateTasks(ConfigurableApplicationContext context, int rows) {
+        if (context.getBeanNamesForType(JdbcTemplate.class).length == 0) {
+            saveTasks(context.getBean(TaskRepository.class), rows);
+        } else {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            jdbcTemplate.update(POPULATE_TASKS, rows);
+            jdbcTemplate.execute(String.format(RESTART_TASK_SEQUENCE, rows + TASK_SEQUENCE_ALLOCATION + 1));
+        }
+
+        context.getBean(TaskStats.class).reconcile();
+        context.getBean(TaskSearchIndex.class).rebuild();
+    }
+
+    // storage without SQL gets the same rows through the repository
+    private static void saveTasks(TaskRepository taskRepository, int rows) {
+        List<Task> tasks = new ArrayList<>(POPULATE_BATCH_SIZE);
+
+        for (int x = 1; x <= rows; x++) {
+            Task task = new Task();
+            task.setName("Task " + x);
+            task.setDescription("Description of task " + x);
+            task.setStatus(x % 2 == 0 ? Status.DONE : Status.TODO);
+            tasks.add(task);
+
+            if (tasks.size() == POPULATE_BATCH_SIZE || x == rows) {
+                taskRepository.saveAll(tasks);
+                tasks.clear();
+            }
+        }
+    }
+}
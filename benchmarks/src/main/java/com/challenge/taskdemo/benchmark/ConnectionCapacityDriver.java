@@ -0,0 +1,264 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.TaskdemoApplication;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop load against the app in each execution mode, with every repository call held for a
+// fixed time to stand in for a slow database. Requests go out at a fixed rate whether or not earlier
+// ones have answered, so a server that runs out of threads shows up as timeouts and a growing number
+// of open connections instead of slowing the driver down. Latency counts from when a request was
+// due, not from when it was sent. Both modes run in this JVM, so they get the same heap: run it with
+// java -Xmx256m -cp target/benchmarks.jar com.challenge.taskdemo.benchmark.ConnectionCapacityDriver
+public class ConnectionCapacityDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final List<Integer> rates = new ArrayList<>();
+    private final int seconds;
+    private final int latencyMillis;
+    private final int tomcatThreads;
+    private final int poolSize;
+    private final int timeoutMillis;
+    private final int sloMillis;
+    private final int connections;
+    private final int rows;
+
+    private ConnectionCapacityDriver(Map<String, String> options) {
+        for (String rate : options.getOrDefault("rates", "250,500,1000,2000,4000").split(",")) {
+            rates.add(Integer.parseInt(rate.trim()));
+        }
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+        this.latencyMillis = Integer.parseInt(options.getOrDefault("latencyMillis", "50"));
+        this.tomcatThreads = Integer.parseInt(options.getOrDefault("tomcatThreads", "50"));
+        this.poolSize = Integer.parseInt(options.getOrDefault("poolSize", "200"));
+        this.timeoutMillis = Integer.parseInt(options.getOrDefault("timeoutMillis", "2000"));
+        this.sloMillis = Integer.parseInt(options.getOrDefault("sloMillis", "1000"));
+        this.connections = Integer.parseInt(options.getOrDefault("connections", "5000"));
+        this.rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+
+        Map<String, Object> report = new ConnectionCapacityDriver(options).run();
+
+        OBJECT_MAPPER.writeValue(System.out, report);
+        OBJECT_MAPPER.writeValue(new File(options.getOrDefault("output", "capacity-report.json")), report);
+    }
+
+    private Map<String, Object> run() throws Exception {
+        Map<String, Object> modes = new LinkedHashMap<>();
+
+        for (boolean async : new boolean[]{false, true}) {
+            ConfigurableApplicationContext context = startApplication(async);
+
+            try {
+                BenchmarkData.populateTasks(context, rows);
+                String url = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+                List<Map<String, Object>> steps = new ArrayList<>();
+                int capacity = 0;
+                // the first step again, unrecorded, so that neither mode is measured cold
+                step(url, rates.get(0));
+
+                for (int rate : rates) {
+                    Map<String, Object> step = step(url, rate);
+                    steps.add(step);
+
+                    if (withinSlo(step)) {
+                        capacity = rate;
+                    }
+                }
+
+                Map<String, Object> mode = new LinkedHashMap<>();
+                mode.put("capacityPerSecond", capacity);
+                mode.put("steps", steps);
+                modes.put(async ? "async" : "blocking", mode);
+            } finally {
+                context.close();
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        report.put("latencyMillis", latencyMillis);
+        report.put("tomcatThreads", tomcatThreads);
+        report.put("poolSize", poolSize);
+        report.put("sloMillis", sloMillis);
+        report.put("modes", modes);
+
+        return report;
+    }
+
+    private ConfigurableApplicationContext startApplication(boolean async) {
+        // the slow repositories are added by an initializer rather than a @Configuration, which the
+        // component scan of the JMH benchmarks that share this package would pick up as well
+        return new SpringApplicationBuilder(TaskdemoApplication.class)
+                .initializers(context -> context.getBeanFactory().addBeanPostProcessor(slowRepositories()))
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run("--server.port=0",
+                        "--server.tomcat.max-threads=" + tomcatThreads,
+                        "--spring.datasource.hikari.maximum-pool-size=" + connections,
+                        "--tasks.async.enabled=" + async,
+                        "--tasks.async.pool-size=" + poolSize,
+                        "--tasks.async.max-concurrency=" + connections,
+                        "--tasks.cache.enabled=false",
+                        "--tasks.admission.enabled=false",
+                        "--tasks.metrics.enabled=false");
+    }
+
+    private Map<String, Object> step(String url, int rate) throws Exception {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build();
+        ThreadPoolExecutor senders = new ThreadPoolExecutor(0, connections, 10, TimeUnit.SECONDS, new SynchronousQueue<>());
+        Recorder recorder = new Recorder();
+        int total = rate * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(connections)
+                .setMaxConnPerRoute(connections)
+                .build()) {
+            long start = System.nanoTime();
+
+            for (int i = 0; i < total; i++) {
+                long due = start + i * interval;
+                LockSupport.parkNanos(due - System.nanoTime());
+                String id = String.valueOf(ThreadLocalRandom.current().nextInt(1, rows + 1));
+
+                try {
+                    senders.execute(() -> send(client, url + "/tasks/" + id, due, recorder));
+                } catch (RejectedExecutionException rejectedExecutionException) {
+                    // every connection the driver may open is waiting for an answer
+                    recorder.record(System.nanoTime() - due, false);
+                }
+            }
+
+            senders.shutdown();
+            senders.awaitTermination(timeoutMillis * 2L, TimeUnit.MILLISECONDS);
+        }
+
+        return recorder.summary(rate);
+    }
+
+    private void send(CloseableHttpClient client, String url, long due, Recorder recorder) {
+        recorder.opened();
+
+        try {
+            HttpResponse response = client.execute(new HttpGet(url));
+            EntityUtils.consume(response.getEntity());
+            recorder.record(System.nanoTime() - due, response.getStatusLine().getStatusCode() / 100 == 2);
+        } catch (IOException ioException) {
+            recorder.record(System.nanoTime() - due, false);
+        } finally {
+            recorder.closed();
+        }
+    }
+
+    private boolean withinSlo(Map<String, Object> step) {
+        return (int) step.get("errors") <= (int) step.get("requests") / 100 && (double) step.get("p99Millis") <= sloMillis;
+    }
+
+    // every repository call waits as long as a database across the network would take to answer
+    private BeanPostProcessor slowRepositories() {
+        MethodInterceptor slowDown = invocation -> {
+            Thread.sleep(latencyMillis);
+
+            return invocation.proceed();
+        };
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof TaskRepository)) {
+                    return bean;
+                }
+
+                ProxyFactory proxyFactory = new ProxyFactory(TaskRepository.class, slowDown);
+                proxyFactory.setTarget(bean);
+
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+
+    private static class Recorder {
+
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger peakOpen = new AtomicInteger();
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private int errors;
+
+        void opened() {
+            peakOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+        }
+
+        void closed() {
+            open.decrementAndGet();
+        }
+
+        synchronized void record(long nanos, boolean success) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!success) {
+                errors++;
+            }
+        }
+
+        synchronized Map<String, Object> summary(int rate) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("ratePerSecond", rate);
+            summary.put("requests", count);
+            summary.put("errors", errors);
+            summary.put("peakOpenConnections", peakOpen.get());
+            summary.put("p50Millis", percentile(sorted, 0.50));
+            summary.put("p99Millis", percentile(sorted, 0.99));
+
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+        }
+    }
+}
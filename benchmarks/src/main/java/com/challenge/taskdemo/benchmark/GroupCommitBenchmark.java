@@ -0,0 +1,51 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.service.TaskUpdateBatcher;
+import com.challenge.taskdemo.util.Status;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// many clients flipping statuses at once, each one waits for its change to be committed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(64)
+public class GroupCommitBenchmark {
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    @Param({"100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private TaskUpdateBatcher taskUpdateBatcher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startApplication("tasks.group-commit.enabled=" + groupCommit, "tasks.metrics.enabled=false");
+        BenchmarkData.populateTasks(context, rows);
+        taskUpdateBatcher = context.getBean(TaskUpdateBatcher.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public TaskDto updateStatus() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(random.nextBoolean() ? Status.DONE : Status.TODO);
+
+        return taskUpdateBatcher.update(random.nextLong(1, rows + 1), taskDto, null);
+    }
+}
@@ -0,0 +1,65 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.service.TaskService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// every thread asks for the same task, like clients following one notification
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Threads(16)
+public class HotTaskBenchmark {
+
+    @Param({"false", "true"})
+    private boolean cache;
+
+    @Param({"100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+    private long hotId;
+    private long missingId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startApplication("tasks.cache.enabled=" + cache, "tasks.metrics.enabled=false");
+        BenchmarkData.populateTasks(context, rows);
+        taskService = context.getBean(TaskService.class);
+        hotId = rows / 2;
+        missingId = rows * 10L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public TaskDto getHot() {
+        return taskService.get(hotId);
+    }
+
+    @Benchmark
+    public TaskDto getHotFields() {
+        return taskService.get(hotId, Collections.singleton("name"));
+    }
+
+    @Benchmark
+    public boolean getMissing() {
+        try {
+            return taskService.get(missingId) != null;
+        } catch (TaskNotFoundException taskNotFoundException) {
+            return false;
+        }
+    }
+}
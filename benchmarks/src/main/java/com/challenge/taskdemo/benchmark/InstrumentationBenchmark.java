@@ -0,0 +1,67 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.util.Status;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class InstrumentationBenchmark {
+
+    private static final int ROWS = 100000;
+
+    @Param({"true", "false"})
+    private boolean metrics;
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startApplication("tasks.metrics.enabled=" + metrics, "tasks.cache.enabled=false");
+        BenchmarkData.populateTasks(context, ROWS);
+        taskService = context.getBean(TaskService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public TaskDto get() {
+        return taskService.get(randomId());
+    }
+
+    @Benchmark
+    public TaskDto update() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(ThreadLocalRandom.current().nextBoolean() ? Status.DONE : Status.TODO);
+
+        return taskService.update(randomId(), taskDto);
+    }
+
+    @Benchmark
+    public List<TaskDto> getPage() {
+        TaskQuery query = new TaskQuery();
+        query.setAfter(randomId());
+        query.setLimit(100);
+
+        return taskService.find(query);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, ROWS + 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.util.Status;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+
+    private List<TaskDto> tasks;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory(format)).build();
+        writer = objectMapper.writerFor(new TypeReference<List<TaskDto>>() {});
+        reader = objectMapper.readerFor(new TypeReference<List<TaskDto>>() {});
+
+        tasks = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            TaskDto taskDto = new TaskDto();
+            taskDto.setId((long) i);
+            taskDto.setName("Task " + i);
+            taskDto.setDescription("Description of task " + i);
+            taskDto.setStatus(i % 2 == 0 ? Status.DONE : Status.TODO);
+            tasks.add(taskDto);
+        }
+
+        json = writer.writeValueAsBytes(tasks);
+
+        // payload size is what the formats trade the encoding cost against, so report it next to the timings
+        System.out.println(format + " payload for " + size + " tasks: " + json.length + " bytes, " + gzip().length + " bytes gzipped");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(tasks);
+    }
+
+    @Benchmark
+    public List<TaskDto> deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] serializeGzipped() throws IOException {
+        return gzip();
+    }
+
+    private byte[] gzip() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            writer.writeValue(gzipOutputStream, tasks);
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+            case "cbor":
+                return new CBORFactory();
+            case "smile":
+                return new SmileFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+}
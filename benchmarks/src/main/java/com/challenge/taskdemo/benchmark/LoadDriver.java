@@ -0,0 +1,180 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.*;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LoadDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final String url;
+    private final int threads;
+    private final int seconds;
+    private final int seed;
+
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final List<Long> ids = new CopyOnWriteArrayList<>();
+
+    private LoadDriver(Map<String, String> options) {
+        this.url = options.getOrDefault("url", "http://localhost:8083");
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        this.seed = Integer.parseInt(options.getOrDefault("seed", "1000"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+
+        Map<String, Object> report = new LoadDriver(options).run();
+
+        OBJECT_MAPPER.writeValue(System.out, report);
+        OBJECT_MAPPER.writeValue(new File(options.getOrDefault("output", "load-report.json")), report);
+    }
+
+    private Map<String, Object> run() throws Exception {
+        try (CloseableHttpClient client = HttpClients.custom().setMaxConnTotal(threads).setMaxConnPerRoute(threads).build()) {
+            for (int i = 0; i < seed; i++) {
+                Long id = create(client);
+                if (id == null) {
+                    throw new IllegalStateException("Could not seed tasks at " + url);
+                }
+                ids.add(id);
+            }
+            recorders.clear();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long start = System.nanoTime();
+
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        next(client);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+
+            return report(System.nanoTime() - start);
+        }
+    }
+
+    private void next(CloseableHttpClient client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int dice = random.nextInt(100);
+        Long id = ids.get(random.nextInt(ids.size()));
+
+        if (dice < 70) {
+            execute(client, "GET /tasks/{id}", new HttpGet(url + "/tasks/" + id));
+        } else if (dice < 80) {
+            execute(client, "GET /tasks?limit", new HttpGet(url + "/tasks?limit=100&after=" + id));
+        } else if (dice < 90) {
+            HttpPatch patch = new HttpPatch(url + "/tasks/" + id);
+            patch.setEntity(new StringEntity("{\"status\":\"" + (random.nextBoolean() ? "DONE" : "TODO") + "\"}", ContentType.APPLICATION_JSON));
+            execute(client, "PATCH /tasks/{id}", patch);
+        } else {
+            Long created = create(client);
+            if (created != null) {
+                ids.add(created);
+            }
+        }
+    }
+
+    private Long create(CloseableHttpClient client) throws IOException {
+        HttpPost post = new HttpPost(url + "/tasks");
+        post.setEntity(new StringEntity("{\"name\":\"Load task\",\"description\":\"Task created by the load driver\"}", ContentType.APPLICATION_JSON));
+
+        String body = execute(client, "POST /tasks", post);
+
+        return body == null ? null : OBJECT_MAPPER.readValue(body, TaskDto.class).getId();
+    }
+
+    // the body of a 2xx response, null for any other status, which is counted as an error
+    private String execute(CloseableHttpClient client, String endpoint, HttpUriRequest request) throws IOException {
+        long start = System.nanoTime();
+        HttpResponse response = client.execute(request);
+        String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+        long elapsed = System.nanoTime() - start;
+        boolean success = response.getStatusLine().getStatusCode() / 100 == 2;
+
+        recorders.computeIfAbsent(endpoint, key -> new LatencyRecorder()).record(elapsed, !success);
+
+        return success ? body : null;
+    }
+
+    private Map<String, Object> report(long elapsedNanos) {
+        Map<String, Object> endpoints = new TreeMap<>();
+        recorders.forEach((endpoint, recorder) -> endpoints.put(endpoint, recorder.summary(elapsedNanos)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("url", url);
+        report.put("threads", threads);
+        report.put("seconds", seconds);
+        report.put("endpoints", endpoints);
+
+        return report;
+    }
+
+    private static class LatencyRecorder {
+
+        private long[] latencies = new long[1 << 16];
+        private int count;
+        private int errors;
+
+        synchronized void record(long nanos, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (error) {
+                errors++;
+            }
+        }
+
+        synchronized Map<String, Object> summary(long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", count);
+            summary.put("errors", errors);
+            summary.put("throughputPerSecond", count / (elapsedNanos / 1e9));
+            summary.put("p50Millis", percentile(sorted, 0.50));
+            summary.put("p99Millis", percentile(sorted, 0.99));
+            summary.put("p999Millis", percentile(sorted, 0.999));
+            summary.put("maxMillis", count == 0 ? 0 : sorted[count - 1] / 1e6);
+
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.util.Mapper;
+import com.challenge.taskdemo.util.Status;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    private Mapper mapper;
+    private ModelMapper modelMapper;
+
+    private Task task;
+    private TaskDto taskDto;
+
+    @Setup
+    public void setUp() {
+        mapper = new Mapper();
+        modelMapper = new ModelMapper();
+
+        task = new Task();
+        task.setId(42L);
+        task.setName("Benchmark task");
+        task.setDescription("Task used by the mapping benchmark");
+        task.setStatus(Status.TODO);
+
+        taskDto = mapper.convertToDto(task);
+    }
+
+    @Benchmark
+    public TaskDto convertToDto() {
+        return mapper.convertToDto(task);
+    }
+
+    @Benchmark
+    public TaskDto convertToDto_modelMapper() {
+        return modelMapper.map(task, TaskDto.class);
+    }
+
+    @Benchmark
+    public Task convertToEntity() {
+        return mapper.convertToEntity(taskDto);
+    }
+
+    @Benchmark
+    public Task convertToEntity_modelMapper() {
+        return modelMapper.map(taskDto, Task.class);
+    }
+
+    @Benchmark
+    public Task merge() {
+        return mapper.merge(taskDto, new Task());
+    }
+
+    @Benchmark
+    public Task merge_modelMapper() {
+        Task target = new Task();
+        modelMapper.map(taskDto, target);
+        return target;
+    }
+}
@@ -0,0 +1,119 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskClaimDto;
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.service.TaskStats;
+import com.challenge.taskdemo.util.Status;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// run with -t to compare how each storage holds up under concurrent writers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class StorageBenchmark {
+
+    // short enough that claimed tasks come back well within an iteration
+    private static final Duration CLAIM_LEASE = Duration.ofMillis(10);
+    private static final int CLAIM_SIZE = 10;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"jpa", "log"})
+    private String storage;
+
+    @Param({"100000"})
+    private int rows;
+
+    // only read by the log storage
+    @Param({"1"})
+    private int shards;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+    private TaskStats taskStats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tasks");
+
+        // the cache is off so that reads reach the storage
+        context = BenchmarkData.startApplication(
+                "tasks.storage=" + storage,
+                "tasks.storage.log.directory=" + directory,
+                "tasks.storage.log.shards=" + shards,
+                "spring.autoconfigure.exclude=" + (storage.equals("log") ? "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration" : ""),
+                "tasks.cache.enabled=false",
+                "tasks.metrics.enabled=false");
+        BenchmarkData.populateTasks(context, rows);
+        taskService = context.getBean(TaskService.class);
+        taskStats = context.getBean(TaskStats.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public TaskDto add() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setName("Benchmark task");
+        taskDto.setDescription("Task created by the storage benchmark");
+
+        return taskService.add(taskDto);
+    }
+
+    @Benchmark
+    public TaskDto update() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(ThreadLocalRandom.current().nextBoolean() ? Status.DONE : Status.TODO);
+
+        return taskService.update(randomId(), taskDto);
+    }
+
+    @Benchmark
+    public TaskDto get() {
+        return taskService.get(randomId());
+    }
+
+    // half of the populated tasks are TODO, so claims and status pages have plenty to pick from
+    @Benchmark
+    public TaskClaimDto claim() {
+        return taskService.claim(CLAIM_SIZE, CLAIM_LEASE);
+    }
+
+    @Benchmark
+    public List<TaskDto> listByStatus() {
+        TaskQuery query = new TaskQuery();
+        query.setStatus(Status.TODO);
+        query.setAfter(randomId());
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public void reconcileStats() {
+        taskStats.reconcile();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+}
@@ -0,0 +1,201 @@
+package com.challenge.taskdemo.benchmark;
+
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.dto.TaskSearchResultDto;
+import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.util.Status;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TaskServiceBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 100;
+    private static final int SCAN_PAGE_SIZE = 1000;
+    private static final int CLAIM_SIZE = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private TaskService taskService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startApplication();
+        BenchmarkData.populateTasks(context, rows);
+        taskService = context.getBean(TaskService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public TaskDto add() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setName("Benchmark task");
+        taskDto.setDescription("Task created by the service benchmark");
+
+        return taskService.add(taskDto);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<TaskBatchResultDto> addAll() {
+        List<TaskDto> tasksDto = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            TaskDto taskDto = new TaskDto();
+            taskDto.setName("Benchmark task " + i);
+            taskDto.setDescription("Task created by the batch benchmark");
+            tasksDto.add(taskDto);
+        }
+
+        return taskService.addAll(tasksDto);
+    }
+
+    @Benchmark
+    public TaskDto update() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(ThreadLocalRandom.current().nextBoolean() ? Status.DONE : Status.TODO);
+
+        return taskService.update(randomId(), taskDto);
+    }
+
+    @Benchmark
+    public TaskDto get() {
+        return taskService.get(randomId());
+    }
+
+    @Benchmark
+    public List<TaskDto> getPage() {
+        TaskQuery query = new TaskQuery();
+        query.setAfter(randomId());
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public List<TaskDto> getPageWithFields() {
+        TaskQuery query = new TaskQuery();
+        query.setFields("name,status");
+        query.setAfter(randomId());
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public List<TaskDto> findByStatus() {
+        TaskQuery query = new TaskQuery();
+        query.setStatus(Status.DONE);
+        query.setAfter(randomId());
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public List<TaskDto> findByNamePrefix() {
+        TaskQuery query = new TaskQuery();
+        query.setNameStartsWith("Task " + randomId());
+        query.setSort("name");
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public List<TaskDto> findCreatedBetween() {
+        Instant createdAfter = Instant.parse("2020-01-01T00:00:00Z").plusSeconds(randomId());
+
+        TaskQuery query = new TaskQuery();
+        query.setCreatedAfter(createdAfter);
+        query.setCreatedBefore(createdAfter.plusSeconds(PAGE_SIZE));
+        query.setSort("createdAt,desc");
+        query.setLimit(PAGE_SIZE);
+
+        return taskService.find(query);
+    }
+
+    @Benchmark
+    public TaskSearchResultDto search() {
+        return taskService.search(String.valueOf(randomId()), 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public TaskSearchResultDto searchWithCommonWord() {
+        return taskService.search("task " + randomId(), 0, PAGE_SIZE);
+    }
+
+    // run with -t to compare claim throughput across worker counts
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(CLAIM_SIZE)
+    public TaskClaimDto claimAndNack() {
+        TaskClaimDto claim = taskService.claim(CLAIM_SIZE, Duration.ofMinutes(1));
+
+        for (TaskDto taskDto : claim.getTasks()) {
+            taskService.nack(taskDto.getId(), claim.getLeaseId());
+        }
+
+        return claim;
+    }
+
+    @Benchmark
+    public TaskChangesDto getChanges() {
+        return taskService.getChanges(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Map<Status, Long> getStats() {
+        return taskService.getStats();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int pageThroughAll() {
+        TaskQuery query = new TaskQuery();
+        query.setLimit(SCAN_PAGE_SIZE);
+        int total = 0;
+        List<TaskDto> page;
+
+        do {
+            page = taskService.find(query);
+            total += page.size();
+            if (!page.isEmpty()) {
+                query.setAfter(page.get(page.size() - 1).getId());
+            }
+        } while (page.size() == SCAN_PAGE_SIZE);
+
+        return total;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+}
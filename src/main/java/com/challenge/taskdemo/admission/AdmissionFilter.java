@@ -0,0 +1,145 @@
+package com.challenge.taskdemo.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private static final Duration IDLE_CLIENT_EXPIRY = Duration.ofMinutes(10);
+    private static final long MAXIMUM_CLIENTS = 100000;
+
+    private final Cache<String, TokenBucket> buckets;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final double ratePerSecond;
+    private final int burst;
+    private final double lowPriorityShare;
+    private final ClientResolver clientResolver;
+
+    public AdmissionFilter(ConcurrencyLimit concurrencyLimit, double ratePerSecond, int burst, double lowPriorityShare,
+                           ClientResolver clientResolver) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_CLIENTS)
+                .expireAfterAccess(IDLE_CLIENT_EXPIRY)
+                .build();
+        this.concurrencyLimit = concurrencyLimit;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.lowPriorityShare = lowPriorityShare;
+        this.clientResolver = clientResolver;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        long wait = buckets.get(clientResolver.resolve(request), client -> new TokenBucket(ratePerSecond, burst, start)).tryAcquire(start);
+
+        if (wait > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, wait);
+            return;
+        }
+
+        String path = path(request);
+
+        // event subscriptions stay open for minutes and would pin a slot of the limit each
+        if (path.equals("/tasks/events")) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        boolean lowPriority = isLowPriority(request.getMethod(), path);
+
+        if (!concurrencyLimit.tryAcquire(lowPriority ? lowPriorityShare : 1)) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+            return;
+        }
+
+        boolean async = false;
+
+        try {
+            filterChain.doFilter(request, response);
+
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(lowPriority, start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release(lowPriority, start);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("tasks.admission.limit", concurrencyLimit, ConcurrencyLimit::getLimit).register(registry);
+        Gauge.builder("tasks.admission.in-flight", concurrencyLimit, ConcurrencyLimit::getInFlight).register(registry);
+    }
+
+    // full listings and search are the expensive reads, they give way to writes and single gets
+    static boolean isLowPriority(String method, String path) {
+        return HttpMethod.GET.matches(method) && (path.equals("/tasks") || path.equals("/tasks/search"));
+    }
+
+    private void release(boolean lowPriority, long start) {
+        // only latency of the requests the limit protects drives it, listings are slow even on an idle server
+        if (lowPriority) {
+            concurrencyLimit.release();
+        } else {
+            concurrencyLimit.release(System.nanoTime() - start);
+        }
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos) {
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+    }
+
+    private class ReleasingListener implements AsyncListener {
+
+        private final boolean lowPriority;
+        private final long start;
+
+        private ReleasingListener(boolean lowPriority, long start) {
+            this.lowPriority = lowPriority;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(lowPriority, start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {}
+
+        @Override
+        public void onError(AsyncEvent event) {}
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {}
+    }
+}
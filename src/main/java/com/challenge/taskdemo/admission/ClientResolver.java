@@ -0,0 +1,26 @@
+package com.challenge.taskdemo.admission;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Set;
+
+// who a request comes from: anyone can send the client header, so it only names the client when a trusted proxy set it
+public class ClientResolver {
+
+    private final String clientHeader;
+    private final Set<String> trustedProxies;
+
+    public ClientResolver(String clientHeader, Set<String> trustedProxies) {
+        this.clientHeader = clientHeader;
+        this.trustedProxies = trustedProxies;
+    }
+
+    public String resolve(HttpServletRequest request) {
+        if (!trustedProxies.contains(request.getRemoteAddr())) {
+            return request.getRemoteAddr();
+        }
+
+        String client = request.getHeader(clientHeader);
+
+        return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+    }
+}
@@ -0,0 +1,77 @@
+package com.challenge.taskdemo.admission;
+
+public class ConcurrencyLimit {
+
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 1.0 / 600;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private double limit;
+    private int inFlight;
+    private double shortRtt;
+    private double longRtt;
+
+    public ConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+    }
+
+    // share < 1 keeps the rest of the limit free for requests that may use all of it
+    public synchronized boolean tryAcquire(double share) {
+        if (inFlight >= Math.max(1, (int) (limit * share))) {
+            return false;
+        }
+
+        inFlight++;
+
+        return true;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    public synchronized void release(long rttNanos) {
+        int sampledInFlight = inFlight--;
+
+        if (shortRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+
+            return;
+        }
+
+        shortRtt += (rttNanos - shortRtt) * SHORT_WEIGHT;
+        longRtt += (rttNanos - longRtt) * LONG_WEIGHT;
+
+        // after a spike the long average lags behind, let it catch up instead of holding the limit down
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        // latency of a mostly idle server says nothing about how far the limit can go
+        if (sampledInFlight < limit / 2) {
+            return;
+        }
+
+        // queueing shows up as short latency drifting above the long-term baseline
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
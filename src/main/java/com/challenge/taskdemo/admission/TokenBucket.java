@@ -0,0 +1,33 @@
+package com.challenge.taskdemo.admission;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucket {
+
+    private final double nanosPerToken;
+    private final double burst;
+
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double ratePerSecond, int burst, long now) {
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    // returns 0 when a token was taken, otherwise the nanos until the next one
+    public synchronized long tryAcquire(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) / nanosPerToken);
+        refilledAt = now;
+
+        if (tokens >= 1) {
+            tokens--;
+
+            return 0;
+        }
+
+        return (long) Math.ceil((1 - tokens) * nanosPerToken);
+    }
+}
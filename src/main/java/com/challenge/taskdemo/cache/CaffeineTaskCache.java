@@ -0,0 +1,87 @@
+package com.challenge.taskdemo.cache;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.routing.ReadSession;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+public class CaffeineTaskCache implements TaskCache, MeterBinder {
+
+    private static final int WRITE_STRIPES = 1024;
+
+    private final Cache<Long, TaskDto> cache;
+    private final Cache<Long, Boolean> missing;
+    // puts per stripe of ids; a load that saw a put to its stripe does not remember a miss
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+
+    public CaffeineTaskCache(long maximumSize, Duration expireAfterWrite, Duration expireMissingAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireMissingAfterWrite)
+                .build();
+    }
+
+    // callers of the same id already wait for one load, the missing ids make a herd of misses stop at the first one too
+    @Override
+    public TaskDto get(Long id, Function<Long, TaskDto> loader) {
+        if (missing.getIfPresent(id) != null) {
+            throw new TaskNotFoundException();
+        }
+
+        return cache.get(id, key -> {
+            if (missing.getIfPresent(key) != null) {
+                throw new TaskNotFoundException();
+            }
+
+            long generation = writes.get(stripe(key));
+
+            // a lagging replica would leave a stale copy here until it expires
+            try {
+                return ReadSession.onPrimary(() -> loader.apply(key));
+            } catch (TaskNotFoundException taskNotFoundException) {
+                // checked under the same lock put() takes to clear the miss, so a put that is
+                // counted after the check also clears what is recorded here
+                missing.asMap().compute(key, (missingKey, current) -> writes.get(stripe(key)) == generation ? Boolean.TRUE : current);
+                throw taskNotFoundException;
+            }
+        });
+    }
+
+    @Override
+    public void put(TaskDto taskDto) {
+        writes.incrementAndGet(stripe(taskDto.getId()));
+        missing.invalidate(taskDto.getId());
+        cache.asMap().merge(taskDto.getId(), taskDto, (current, candidate) -> isOlder(candidate, current) ? current : candidate);
+    }
+
+    @Override
+    public void evict(Long id) {
+        cache.invalidate(id);
+    }
+
+    private static int stripe(Long id) {
+        return (int) (id & (WRITE_STRIPES - 1));
+    }
+
+    private static boolean isOlder(TaskDto candidate, TaskDto current) {
+        return candidate.getVersion() != null && current.getVersion() != null && candidate.getVersion() < current.getVersion();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "tasks");
+    }
+}
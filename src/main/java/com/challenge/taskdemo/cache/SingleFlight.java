@@ -0,0 +1,58 @@
+package com.challenge.taskdemo.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    // callers arriving while a load for the same key runs wait for it and get its value or its exception
+    public V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<V>();
+        CompletableFuture<V> leader = flights.putIfAbsent(key, flight);
+
+        if (leader != null) {
+            return join(leader);
+        }
+
+        // the flight leaves the map before it completes, so nobody arriving afterwards gets its value
+        try {
+            V value = loader.apply(key);
+            flights.remove(key, flight);
+            flight.complete(value);
+
+            return value;
+        } catch (RuntimeException | Error exception) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    // after a write, callers arriving later start a load of their own instead of joining one
+    // that may have read from before the write; the load already running still completes
+    public void forget(Predicate<? super K> keys) {
+        flights.keySet().removeIf(keys);
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException completionException) {
+            if (completionException.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) completionException.getCause();
+            }
+
+            if (completionException.getCause() instanceof Error) {
+                throw (Error) completionException.getCause();
+            }
+
+            throw completionException;
+        }
+    }
+}
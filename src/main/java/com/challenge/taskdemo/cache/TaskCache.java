@@ -0,0 +1,14 @@
+package com.challenge.taskdemo.cache;
+
+import com.challenge.taskdemo.dto.TaskDto;
+
+import java.util.function.Function;
+
+public interface TaskCache {
+
+    TaskDto get(Long id, Function<Long, TaskDto> loader);
+
+    void put(TaskDto taskDto);
+
+    void evict(Long id);
+}
@@ -0,0 +1,59 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.admission.AdmissionFilter;
+import com.challenge.taskdemo.admission.ClientResolver;
+import com.challenge.taskdemo.admission.ConcurrencyLimit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfig {
+
+    @Value("${tasks.admission.client-header:X-Client-Id}")
+    private String clientHeader;
+
+    @Value("${tasks.admission.trusted-proxies:}")
+    private Set<String> trustedProxies;
+
+    @Value("${tasks.admission.rate:500}")
+    private double rate;
+
+    @Value("${tasks.admission.burst:1000}")
+    private int burst;
+
+    @Value("${tasks.admission.initial-limit:50}")
+    private int initialLimit;
+
+    @Value("${tasks.admission.min-limit:8}")
+    private int minLimit;
+
+    @Value("${tasks.admission.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${tasks.admission.tolerance:2.0}")
+    private double tolerance;
+
+    @Value("${tasks.admission.low-priority-share:0.5}")
+    private double lowPriorityShare;
+
+    @Bean
+    public AdmissionFilter admissionFilter() {
+        ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance);
+
+        return new AdmissionFilter(concurrencyLimit, rate, burst, lowPriorityShare, new ClientResolver(clientHeader, trustedProxies));
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilterRegistration(AdmissionFilter admissionFilter) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<AdmissionFilter>(admissionFilter);
+        registration.addUrlPatterns("/tasks", "/tasks/*");
+
+        return registration;
+    }
+}
@@ -0,0 +1,78 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.controller.TaskController;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.concurrent.ThreadFactory;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.async.enabled", havingValue = "true")
+public class AsyncConfig implements WebMvcConfigurer {
+
+    @Value("${tasks.async.pool-size:200}")
+    private int poolSize;
+
+    @Value("${tasks.async.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${tasks.async.max-concurrency:1000}")
+    private int maxConcurrency;
+
+    @Value("${tasks.async.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    // virtual threads are too cheap to pool and only capped; platform threads stay in a bounded pool
+    // with a bounded queue, and what does not fit either is rejected with 503
+    @Bean
+    public AsyncTaskExecutor taskExecutor() {
+        ThreadFactory virtualThreadFactory = virtualThreads ? virtualThreadFactory() : null;
+
+        if (virtualThreadFactory != null) {
+            return new ConcurrentTaskExecutor(new ThreadPerTaskExecutor(virtualThreadFactory, maxConcurrency));
+        }
+
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadNamePrefix("task-async-");
+        taskExecutor.setCorePoolSize(poolSize);
+        taskExecutor.setMaxPoolSize(poolSize);
+        taskExecutor.setQueueCapacity(queueCapacity);
+
+        return taskExecutor;
+    }
+
+    @Bean
+    public WebMvcRegistrations offloadingRegistrations() {
+        return new WebMvcRegistrations() {
+            @Override
+            public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter() {
+                return new OffloadingHandlerAdapter(TaskController.class);
+            }
+        };
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(taskExecutor());
+    }
+
+    // Thread.ofVirtual() only exists on JDK 21+, the application is built for Java 8
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.cache.CaffeineTaskCache;
+import com.challenge.taskdemo.cache.NoOpTaskCache;
+import com.challenge.taskdemo.cache.TaskCache;
+import com.challenge.taskdemo.routing.RecentWrites;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "tasks.cache.enabled", havingValue = "true", matchIfMissing = true)
+    public CaffeineTaskCache taskCache(@Value("${tasks.cache.maximum-size:10000}") long maximumSize,
+                               @Value("${tasks.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                               @Value("${tasks.cache.expire-missing-after-write:2s}") Duration expireMissingAfterWrite) {
+        return new CaffeineTaskCache(maximumSize, expireAfterWrite, expireMissingAfterWrite);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(TaskCache.class)
+    public TaskCache noOpTaskCache(RecentWrites recentWrites) {
+        return new NoOpTaskCache(recentWrites);
+    }
+}
@@ -0,0 +1,72 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.metrics.SqlCounter;
+import com.challenge.taskdemo.metrics.SqlMetricsInterceptor;
+import com.challenge.taskdemo.metrics.TimedInvocationInterceptor;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.util.Mapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    public MetricsConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public static BeanPostProcessor timedComponentsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        TimedInvocationInterceptor repositoryTimer = new TimedInvocationInterceptor("tasks.repository", meterRegistry);
+        TimedInvocationInterceptor mapperTimer = new TimedInvocationInterceptor("tasks.mapper", meterRegistry);
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof TaskRepository) {
+                    ProxyFactory proxyFactory = new ProxyFactory(TaskRepository.class, repositoryTimer);
+                    proxyFactory.setTarget(bean);
+
+                    return proxyFactory.getProxy();
+                }
+
+                if (bean instanceof Mapper) {
+                    ProxyFactory proxyFactory = new ProxyFactory(bean);
+                    proxyFactory.setProxyTargetClass(true);
+                    proxyFactory.addAdvice(mapperTimer);
+
+                    return proxyFactory.getProxy();
+                }
+
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer sqlCounterCustomizer() {
+        SqlCounter sqlCounter = new SqlCounter();
+
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlCounter);
+            properties.put(AvailableSettings.INTERCEPTOR, sqlCounter);
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        meterRegistry.ifAvailable(available -> registry.addInterceptor(new SqlMetricsInterceptor(available)));
+    }
+}
@@ -1,14 +0,0 @@
-package com.challenge.taskdemo.config;
-
-import org.modelmapper.ModelMapper;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class ModelMapperConfig {
-
-    @Bean(name = "modelMapper")
-    public ModelMapper getModelMapper() {
-        return new ModelMapper();
-    }
-}
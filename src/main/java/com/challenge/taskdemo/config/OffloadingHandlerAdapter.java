@@ -0,0 +1,76 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.metrics.SqlCounter;
+import com.challenge.taskdemo.routing.ReadSession;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+// Runs the handler methods of one controller on Spring MVC's async executor. Arguments are still
+// resolved and validated on the servlet thread; the method itself becomes a Callable, which Spring
+// MVC hands to the executor once the request has gone async, and its result is written as if the
+// method had returned it directly. Methods that already answer asynchronously are left alone.
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    private final Class<?> controller;
+
+    public OffloadingHandlerAdapter(Class<?> controller) {
+        this.controller = controller;
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        if (handlerMethod.getBeanType() != controller || answersAsynchronously(handlerMethod)) {
+            return super.createInvocableHandlerMethod(handlerMethod);
+        }
+
+        return new OffloadedHandlerMethod(handlerMethod);
+    }
+
+    private static boolean answersAsynchronously(HandlerMethod handlerMethod) {
+        ResolvableType returnType = ResolvableType.forMethodReturnType(handlerMethod.getMethod());
+        Class<?> body = HttpEntity.class.isAssignableFrom(returnType.toClass()) ? returnType.getGeneric().toClass() : returnType.toClass();
+
+        return ResponseBodyEmitter.class.isAssignableFrom(body) || StreamingResponseBody.class.isAssignableFrom(body);
+    }
+
+    private static class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        private OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        // the request, its SQL counts and its read session go along to the executor thread
+        @Override
+        protected Object doInvoke(Object... args) {
+            RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+            Supplier<Object> invocation = SqlCounter.propagate(ReadSession.propagate(() -> invoke(requestAttributes, args)));
+
+            return (Callable<Object>) invocation::get;
+        }
+
+        private Object invoke(RequestAttributes requestAttributes, Object[] args) {
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+
+            try {
+                return super.doInvoke(args);
+            } catch (RuntimeException runtimeException) {
+                throw runtimeException;
+            } catch (Exception exception) {
+                throw new UndeclaredThrowableException(exception);
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        }
+    }
+}
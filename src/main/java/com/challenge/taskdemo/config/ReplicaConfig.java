@@ -0,0 +1,104 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.admission.ClientResolver;
+import com.challenge.taskdemo.routing.ReadSessionFilter;
+import com.challenge.taskdemo.routing.RecentWrites;
+import com.challenge.taskdemo.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.datasource.replicas")
+public class ReplicaConfig {
+
+    @Value("${tasks.datasource.replicas}")
+    private List<String> replicaUrls;
+
+    @Value("${tasks.datasource.replica-username:${spring.datasource.username:sa}}")
+    private String replicaUsername;
+
+    @Value("${tasks.datasource.replica-password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${tasks.datasource.replica-pool-size:10}")
+    private int replicaPoolSize;
+
+    @Value("${tasks.datasource.max-lag:5s}")
+    private Duration maxLag;
+
+    @Value("${tasks.admission.client-header:X-Client-Id}")
+    private String clientHeader;
+
+    @Value("${tasks.admission.trusted-proxies:}")
+    private Set<String> trustedProxies;
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties dataSourceProperties, RecentWrites recentWrites) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<String, DataSource>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.put("replica-" + i, replica("replica-" + i, replicaUrls.get(i)));
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag, Clock.systemUTC(), recentWrites);
+    }
+
+    // the routing decision needs the transaction's read-only flag, which is only set once a connection is asked for
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // held connections would keep a whole request on whichever database its first transaction picked
+    @Bean
+    public HibernatePropertiesCustomizer connectionReleaseCustomizer() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    // a client's reads follow its writes by the same identity that admission control keys its rate limit on
+    @Bean
+    public FilterRegistrationBean<ReadSessionFilter> readSessionFilterRegistration() {
+        ReadSessionFilter readSessionFilter = new ReadSessionFilter(new ClientResolver(clientHeader, trustedProxies));
+        FilterRegistrationBean<ReadSessionFilter> registration = new FilterRegistrationBean<ReadSessionFilter>(readSessionFilter);
+        registration.addUrlPatterns("/tasks", "/tasks/*");
+
+        return registration;
+    }
+
+    // a replica that is down at startup must not keep the application from starting
+    private HikariDataSource replica(String name, String url) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName(name);
+        replica.setJdbcUrl(url);
+        replica.setUsername(replicaUsername);
+        replica.setPassword(replicaPassword);
+        replica.setMaximumPoolSize(replicaPoolSize);
+        replica.setReadOnly(true);
+        replica.setInitializationFailTimeout(-1);
+        replica.setConnectionTimeout(Duration.ofSeconds(1).toMillis());
+
+        return replica;
+    }
+}
@@ -0,0 +1,114 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.entity.TaskIdGenerator;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.storage.JpaTaskShards;
+import com.challenge.taskdemo.storage.ShardedJpaTaskRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.datasource.shards")
+public class ShardConfig {
+
+    @Value("${tasks.datasource.shards}")
+    private List<String> shardUrls;
+
+    @Value("${tasks.datasource.shard-username:${spring.datasource.username:sa}}")
+    private String shardUsername;
+
+    @Value("${tasks.datasource.shard-password:${spring.datasource.password:}}")
+    private String shardPassword;
+
+    @Value("${tasks.datasource.shard-pool-size:10}")
+    private int shardPoolSize;
+
+    // shard 0 is the application's own database, so an unsharded store carries on as the first shard
+    @Bean(destroyMethod = "close")
+    public JpaTaskShards jpaTaskShards(EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+                                       EntityManagerFactoryBuilder entityManagerFactoryBuilder, JpaProperties jpaProperties,
+                                       HibernateProperties hibernateProperties,
+                                       ObjectProvider<HibernatePropertiesCustomizer> hibernatePropertiesCustomizers,
+                                       ConfigurableListableBeanFactory beanFactory, ChangeStampGenerator changeStampGenerator) {
+        Map<String, Object> properties = shardProperties(jpaProperties, hibernateProperties, hibernatePropertiesCustomizers, beanFactory);
+        List<EntityManagerFactory> entityManagerFactories = new ArrayList<EntityManagerFactory>();
+        entityManagerFactories.add(entityManagerFactory);
+
+        for (int i = 0; i < shardUrls.size(); i++) {
+            String name = "shard-" + (i + 1);
+            LocalContainerEntityManagerFactoryBean factoryBean = entityManagerFactoryBuilder.dataSource(shard(name, shardUrls.get(i)))
+                    .packages(Task.class)
+                    .persistenceUnit(name)
+                    .properties(properties)
+                    .build();
+            factoryBean.afterPropertiesSet();
+            entityManagerFactories.add(factoryBean.getObject());
+        }
+
+        JpaTaskShards jpaTaskShards = new JpaTaskShards(entityManagerFactories, transactionManager, changeStampGenerator);
+        jpaTaskShards.rebalanceInBackground();
+
+        return jpaTaskShards;
+    }
+
+    // every shard, the application's own database included, takes the ids the store picks for it
+    @Bean
+    public static HibernatePropertiesCustomizer assignedTaskIds() {
+        return properties -> properties.put(TaskIdGenerator.ASSIGNED_IDS, true);
+    }
+
+    // takes over from the repository Spring Data made for the primary database alone
+    @Bean
+    @Primary
+    public TaskRepository shardedTaskRepository(JpaTaskShards jpaTaskShards) {
+        return new ShardedJpaTaskRepository(jpaTaskShards);
+    }
+
+    // the shards are mapped exactly like the primary database; without a ddl-auto of its own, a
+    // shard's schema is only ever added to, so a shard database that outlives the application keeps its tasks
+    private static Map<String, Object> shardProperties(JpaProperties jpaProperties, HibernateProperties hibernateProperties,
+                                                       ObjectProvider<HibernatePropertiesCustomizer> hibernatePropertiesCustomizers,
+                                                       ConfigurableListableBeanFactory beanFactory) {
+        HibernateSettings settings = new HibernateSettings()
+                .ddlAuto(() -> "update")
+                .hibernatePropertiesCustomizers(hibernatePropertiesCustomizers.orderedStream().collect(Collectors.toList()));
+        Map<String, Object> properties = hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(), settings);
+        properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+
+        return properties;
+    }
+
+    private HikariDataSource shard(String name, String url) {
+        HikariDataSource shard = new HikariDataSource();
+        shard.setPoolName(name);
+        shard.setJdbcUrl(url);
+        shard.setUsername(shardUsername);
+        shard.setPassword(shardPassword);
+        shard.setMaximumPoolSize(shardPoolSize);
+
+        return shard;
+    }
+}
@@ -0,0 +1,94 @@
+package com.challenge.taskdemo.config;
+
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.storage.LogTaskRepository;
+import com.challenge.taskdemo.storage.ShardedTaskRepository;
+import com.challenge.taskdemo.storage.TaskLog;
+import com.challenge.taskdemo.storage.TaskShards;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "tasks.storage", havingValue = "log")
+public class StorageConfig {
+
+    private static final String SHARDED = "${tasks.storage.log.shards:1} > 1";
+
+    @Value("${tasks.storage.log.directory:data/tasks}")
+    private String directory;
+
+    @Value("${tasks.storage.log.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${tasks.storage.log.compaction-threshold:0.5}")
+    private double compactionThreshold;
+
+    @Value("${tasks.storage.log.fsync:false}")
+    private boolean fsync;
+
+    @Value("${tasks.storage.log.compaction-interval:1m}")
+    private Duration compactionInterval;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "tasks.storage.log.shards", havingValue = "1", matchIfMissing = true)
+    public TaskLog taskLog() {
+        return openLog(Paths.get(directory));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "tasks.storage.log.shards", havingValue = "1", matchIfMissing = true)
+    public TaskRepository taskRepository(TaskLog taskLog, ChangeStampGenerator changeStampGenerator) {
+        changeStampGenerator.advanceTo(taskLog.lastChangeStamp());
+
+        return new LogTaskRepository(taskLog, changeStampGenerator);
+    }
+
+    // shard 0 is the unsharded log's own directory, so an existing store can be split by raising
+    // the shard count; shards can only be added, a shard left out would take its tasks with it
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression(SHARDED)
+    public TaskShards taskShards(@Value("${tasks.storage.log.shards}") int shards, ChangeStampGenerator changeStampGenerator) {
+        Path root = Paths.get(directory);
+
+        if (Files.exists(shardDirectory(root, shards))) {
+            throw new IllegalStateException("Task log shard " + shardDirectory(root, shards) + " exists but only " + shards + " shards are configured");
+        }
+
+        List<TaskLog> logs = new ArrayList<TaskLog>();
+        for (int shard = 0; shard < shards; shard++) {
+            logs.add(openLog(shard == 0 ? root : shardDirectory(root, shard)));
+            changeStampGenerator.advanceTo(logs.get(shard).lastChangeStamp());
+        }
+
+        TaskShards taskShards = new TaskShards(logs, changeStampGenerator);
+        taskShards.rebalanceInBackground();
+
+        return taskShards;
+    }
+
+    @Bean
+    @ConditionalOnExpression(SHARDED)
+    public TaskRepository shardedTaskRepository(TaskShards taskShards) {
+        return new ShardedTaskRepository(taskShards);
+    }
+
+    private TaskLog openLog(Path path) {
+        return new TaskLog(path, (int) segmentSize.toBytes(), compactionThreshold, fsync, compactionInterval);
+    }
+
+    private static Path shardDirectory(Path root, int shard) {
+        return root.resolve("shard-" + shard);
+    }
+}
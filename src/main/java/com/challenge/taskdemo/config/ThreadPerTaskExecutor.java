@@ -0,0 +1,41 @@
+package com.challenge.taskdemo.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+// Starts a thread for every task, up to maxConcurrency tasks at once; the next one is rejected
+// instead of queued. Meant for virtual threads, which are too cheap to pool.
+public class ThreadPerTaskExecutor implements Executor {
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    public ThreadPerTaskExecutor(ThreadFactory threadFactory, int maxConcurrency) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException(maxConcurrency + " tasks are already running");
+        }
+
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+}
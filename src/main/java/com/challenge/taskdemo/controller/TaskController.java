@@ -1,54 +1,263 @@
 package com.challenge.taskdemo.controller;
 
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
 import com.challenge.taskdemo.dto.TaskDto;
-import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.dto.TaskFields;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.dto.TaskSearchResultDto;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.exception.TaskVersionMismatchException;
+import com.challenge.taskdemo.idempotency.IdempotencyStore;
+import com.challenge.taskdemo.metrics.SqlCounter;
 import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.service.TaskUpdateBatcher;
+import com.challenge.taskdemo.util.Status;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.AllArgsConstructor;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @AllArgsConstructor
 public class TaskController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int STREAM_FETCH_SIZE = 500;
+    static final Duration MIN_LEASE = Duration.ofSeconds(1);
+    static final Duration MAX_LEASE = Duration.ofHours(1);
+
     private TaskService taskService;
+    private ObjectMapper objectMapper;
+    private TaskEventStream taskEventStream;
+    private IdempotencyStore idempotencyStore;
+    private TaskUpdateBatcher taskUpdateBatcher;
 
+    // without a limit this is the first page, the rest of the table is behind the Link header
     @GetMapping("/tasks")
-    private List<TaskDto> getAll() {
-        return taskService.getAll();
+    private ResponseEntity<List<TaskDto>> getAll(@Valid TaskQuery query) {
+        query.setLimit(pageSize(query));
+
+        return page(taskService.find(query), query.getLimit(), ServletUriComponentsBuilder.fromCurrentRequest());
+    }
+
+    @GetMapping(value = "/tasks", produces = APPLICATION_NDJSON_VALUE)
+    private ResponseEntity<StreamingResponseBody> stream(@Valid TaskQuery query) {
+        return stream(taskService, objectMapper.writerFor(TaskDto.class), query);
+    }
+
+    @GetMapping(value = "/tasks/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    private SseEmitter events(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return taskEventStream.subscribe(lastEventId);
+    }
+
+    @GetMapping("/tasks/stats")
+    private Map<Status, Long> getStats() {
+        return taskService.getStats();
+    }
+
+    @GetMapping("/tasks/search")
+    private ResponseEntity<List<TaskDto>> search(@RequestParam String q, @RequestParam(defaultValue = "0") int offset,
+                                                 @RequestParam(required = false) Integer limit) {
+        int pageSize = pageSize(limit);
+        int from = Math.max(0, offset);
+
+        return ranked(taskService.search(q, from, pageSize), pageSize, ServletUriComponentsBuilder.fromCurrentRequest());
+    }
+
+    @GetMapping("/tasks/changes")
+    private TaskChangesDto getChanges(@RequestParam(defaultValue = "0") long since,
+                                      @RequestParam(required = false) Integer limit) {
+        return taskService.getChanges(since, pageSize(limit));
+    }
+
+    @PostMapping("/tasks/claim")
+    private TaskClaimDto claim(@RequestParam(defaultValue = "1") int limit, @RequestParam(defaultValue = "30s") Duration lease) {
+        return taskService.claim(pageSize(limit), leaseDuration(lease));
+    }
+
+    @PostMapping("/tasks/{id}/ack")
+    private ResponseEntity<TaskDto> ack(@PathVariable Long id, @RequestParam String leaseId) {
+        TaskDto taskDto = taskService.ack(id, leaseId);
+
+        return ResponseEntity.ok().eTag(eTag(taskDto)).body(taskDto);
+    }
+
+    @PostMapping("/tasks/{id}/nack")
+    private void nack(@PathVariable Long id, @RequestParam String leaseId) {
+        taskService.nack(id, leaseId);
     }
 
     @GetMapping("/tasks/{id}")
-    private TaskDto get(@PathVariable Long id) {
-        return taskService.get(id);
+    private ResponseEntity<TaskDto> get(@PathVariable Long id, @Valid TaskFields fields, WebRequest request) {
+        TaskDto taskDto = fields.getSelection() == null ? taskService.get(id) : taskService.get(id, fields.getSelection());
+
+        if (taskDto.getVersion() == null) {
+            return ResponseEntity.ok(taskDto);
+        }
+
+        if (request.checkNotModified(eTag(taskDto))) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(eTag(taskDto)).body(taskDto);
     }
 
     @PostMapping("/tasks")
-    private ResponseEntity<TaskDto> add(@Valid @RequestBody TaskDto taskDto) {
-        TaskDto taskDtoNewResource = taskService.add(taskDto);
-
-        URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(taskDtoNewResource.getId()).toUri();
+    private ResponseEntity<TaskDto> add(@Valid @RequestBody TaskDto taskDto,
+                                        @RequestHeader(value = IdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        UriComponentsBuilder currentRequest = ServletUriComponentsBuilder.fromCurrentRequest();
 
-        return ResponseEntity.created(location).body(taskDtoNewResource);
+        return idempotencyStore.execute(idempotencyKey, taskDto, () -> created(taskService.add(taskDto), currentRequest));
     }
 
     @PatchMapping("/tasks/{id}")
-    private TaskDto update(@RequestBody TaskDto taskDto, @PathVariable Long id) {
-        return taskService.update(id, taskDto);
+    private ResponseEntity<TaskDto> update(@RequestBody TaskDto taskDto, @PathVariable Long id,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        TaskDto taskDtoUpdated = taskUpdateBatcher.update(id, taskDto, expectedVersion(ifMatch));
+
+        return ResponseEntity.ok().eTag(eTag(taskDtoUpdated)).body(taskDtoUpdated);
     }
 
     @DeleteMapping("/tasks/{id}")
-    private void delete(@PathVariable Long id) {
-        taskService.delete(id);
+    private void delete(@PathVariable Long id, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        taskService.delete(id, expectedVersion(ifMatch));
+    }
+
+    @PostMapping("/tasks/batch")
+    private List<TaskBatchResultDto> addAll(@RequestBody List<TaskDto> tasksDto) {
+        return taskService.addAll(tasksDto);
+    }
+
+    @PatchMapping("/tasks/batch")
+    private List<TaskBatchResultDto> updateAll(@RequestBody List<TaskDto> tasksDto) {
+        return taskService.updateAll(tasksDto);
+    }
+
+    @DeleteMapping("/tasks/batch")
+    private List<TaskBatchResultDto> deleteAll(@RequestBody List<Long> ids) {
+        return taskService.deleteAll(ids);
+    }
+
+    static int pageSize(TaskQuery query) {
+        return pageSize(query.getLimit());
+    }
+
+    static int pageSize(Integer limit) {
+        return limit == null ? MAX_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    static Duration leaseDuration(Duration lease) {
+        return lease.compareTo(MIN_LEASE) < 0 ? MIN_LEASE : lease.compareTo(MAX_LEASE) > 0 ? MAX_LEASE : lease;
+    }
+
+    static ResponseEntity<List<TaskDto>> page(List<TaskDto> page, int pageSize, UriComponentsBuilder currentRequest) {
+        if (page.size() < pageSize) {
+            return ResponseEntity.ok(page);
+        }
+
+        URI next = currentRequest
+                .replaceQueryParam("after", page.get(page.size() - 1).getId())
+                .replaceQueryParam("limit", pageSize)
+                .build(true).toUri();
+
+        return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(page);
     }
 
-    @ExceptionHandler
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    private void taskNotFoundHandler(TaskNotFoundException taskNotFoundException) {}
+    static ResponseEntity<List<TaskDto>> ranked(TaskSearchResultDto result, int pageSize, UriComponentsBuilder currentRequest) {
+        if (result.getNextOffset() == null) {
+            return ResponseEntity.ok(result.getTasks());
+        }
+
+        URI next = currentRequest
+                .replaceQueryParam("offset", result.getNextOffset())
+                .replaceQueryParam("limit", pageSize)
+                .build(true).toUri();
+
+        return ResponseEntity.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(result.getTasks());
+    }
+
+    static ResponseEntity<StreamingResponseBody> stream(TaskService taskService, ObjectWriter writer, TaskQuery query) {
+        query.setLimit(STREAM_FETCH_SIZE);
+
+        ObjectWriter lineWriter = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        SqlCounter.Counts sqlCounts = SqlCounter.current();
+
+        StreamingResponseBody body = outputStream -> {
+            SqlCounter.attach(sqlCounts);
+
+            // one generator for the whole response encodes every task straight into its buffer
+            try (JsonGenerator generator = lineWriter.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+
+                List<TaskDto> page;
+
+                do {
+                    page = taskService.find(query);
+
+                    for (TaskDto taskDto : page) {
+                        lineWriter.writeValue(generator, taskDto);
+                        generator.writeRaw('\n');
+                        query.setAfter(taskDto.getId());
+                    }
+
+                    generator.flush();
+                } while (page.size() == STREAM_FETCH_SIZE);
+            } finally {
+                SqlCounter.detach();
+            }
+        };
+
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    static ResponseEntity<TaskDto> created(TaskDto taskDto, UriComponentsBuilder currentRequest) {
+        URI location = currentRequest.path("/{id}").buildAndExpand(taskDto.getId()).toUri();
+
+        return ResponseEntity.created(location).eTag(eTag(taskDto)).body(taskDto);
+    }
+
+    static String eTag(TaskDto taskDto) {
+        return "\"" + taskDto.getVersion() + "\"";
+    }
+
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String eTag = ifMatch.trim();
+
+        if (eTag.length() < 2 || !eTag.startsWith("\"") || !eTag.endsWith("\"")) {
+            throw new TaskVersionMismatchException();
+        }
+
+        try {
+            return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+        } catch (NumberFormatException numberFormatException) {
+            throw new TaskVersionMismatchException();
+        }
+    }
 }
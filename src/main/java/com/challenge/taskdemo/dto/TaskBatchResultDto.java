@@ -0,0 +1,21 @@
+package com.challenge.taskdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskBatchResultDto {
+
+    private int index;
+    private Long id;
+    private int status;
+    private List<String> errors;
+    private TaskDto task;
+}
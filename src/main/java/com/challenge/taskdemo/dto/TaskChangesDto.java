@@ -0,0 +1,19 @@
+package com.challenge.taskdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskChangesDto {
+
+    private List<TaskDto> changed;
+    private List<Long> deleted;
+    private long watermark;
+}
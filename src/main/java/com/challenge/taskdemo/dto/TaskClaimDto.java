@@ -0,0 +1,20 @@
+package com.challenge.taskdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskClaimDto {
+
+    private String leaseId;
+    private Instant expiresAt;
+    private List<TaskDto> tasks;
+}
@@ -1,15 +1,24 @@
 package com.challenge.taskdemo.dto;
 
 import com.challenge.taskdemo.util.Status;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
+// fields left out of a sparse fieldset are null and are not written
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Getter
 @Setter
 public class TaskDto {
 
+    public interface BatchUpdate {}
+
+    @NotNull(groups = BatchUpdate.class, message = "{validation.id.notNull}")
     private Long id;
 
     @NotEmpty(message = "{validation.name.notEmpty}")
@@ -19,4 +28,13 @@ public class TaskDto {
     private String description;
 
     private Status status;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant createdAt;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long changeStamp;
 }
@@ -0,0 +1,35 @@
+package com.challenge.taskdemo.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Pattern;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+@Getter
+@Setter
+public class TaskFields {
+
+    public static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<String>(
+            Arrays.asList("id", "name", "description", "status", "version", "createdAt", "changeStamp")));
+
+    @Pattern(regexp = "(id|name|description|status|version|createdAt|changeStamp)(,(id|name|description|status|version|createdAt|changeStamp))*",
+            message = "{validation.fields.pattern}")
+    private String fields;
+
+    // the id is always selected, pages and streams continue from it
+    public Set<String> getSelection() {
+        if (fields == null) {
+            return null;
+        }
+
+        Set<String> selection = new LinkedHashSet<String>();
+        selection.add("id");
+        selection.addAll(Arrays.asList(fields.split(",")));
+
+        return selection;
+    }
+}
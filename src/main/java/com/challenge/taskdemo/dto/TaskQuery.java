@@ -0,0 +1,41 @@
+package com.challenge.taskdemo.dto;
+
+import com.challenge.taskdemo.util.Status;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import javax.validation.constraints.Pattern;
+import java.time.Instant;
+
+@Getter
+@Setter
+public class TaskQuery extends TaskFields {
+
+    private Status status;
+
+    private String nameStartsWith;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private Instant createdAfter;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private Instant createdBefore;
+
+    @Pattern(regexp = "(id|name|status|createdAt)(,(asc|desc))?", message = "{validation.sort.pattern}")
+    private String sort;
+
+    private Long after;
+
+    private Integer limit;
+
+    private boolean archived;
+
+    public String getSortProperty() {
+        return sort == null ? "id" : sort.split(",")[0];
+    }
+
+    public boolean isSortDescending() {
+        return sort != null && sort.endsWith(",desc");
+    }
+}
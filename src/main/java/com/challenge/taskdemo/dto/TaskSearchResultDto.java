@@ -0,0 +1,19 @@
+package com.challenge.taskdemo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskSearchResultDto {
+
+    private List<TaskDto> tasks;
+    // where the next page starts in the index, null when the index has no more matches
+    private Integer nextOffset;
+}
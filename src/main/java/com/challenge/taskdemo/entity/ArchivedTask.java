@@ -0,0 +1,38 @@
+package com.challenge.taskdemo.entity;
+
+import com.challenge.taskdemo.util.Status;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+// DONE tasks moved out of TASK by the archiver, read-only from then on
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_archived_task_name", columnList = "name, id"),
+        @Index(name = "idx_archived_task_created_at", columnList = "createdAt, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedTask {
+
+    @Id
+    private Long id;
+
+    private String name;
+    private String description;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private Long version;
+    private Instant createdAt;
+    private Long changeStamp;
+    private Instant completedAt;
+    private Instant archivedAt;
+}
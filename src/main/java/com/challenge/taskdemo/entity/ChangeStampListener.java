@@ -0,0 +1,21 @@
+package com.challenge.taskdemo.entity;
+
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+public class ChangeStampListener {
+
+    private ChangeStampGenerator changeStampGenerator;
+
+    public ChangeStampListener(ChangeStampGenerator changeStampGenerator) {
+        this.changeStampGenerator = changeStampGenerator;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void stamp(Task task) {
+        task.setChangeStamp(changeStampGenerator.next());
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.taskdemo.entity;
+
+import com.challenge.taskdemo.util.Status;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+// the first response to a POST /tasks that carried an Idempotency-Key, replayed to its retries
+@Entity
+@Table(indexes = @Index(name = "idx_idempotent_response_stored_at", columnList = "storedAt"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotentResponse {
+
+    @Id
+    private String idempotencyKey;
+
+    private int status;
+    private String location;
+    private String eTag;
+
+    private Long taskId;
+    private String name;
+    private String description;
+
+    @Enumerated(EnumType.STRING)
+    private Status taskStatus;
+
+    private Long version;
+    private Instant createdAt;
+    private Long changeStamp;
+
+    private Instant storedAt;
+}
@@ -0,0 +1,23 @@
+package com.challenge.taskdemo.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+// one row the primary keeps touching, how old a replica's copy is tells how far that replica lags
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationHeartbeat {
+
+    @Id
+    private Integer id;
+
+    private long beatAtMillis;
+}
@@ -5,10 +5,25 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Where;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.time.Instant;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_task_status_id", columnList = "status, id"),
+        @Index(name = "idx_task_name", columnList = "name, id"),
+        @Index(name = "idx_task_created_at", columnList = "createdAt, id"),
+        @Index(name = "idx_task_change_stamp", columnList = "changeStamp"),
+        @Index(name = "idx_task_lease_id", columnList = "leaseId")
+})
+@Where(clause = "deleted = false")
+@EntityListeners(ChangeStampListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -16,7 +31,10 @@ import javax.persistence.*;
 public class Task {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_seq")
+    @GenericGenerator(name = "task_seq", strategy = "com.challenge.taskdemo.entity.TaskIdGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "task_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")})
     private Long id;
 
     private String name;
@@ -24,4 +42,31 @@ public class Task {
 
     @Enumerated(EnumType.STRING)
     private Status status;
+
+    @Version
+    private Long version;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private Instant createdAt;
+
+    private Long changeStamp;
+
+    // when the task last became DONE, which is what the archiver ages it by
+    private Instant completedAt;
+
+    private boolean deleted;
+
+    private String leaseId;
+    private Instant leaseExpiresAt;
+
+    @PrePersist
+    @PreUpdate
+    void stampCompletion() {
+        if (status != Status.DONE) {
+            completedAt = null;
+        } else if (completedAt == null) {
+            completedAt = Instant.now();
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package com.challenge.taskdemo.entity;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+// Task's sequence, unless the persistence unit is a shard of a sharded store: there the store picks
+// each new id from the ids its shard owns and sets it on the task before it is saved
+public class TaskIdGenerator extends SequenceStyleGenerator {
+
+    public static final String ASSIGNED_IDS = "tasks.assigned-ids";
+
+    private boolean assignedIds;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        super.configure(type, params, serviceRegistry);
+        assignedIds = ConfigurationHelper.getBoolean(ASSIGNED_IDS, serviceRegistry.getService(ConfigurationService.class).getSettings(), false);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Long id = assignedIds ? ((Task) object).getId() : null;
+
+        return id != null ? id : super.generate(session, object);
+    }
+}
@@ -0,0 +1,17 @@
+package com.challenge.taskdemo.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class TaskEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private long sequence;
+    private Type type;
+    private String data;
+}
@@ -0,0 +1,68 @@
+package com.challenge.taskdemo.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Event ids are <epoch>-<sequence>, the epoch being when this buffer was created. The sequence
+// starts over with every run, so an id from before a restart names no event of this one, however
+// its sequence compares with the current one.
+public class TaskEventBuffer {
+
+    private final TaskEvent[] events;
+    private final String epoch;
+    private long sequence;
+
+    public TaskEventBuffer(int capacity) {
+        this.events = new TaskEvent[capacity];
+        this.epoch = Long.toString(System.currentTimeMillis());
+    }
+
+    public synchronized TaskEvent append(TaskEvent.Type type, String data) {
+        TaskEvent event = new TaskEvent(++sequence, type, data);
+        events[(int) (event.getSequence() % events.length)] = event;
+
+        return event;
+    }
+
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    public String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    // the sequence an id of this run names, or -1 for an id of another run or no event id at all
+    public long sequenceOf(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+
+        if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException numberFormatException) {
+            return -1;
+        }
+    }
+
+    public synchronized List<TaskEvent> after(long lastSequence) {
+        if (lastSequence == sequence) {
+            return Collections.emptyList();
+        }
+
+        // unknown, too old to be buffered, or ahead of anything this run has handed out
+        if (lastSequence < 0 || lastSequence < sequence - events.length || lastSequence > sequence) {
+            return null;
+        }
+
+        List<TaskEvent> pending = new ArrayList<TaskEvent>((int) (sequence - lastSequence));
+        for (long next = lastSequence + 1; next <= sequence; next++) {
+            pending.add(events[(int) (next % events.length)]);
+        }
+
+        return pending;
+    }
+}
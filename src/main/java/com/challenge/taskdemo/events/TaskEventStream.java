@@ -0,0 +1,237 @@
+package com.challenge.taskdemo.events;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One dispatcher thread hands the buffered events out to per-subscriber queues and never blocks
+// on a client. A fixed pool of sender threads, however many subscribers there are, drains the
+// queues that have anything in them, at most a batch of events per turn so that a busy subscriber
+// cannot keep a sender from the others. A subscriber that lets its queue fill up is disconnected
+// and can resume with Last-Event-ID.
+@Component
+public class TaskEventStream {
+
+    private static final int SEND_BATCH = 64;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final Semaphore pending = new Semaphore(0);
+
+    private ObjectMapper objectMapper;
+    private TaskEventBuffer buffer;
+    private Duration heartbeatInterval;
+    private Duration timeout;
+    private int subscriberQueueSize;
+    private int senderThreads;
+    private ExecutorService senders;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    public TaskEventStream(ObjectMapper objectMapper,
+                           @Value("${tasks.events.buffer-size:10000}") int bufferSize,
+                           @Value("${tasks.events.heartbeat-interval:15s}") Duration heartbeatInterval,
+                           @Value("${tasks.events.timeout:30m}") Duration timeout,
+                           @Value("${tasks.events.subscriber-queue-size:1000}") int subscriberQueueSize,
+                           @Value("${tasks.events.sender-threads:4}") int senderThreads) {
+        this.objectMapper = objectMapper;
+        this.buffer = new TaskEventBuffer(bufferSize);
+        this.heartbeatInterval = heartbeatInterval;
+        this.timeout = timeout;
+        this.subscriberQueueSize = subscriberQueueSize;
+        this.senderThreads = senderThreads;
+    }
+
+    public void publish(TaskEvent.Type type, TaskDto taskDto) {
+        try {
+            buffer.append(type, objectMapper.writeValueAsString(taskDto));
+        } catch (JsonProcessingException jsonProcessingException) {
+            throw new UncheckedIOException(jsonProcessingException);
+        }
+
+        pending.release();
+    }
+
+    public SseEmitter subscribe(String lastEventId) {
+        return subscribe(new SseEmitter(timeout.toMillis()), lastEventId);
+    }
+
+    // an id from before a restart gets a reset, whatever its sequence
+    SseEmitter subscribe(SseEmitter emitter, String lastEventId) {
+        long cursor = lastEventId == null ? buffer.lastSequence() : buffer.sequenceOf(lastEventId);
+        Subscriber subscriber = new Subscriber(emitter, cursor, subscriberQueueSize);
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        pending.release();
+
+        return emitter;
+    }
+
+    public String lastEventId() {
+        return buffer.eventId(buffer.lastSequence());
+    }
+
+    @PostConstruct
+    public void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("task-events-send-");
+        threadFactory.setDaemon(true);
+        senders = Executors.newFixedThreadPool(senderThreads, threadFactory);
+
+        running = true;
+        dispatcher = new Thread(this::dispatch, "task-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        dispatcher.interrupt();
+        senders.shutdownNow();
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void dispatch() {
+        long nextHeartbeat = System.nanoTime() + heartbeatInterval.toNanos();
+
+        while (running) {
+            try {
+                pending.tryAcquire(heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+                pending.drainPermits();
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+
+            boolean heartbeat = System.nanoTime() - nextHeartbeat >= 0;
+            if (heartbeat) {
+                nextHeartbeat = System.nanoTime() + heartbeatInterval.toNanos();
+            }
+
+            for (Subscriber subscriber : subscribers) {
+                if (!enqueue(subscriber, heartbeat)) {
+                    subscribers.remove(subscriber);
+                    subscriber.dropped = true;
+                }
+
+                if (!subscriber.queue.isEmpty() || subscriber.dropped) {
+                    send(subscriber);
+                }
+            }
+        }
+    }
+
+    // false when the subscriber's queue is full
+    private boolean enqueue(Subscriber subscriber, boolean heartbeat) {
+        List<TaskEvent> events = buffer.after(subscriber.cursor);
+
+        if (events == null) {
+            subscriber.cursor = buffer.lastSequence();
+            return subscriber.queue.offer(SseEmitter.event().id(buffer.eventId(subscriber.cursor)).name("reset").data(""));
+        }
+
+        for (TaskEvent event : events) {
+            boolean queued = subscriber.queue.offer(SseEmitter.event()
+                    .id(buffer.eventId(event.getSequence()))
+                    .name(event.getType().name().toLowerCase())
+                    .data(event.getData(), MediaType.APPLICATION_JSON));
+
+            if (!queued) {
+                return false;
+            }
+
+            subscriber.cursor = event.getSequence();
+        }
+
+        if (events.isEmpty() && heartbeat) {
+            return subscriber.queue.offer(SseEmitter.event().comment("heartbeat"));
+        }
+
+        return true;
+    }
+
+    // at most one sender per subscriber; a sender that finds the subscriber dropped completes
+    // its emitter, which the dispatcher must not do itself while a send may hold it
+    private void send(Subscriber subscriber) {
+        if (!subscriber.sending.compareAndSet(false, true)) {
+            return;
+        }
+
+        submit(subscriber);
+    }
+
+    private void submit(Subscriber subscriber) {
+        try {
+            senders.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            subscriber.sending.set(false);
+        }
+    }
+
+    // a subscriber with more than a batch waiting goes to the back of the pool's queue again
+    private void drain(Subscriber subscriber) {
+        do {
+            try {
+                SseEmitter.SseEventBuilder event;
+                int sent = 0;
+
+                while (!subscriber.dropped && (event = subscriber.queue.poll()) != null) {
+                    subscriber.emitter.send(event);
+
+                    if (++sent == SEND_BATCH && !subscriber.queue.isEmpty()) {
+                        submit(subscriber);
+                        return;
+                    }
+                }
+
+                if (subscriber.dropped) {
+                    subscriber.queue.clear();
+                    subscriber.emitter.complete();
+                    return;
+                }
+            } catch (IOException | IllegalStateException exception) {
+                subscribers.remove(subscriber);
+                subscriber.dropped = true;
+                subscriber.queue.clear();
+                subscriber.emitter.completeWithError(exception);
+                return;
+            }
+
+            subscriber.sending.set(false);
+        } while (!subscriber.queue.isEmpty() && subscriber.sending.compareAndSet(false, true));
+    }
+
+    private static class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean dropped;
+        private long cursor;
+
+        private Subscriber(SseEmitter emitter, long cursor, int queueSize) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+            this.queue = new ArrayBlockingQueue<SseEmitter.SseEventBuilder>(queueSize);
+        }
+    }
+}
@@ -0,0 +1,3 @@
+package com.challenge.taskdemo.exception;
+
+public class BatchSizeExceededException extends RuntimeException {}
\ No newline at end of file
@@ -0,0 +1,3 @@
+package com.challenge.taskdemo.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {}
@@ -0,0 +1,44 @@
+package com.challenge.taskdemo.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.concurrent.RejectedExecutionException;
+
+@ControllerAdvice
+public class TaskExceptionHandler {
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    private void taskNotFoundHandler(TaskNotFoundException taskNotFoundException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    private void taskVersionMismatchHandler(TaskVersionMismatchException taskVersionMismatchException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.CONFLICT)
+    private void taskLeaseLostHandler(TaskLeaseLostException taskLeaseLostException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.CONFLICT)
+    private void taskArchivedHandler(TaskArchivedException taskArchivedException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+    private void batchSizeExceededHandler(BatchSizeExceededException batchSizeExceededException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    private void idempotencyKeyReusedHandler(IdempotencyKeyReusedException idempotencyKeyReusedException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    private void invalidIdempotencyKeyHandler(InvalidIdempotencyKeyException invalidIdempotencyKeyException) {}
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    private void rejectedExecutionHandler(RejectedExecutionException rejectedExecutionException) {}
+}
@@ -0,0 +1,159 @@
+package com.challenge.taskdemo.idempotency;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.entity.IdempotentResponse;
+import com.challenge.taskdemo.exception.IdempotencyKeyReusedException;
+import com.challenge.taskdemo.exception.InvalidIdempotencyKeyException;
+import com.challenge.taskdemo.repository.IdempotentResponseRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+@Component
+public class IdempotencyStore {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, IdempotentResponse> responses;
+    private final Lock[] stripes;
+    private final Duration expireAfterWrite;
+    private final IdempotentResponseRepository idempotentResponseRepository;
+
+    public IdempotencyStore(ObjectProvider<IdempotentResponseRepository> idempotentResponseRepository,
+                            @Value("${tasks.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${tasks.idempotency.expire-after-write:24h}") Duration expireAfterWrite,
+                            @Value("${tasks.idempotency.stripes:64}") int stripes,
+                            @Value("${tasks.idempotency.persistent:false}") boolean persistent) {
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        this.stripes = new Lock[stripes];
+        this.expireAfterWrite = expireAfterWrite;
+        // storage without a database keeps keys in memory only
+        this.idempotentResponseRepository = persistent ? idempotentResponseRepository.getIfAvailable() : null;
+
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // a retry gets the first response back, a concurrent duplicate waits for it on the key's stripe
+    public ResponseEntity<TaskDto> execute(String key, TaskDto request, Supplier<ResponseEntity<TaskDto>> action) {
+        if (key == null) {
+            return action.get();
+        }
+
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException();
+        }
+
+        IdempotentResponse response = responses.getIfPresent(key);
+
+        if (response != null) {
+            return replay(response, request);
+        }
+
+        Lock lock = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+        lock.lock();
+
+        try {
+            response = find(key);
+
+            if (response != null) {
+                return replay(response, request);
+            }
+
+            ResponseEntity<TaskDto> responseEntity = action.get();
+            store(key, responseEntity);
+
+            return responseEntity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${tasks.idempotency.purge-interval:PT10M}", fixedDelayString = "${tasks.idempotency.purge-interval:PT10M}")
+    public void purgeExpired() {
+        if (idempotentResponseRepository != null) {
+            idempotentResponseRepository.deleteStoredBefore(Instant.now().minus(expireAfterWrite));
+        }
+    }
+
+    private IdempotentResponse find(String key) {
+        IdempotentResponse response = responses.getIfPresent(key);
+
+        if (response != null || idempotentResponseRepository == null) {
+            return response;
+        }
+
+        response = idempotentResponseRepository.findById(key)
+                .filter(stored -> stored.getStoredAt().isAfter(Instant.now().minus(expireAfterWrite)))
+                .orElse(null);
+
+        if (response != null) {
+            responses.put(key, response);
+        }
+
+        return response;
+    }
+
+    private void store(String key, ResponseEntity<TaskDto> responseEntity) {
+        TaskDto taskDto = responseEntity.getBody();
+        URI location = responseEntity.getHeaders().getLocation();
+
+        IdempotentResponse response = new IdempotentResponse(key, responseEntity.getStatusCodeValue(),
+                location == null ? null : location.toString(), responseEntity.getHeaders().getETag(), taskDto.getId(), taskDto.getName(), taskDto.getDescription(),
+                taskDto.getStatus(), taskDto.getVersion(), taskDto.getCreatedAt(), taskDto.getChangeStamp(), Instant.now());
+
+        if (idempotentResponseRepository != null) {
+            idempotentResponseRepository.save(response);
+        }
+
+        responses.put(key, response);
+    }
+
+    private static ResponseEntity<TaskDto> replay(IdempotentResponse response, TaskDto request) {
+        // the same key on a different request is a client bug, not a retry; the task is created
+        // with the name and description as sent and a retry may differ in anything else
+        if (!Objects.equals(response.getName(), request.getName()) || !Objects.equals(response.getDescription(), request.getDescription())) {
+            throw new IdempotencyKeyReusedException();
+        }
+
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(response.getTaskId());
+        taskDto.setName(response.getName());
+        taskDto.setDescription(response.getDescription());
+        taskDto.setStatus(response.getTaskStatus());
+        taskDto.setVersion(response.getVersion());
+        taskDto.setCreatedAt(response.getCreatedAt());
+        taskDto.setChangeStamp(response.getChangeStamp());
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.getStatus()).header(IDEMPOTENT_REPLAYED, "true");
+
+        if (response.getLocation() != null) {
+            builder.location(URI.create(response.getLocation()));
+        }
+
+        if (response.getETag() != null) {
+            builder.eTag(response.getETag());
+        }
+
+        return builder.body(taskDto);
+    }
+}
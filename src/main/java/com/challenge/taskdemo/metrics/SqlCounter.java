@@ -0,0 +1,93 @@
+package com.challenge.taskdemo.metrics;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Counts the SQL of a request. The counts follow the request to the threads it hands work to
+// through propagate(); SQL on a thread that was not handed any counts, such as the group-commit
+// flusher writing for many requests at once, is not counted.
+public class SqlCounter extends EmptyInterceptor implements StatementInspector {
+
+    private static final ThreadLocal<Counts> CURRENT = new ThreadLocal<Counts>();
+
+    @Override
+    public String inspect(String sql) {
+        Counts counts = CURRENT.get();
+
+        if (counts != null) {
+            counts.statements.increment();
+        }
+
+        return sql;
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        Counts counts = CURRENT.get();
+
+        if (counts != null) {
+            counts.rows.increment();
+        }
+
+        return false;
+    }
+
+    public static Counts current() {
+        return CURRENT.get();
+    }
+
+    public static void attach(Counts counts) {
+        CURRENT.set(counts);
+    }
+
+    public static void detach() {
+        CURRENT.remove();
+    }
+
+    public static <T> Supplier<T> propagate(Supplier<T> supplier) {
+        Counts counts = CURRENT.get();
+
+        if (counts == null) {
+            return supplier;
+        }
+
+        return () -> {
+            Counts previous = CURRENT.get();
+            CURRENT.set(counts);
+
+            try {
+                return supplier.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    private static void restore(Counts previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    // added to by every thread working for the request at once
+    public static class Counts {
+
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        public long statements() {
+            return statements.sum();
+        }
+
+        public long rows() {
+            return rows.sum();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.challenge.taskdemo.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SqlMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String COUNTS = SqlMetricsInterceptor.class.getName() + ".COUNTS";
+
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<String, DistributionSummary>();
+
+    private MeterRegistry meterRegistry;
+
+    public SqlMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    // an async request comes through here again when its result is dispatched, and keeps counting
+    // into the counts it started with
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlCounter.Counts counts = (SqlCounter.Counts) request.getAttribute(COUNTS);
+
+        if (counts == null) {
+            counts = new SqlCounter.Counts();
+            request.setAttribute(COUNTS, counts);
+        }
+
+        SqlCounter.attach(counts);
+
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SqlCounter.detach();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SqlCounter.Counts counts = (SqlCounter.Counts) request.getAttribute(COUNTS);
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+        SqlCounter.detach();
+
+        if (counts != null) {
+            summary("tasks.sql.statements", request.getMethod(), uri).record(counts.statements());
+            summary("tasks.sql.rows", request.getMethod(), uri).record(counts.rows());
+        }
+    }
+
+    private DistributionSummary summary(String name, String method, Object uri) {
+        String tag = uri == null ? "UNKNOWN" : uri.toString();
+
+        return summaries.computeIfAbsent(name + " " + method + " " + tag, key -> DistributionSummary.builder(name)
+                .tag("method", method)
+                .tag("uri", tag)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,51 @@
+package com.challenge.taskdemo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class TimedInvocationInterceptor implements MethodInterceptor {
+
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<Method, Timer>();
+
+    private String name;
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    public TimedInvocationInterceptor(String name, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.name = name;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Timer timer = timer(invocation.getMethod());
+        long start = System.nanoTime();
+
+        try {
+            return invocation.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(Method method) {
+        Timer timer = timers.get(method);
+
+        if (timer == null) {
+            timer = Timer.builder(name)
+                    .tag("class", method.getDeclaringClass().getSimpleName())
+                    .tag("method", method.getName())
+                    .register(meterRegistry.getObject());
+            timers.putIfAbsent(method, timer);
+        }
+
+        return timer;
+    }
+}
@@ -0,0 +1,90 @@
+package com.challenge.taskdemo.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stamps are handed out before the write that carries them, so they can become visible out of
+// order. Every stamp counts as in flight until its write is done, and committedUpTo() stays below
+// the oldest of them, which is as far as a reader of the changes can safely go.
+@Component
+public class ChangeStampGenerator {
+
+    // archived tasks keep their stamps, so a task with the highest stamp may already be in the archive
+    private static final String MAX_CHANGE_STAMP = "SELECT GREATEST((SELECT COALESCE(MAX(CHANGE_STAMP), 0) FROM TASK), "
+            + "(SELECT COALESCE(MAX(CHANGE_STAMP), 0) FROM ARCHIVED_TASK))";
+
+    private final AtomicLong last = new AtomicLong(-1);
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<Long>();
+
+    private ObjectProvider<JdbcTemplate> jdbcTemplate;
+
+    public ChangeStampGenerator(ObjectProvider<JdbcTemplate> jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // in flight until the surrounding transaction completes, or without one until release()
+    public long next() {
+        if (last.get() < 0) {
+            seed();
+        }
+
+        long stamp;
+
+        synchronized (inFlight) {
+            stamp = last.incrementAndGet();
+            inFlight.add(stamp);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    inFlight.remove(stamp);
+                }
+            });
+        }
+
+        return stamp;
+    }
+
+    // a no-op for a stamp taken in a transaction, which is released when that completes
+    public void release(long stamp) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.remove(stamp);
+        }
+    }
+
+    public long committedUpTo() {
+        if (last.get() < 0) {
+            seed();
+        }
+
+        synchronized (inFlight) {
+            return inFlight.isEmpty() ? last.get() : inFlight.first() - 1;
+        }
+    }
+
+    // storage without a TASK table hands over the last stamp it recovered instead
+    public void advanceTo(long stamp) {
+        last.accumulateAndGet(stamp, Math::max);
+    }
+
+    // a sharded database has stamps on every shard, so each of them is read, the primary's own included
+    public void advanceTo(JdbcTemplate shard) {
+        advanceTo(shard.queryForObject(MAX_CHANGE_STAMP, Long.class));
+    }
+
+    // seeded lazily: the generator is created while Hibernate builds the schema it reads from
+    private synchronized void seed() {
+        if (last.get() < 0) {
+            last.set(jdbcTemplate.getObject().queryForObject(MAX_CHANGE_STAMP, Long.class));
+        }
+    }
+}
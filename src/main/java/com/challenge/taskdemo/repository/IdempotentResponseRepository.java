@@ -0,0 +1,20 @@
+package com.challenge.taskdemo.repository;
+
+import com.challenge.taskdemo.entity.IdempotentResponse;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotentResponseRepository extends CrudRepository<IdempotentResponse, String> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotentResponse r WHERE r.storedAt < :storedBefore")
+    int deleteStoredBefore(@Param("storedBefore") Instant storedBefore);
+}
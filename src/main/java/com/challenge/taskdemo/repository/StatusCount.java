@@ -0,0 +1,10 @@
+package com.challenge.taskdemo.repository;
+
+import com.challenge.taskdemo.util.Status;
+
+public interface StatusCount {
+
+    Status getStatus();
+
+    long getCount();
+}
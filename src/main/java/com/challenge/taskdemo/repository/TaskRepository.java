@@ -1,8 +1,163 @@
 package com.challenge.taskdemo.repository;
 
+import com.challenge.taskdemo.entity.ArchivedTask;
 import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface TaskRepository extends CrudRepository<Task, Long> {}
+public interface TaskRepository extends CrudRepository<Task, Long>, TaskRepositoryCustom {
+
+    // A single conditional UPDATE that hands back the row as it was before, so a missing, deleted or stale
+    // row simply comes back empty and nothing is read again afterwards. The delta table is wrapped in a
+    // derived table because H2 1.4.200 drops the change of the first bare OLD TABLE query run on a table.
+    @Transactional
+    @Query(value = "SELECT * FROM (SELECT ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT AS CREATEDAT FROM OLD TABLE ("
+            + "UPDATE TASK SET NAME = COALESCE(NULLIF(:name, ''), NAME), "
+            + "DESCRIPTION = COALESCE(NULLIF(:description, ''), DESCRIPTION), "
+            + "STATUS = COALESCE(:#{#status?.name()}, STATUS), "
+            + "COMPLETED_AT = CASE WHEN COALESCE(:#{#status?.name()}, STATUS) = 'DONE' THEN COALESCE(COMPLETED_AT, CURRENT_TIMESTAMP) END, "
+            + "VERSION = VERSION + 1, CHANGE_STAMP = :changeStamp "
+            + "WHERE ID = :id AND DELETED = FALSE AND VERSION = COALESCE(:version, VERSION)))", nativeQuery = true)
+    Optional<TaskSnapshot> updateReturningPrevious(@Param("id") Long id, @Param("name") String name,
+                                                   @Param("description") String description, @Param("status") Status status,
+                                                   @Param("version") Long version, @Param("changeStamp") long changeStamp);
+
+    // rows are locked in id order so that overlapping batches cannot deadlock each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Task t where t.id in :ids order by t.id")
+    List<Task> findAllForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Query(value = "SELECT * FROM (SELECT ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT AS CREATEDAT FROM OLD TABLE ("
+            + "UPDATE TASK SET DELETED = TRUE, VERSION = VERSION + 1, CHANGE_STAMP = :changeStamp "
+            + "WHERE ID = :id AND DELETED = FALSE AND VERSION = COALESCE(:version, VERSION)))", nativeQuery = true)
+    Optional<TaskSnapshot> deleteReturningPrevious(@Param("id") Long id, @Param("version") Long version,
+                                                   @Param("changeStamp") long changeStamp);
+
+    @Modifying
+    @Query(value = "UPDATE TASK SET NAME = COALESCE(NULLIF(:name, ''), NAME), "
+            + "DESCRIPTION = COALESCE(NULLIF(:description, ''), DESCRIPTION), "
+            + "STATUS = COALESCE(:#{#status?.name()}, STATUS), "
+            + "COMPLETED_AT = CASE WHEN COALESCE(:#{#status?.name()}, STATUS) = 'DONE' THEN COALESCE(COMPLETED_AT, CURRENT_TIMESTAMP) END, "
+            + "VERSION = VERSION + 1, CHANGE_STAMP = :changeStamp "
+            + "WHERE ID = :id AND DELETED = FALSE AND VERSION = COALESCE(:version, VERSION)", nativeQuery = true)
+    int update(@Param("id") Long id, @Param("name") String name, @Param("description") String description,
+               @Param("status") Status status, @Param("version") Long version, @Param("changeStamp") long changeStamp);
+
+    @Modifying
+    @Query(value = "UPDATE TASK SET DELETED = TRUE, VERSION = VERSION + 1, CHANGE_STAMP = :changeStamp "
+            + "WHERE ID = :id AND DELETED = FALSE AND VERSION = COALESCE(:version, VERSION)", nativeQuery = true)
+    int markDeleted(@Param("id") Long id, @Param("version") Long version, @Param("changeStamp") long changeStamp);
+
+    @Transactional
+    default Optional<TaskSnapshot> ackReturningPrevious(Long id, String leaseId, Instant now, long changeStamp) {
+        Optional<TaskSnapshot> previous = findLeasedForUpdate(id, leaseId, now);
+        previous.ifPresent(snapshot -> complete(id, changeStamp));
+
+        return previous;
+    }
+
+    @Query(value = "SELECT ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT AS CREATEDAT FROM TASK "
+            + "WHERE ID = :id AND DELETED = FALSE AND LEASE_ID = :leaseId AND LEASE_EXPIRES_AT >= :now FOR UPDATE", nativeQuery = true)
+    Optional<TaskSnapshot> findLeasedForUpdate(@Param("id") Long id, @Param("leaseId") String leaseId, @Param("now") Instant now);
+
+    @Modifying
+    @Query(value = "UPDATE TASK SET STATUS = 'DONE', COMPLETED_AT = COALESCE(COMPLETED_AT, CURRENT_TIMESTAMP), LEASE_ID = NULL, LEASE_EXPIRES_AT = NULL, "
+            + "VERSION = VERSION + 1, CHANGE_STAMP = :changeStamp WHERE ID = :id", nativeQuery = true)
+    int complete(@Param("id") Long id, @Param("changeStamp") long changeStamp);
+
+    // ordering by status too lets H2 read the candidates off idx_task_status_id instead of sorting every match
+    @Query("select t.id from Task t where t.status = :status "
+            + "and (t.leaseExpiresAt is null or t.leaseExpiresAt < :now) order by t.status, t.id")
+    List<Long> findClaimable(@Param("status") Status status, @Param("now") Instant now, Pageable pageable);
+
+    // the conditions are checked again once a row lock held by a concurrent claim is released,
+    // so a row already leased by someone else is skipped instead of taken over; the status test is
+    // wrapped so that H2 looks the ids up by primary key rather than walking every TODO row
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE TASK SET LEASE_ID = :leaseId, LEASE_EXPIRES_AT = :expiresAt "
+            + "WHERE ID IN (:ids) AND CASE WHEN STATUS = 'TODO' THEN TRUE ELSE FALSE END AND DELETED = FALSE "
+            + "AND (LEASE_EXPIRES_AT IS NULL OR LEASE_EXPIRES_AT < :now)", nativeQuery = true)
+    int lease(@Param("ids") Collection<Long> ids, @Param("leaseId") String leaseId, @Param("now") Instant now,
+              @Param("expiresAt") Instant expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE TASK SET LEASE_ID = NULL, LEASE_EXPIRES_AT = NULL "
+            + "WHERE ID = :id AND LEASE_ID = :leaseId AND LEASE_EXPIRES_AT >= :now", nativeQuery = true)
+    int release(@Param("id") Long id, @Param("leaseId") String leaseId, @Param("now") Instant now);
+
+    List<Task> findByLeaseIdOrderById(String leaseId);
+
+    @Query(value = "SELECT * FROM TASK WHERE CHANGE_STAMP > :since ORDER BY CHANGE_STAMP LIMIT :limit", nativeQuery = true)
+    List<Task> findChangedSince(@Param("since") long since, @Param("limit") int limit);
+
+    @Query("select t.status as status, count(t) as count from Task t group by t.status")
+    List<StatusCount> countByStatus();
+
+    // a chunk is picked without locks and then locked by id, because H2 locks every row a
+    // FOR UPDATE query matches, not only the ones within its limit
+    @Transactional
+    default List<Long> archive(Instant completedBefore, Instant archivedAt, int limit) {
+        List<Long> candidates = findArchivable(Status.DONE, completedBefore, PageRequest.of(0, limit));
+        List<Long> ids = new ArrayList<Long>(candidates.size());
+
+        if (!candidates.isEmpty()) {
+            for (TaskSnapshot snapshot : findForArchive(candidates)) {
+                ids.add(snapshot.getId());
+            }
+        }
+
+        if (!ids.isEmpty()) {
+            copyToArchive(ids, archivedAt);
+            deleteArchived(ids);
+        }
+
+        return ids;
+    }
+
+    // tasks completed before completedAt was recorded are aged by when they were created
+    @Query("select t.id from Task t where t.status = :status and coalesce(t.completedAt, t.createdAt) < :completedBefore order by t.status, t.id")
+    List<Long> findArchivable(@Param("status") Status status, @Param("completedBefore") Instant completedBefore, Pageable pageable);
+
+    @Query(value = "SELECT ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT AS CREATEDAT FROM TASK "
+            + "WHERE ID IN (:ids) AND CASE WHEN STATUS = 'DONE' THEN TRUE ELSE FALSE END AND DELETED = FALSE FOR UPDATE", nativeQuery = true)
+    List<TaskSnapshot> findForArchive(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "INSERT INTO ARCHIVED_TASK (ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT, CHANGE_STAMP, COMPLETED_AT, ARCHIVED_AT) "
+            + "SELECT ID, NAME, DESCRIPTION, STATUS, VERSION, CREATED_AT, CHANGE_STAMP, COMPLETED_AT, :archivedAt FROM TASK WHERE ID IN (:ids)", nativeQuery = true)
+    int copyToArchive(@Param("ids") Collection<Long> ids, @Param("archivedAt") Instant archivedAt);
+
+    @Modifying
+    @Query(value = "DELETE FROM TASK WHERE ID IN (:ids)", nativeQuery = true)
+    int deleteArchived(@Param("ids") Collection<Long> ids);
+
+    @Query("select t.status as status, count(t) as count from ArchivedTask t group by t.status")
+    List<StatusCount> countArchivedByStatus();
+
+    @Query("select t.id from ArchivedTask t where t.id in :ids")
+    List<Long> findArchivedIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select t from ArchivedTask t where t.id > :after order by t.id")
+    List<ArchivedTask> findArchivedAfter(@Param("after") long after, Pageable pageable);
+
+    void flush();
+}
@@ -0,0 +1,20 @@
+package com.challenge.taskdemo.repository;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.Task;
+
+import javax.persistence.Tuple;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface TaskRepositoryCustom {
+
+    List<Task> findAll(TaskQuery query);
+
+    List<Tuple> findAll(TaskQuery query, Collection<String> fields);
+
+    Optional<Tuple> findFieldsById(Long id, Collection<String> fields);
+
+    Optional<Tuple> findArchivedFieldsById(Long id, Collection<String> fields);
+}
@@ -0,0 +1,184 @@
+package com.challenge.taskdemo.repository;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.ArchivedTask;
+import com.challenge.taskdemo.entity.Task;
+import org.hibernate.jpa.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+public class TaskRepositoryCustomImpl implements TaskRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Function<TaskQuery, Object> anchors = this::anchorValue;
+
+    public TaskRepositoryCustomImpl() {
+    }
+
+    // a shard of a sharded store has the anchor of a keyset page only if it also holds that task,
+    // so its anchors are read through the store
+    public TaskRepositoryCustomImpl(EntityManager entityManager, Function<TaskQuery, Object> anchors) {
+        this.entityManager = entityManager;
+        this.anchors = anchors;
+    }
+
+    @Override
+    public List<Task> findAll(TaskQuery query) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Task> criteria = builder.createQuery(Task.class);
+        Root<Task> task = criteria.from(Task.class);
+
+        criteria.where(predicates(builder, task, query).toArray(new Predicate[0]));
+        criteria.orderBy(orders(builder, task, query));
+
+        return entityManager.createQuery(criteria)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setMaxResults(query.getLimit())
+                .getResultList();
+    }
+
+    // a tuple query only reads the selected columns and never puts entities in the persistence context;
+    // archived tasks have the same attributes, so they are read the same way from their own table
+    @Override
+    public List<Tuple> findAll(TaskQuery query, Collection<String> fields) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = builder.createTupleQuery();
+        Class<?> entity = query.isArchived() ? ArchivedTask.class : Task.class;
+        Root<?> task = criteria.from(entity);
+
+        criteria.multiselect(selections(task, fields));
+        criteria.where(predicates(builder, task, query).toArray(new Predicate[0]));
+        criteria.orderBy(orders(builder, task, query));
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(criteria);
+
+        if (query.getLimit() != null) {
+            typedQuery.setMaxResults(query.getLimit());
+        }
+
+        return typedQuery.getResultList();
+    }
+
+    @Override
+    public Optional<Tuple> findFieldsById(Long id, Collection<String> fields) {
+        return findFieldsById(Task.class, id, fields);
+    }
+
+    @Override
+    public Optional<Tuple> findArchivedFieldsById(Long id, Collection<String> fields) {
+        return findFieldsById(ArchivedTask.class, id, fields);
+    }
+
+    private Optional<Tuple> findFieldsById(Class<?> entity, Long id, Collection<String> fields) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = builder.createTupleQuery();
+        Root<?> task = criteria.from(entity);
+
+        criteria.multiselect(selections(task, fields));
+        criteria.where(builder.equal(task.get("id"), id));
+
+        return entityManager.createQuery(criteria).getResultList().stream().findFirst();
+    }
+
+    private List<Selection<?>> selections(Root<?> task, Collection<String> fields) {
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+
+        for (String field : fields) {
+            selections.add(task.get(field).alias(field));
+        }
+
+        return selections;
+    }
+
+    private List<Predicate> predicates(CriteriaBuilder builder, Root<?> task, TaskQuery query) {
+        List<Predicate> predicates = new ArrayList<>();
+
+        if (query.getStatus() != null) {
+            predicates.add(builder.equal(task.get("status"), query.getStatus()));
+        }
+
+        if (query.getNameStartsWith() != null) {
+            predicates.add(builder.like(task.get("name"), escapeLike(query.getNameStartsWith()) + "%", '\\'));
+        }
+
+        if (query.getCreatedAfter() != null) {
+            predicates.add(builder.greaterThan(task.get("createdAt"), query.getCreatedAfter()));
+        }
+
+        if (query.getCreatedBefore() != null) {
+            predicates.add(builder.lessThan(task.get("createdAt"), query.getCreatedBefore()));
+        }
+
+        if (query.getAfter() != null) {
+            predicates.add(keyset(builder, task, query));
+        }
+
+        return predicates;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Comparable<? super T>> Predicate keyset(CriteriaBuilder builder, Root<?> task, TaskQuery query) {
+        Path<Long> id = task.get("id");
+        Predicate afterId = query.isSortDescending() ? builder.lessThan(id, query.getAfter()) : builder.greaterThan(id, query.getAfter());
+
+        if (query.getSortProperty().equals("id")) {
+            return afterId;
+        }
+
+        T anchor = (T) anchors.apply(query);
+
+        if (anchor == null) {
+            return afterId;
+        }
+
+        Path<T> property = task.get(query.getSortProperty());
+        Predicate afterProperty = query.isSortDescending() ? builder.lessThan(property, anchor) : builder.greaterThan(property, anchor);
+
+        return builder.or(afterProperty, builder.and(builder.equal(property, anchor), afterId));
+    }
+
+    public Object anchorValue(TaskQuery query) {
+        String entity = query.isArchived() ? "ArchivedTask" : "Task";
+        List<?> values = entityManager.createQuery("select t." + query.getSortProperty() + " from " + entity + " t where t.id = :id")
+                .setParameter("id", query.getAfter())
+                .getResultList();
+
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    private List<Order> orders(CriteriaBuilder builder, Root<?> task, TaskQuery query) {
+        List<Order> orders = new ArrayList<>();
+
+        String sortProperty = query.getSortProperty();
+
+        // status is fixed by the filter, ordering by it lets the (status, id) index return rows already sorted
+        if (sortProperty.equals("id") && query.getStatus() != null) {
+            sortProperty = "status";
+        }
+
+        if (!sortProperty.equals("id")) {
+            Path<?> property = task.get(sortProperty);
+            orders.add(query.isSortDescending() ? builder.desc(property) : builder.asc(property));
+        }
+
+        Path<?> id = task.get("id");
+        orders.add(query.isSortDescending() ? builder.desc(id) : builder.asc(id));
+
+        return orders;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
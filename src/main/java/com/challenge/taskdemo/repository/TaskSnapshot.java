@@ -0,0 +1,20 @@
+package com.challenge.taskdemo.repository;
+
+import com.challenge.taskdemo.util.Status;
+
+import java.time.Instant;
+
+public interface TaskSnapshot {
+
+    Long getId();
+
+    String getName();
+
+    String getDescription();
+
+    Status getStatus();
+
+    Long getVersion();
+
+    Instant getCreatedAt();
+}
@@ -0,0 +1,69 @@
+package com.challenge.taskdemo.routing;
+
+import java.util.function.Supplier;
+
+// the client a request runs for, so that its reads can follow its own writes
+public final class ReadSession {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<String>();
+    private static final ThreadLocal<Boolean> ON_PRIMARY = new ThreadLocal<Boolean>();
+
+    private ReadSession() {
+    }
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    // reads whose result outlives the request, or that must not miss anything committed, skip the replicas
+    public static <T> T onPrimary(Supplier<T> read) {
+        Boolean previous = ON_PRIMARY.get();
+        ON_PRIMARY.set(Boolean.TRUE);
+
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                ON_PRIMARY.remove();
+            } else {
+                ON_PRIMARY.set(previous);
+            }
+        }
+    }
+
+    static boolean isOnPrimary() {
+        return ON_PRIMARY.get() != null;
+    }
+
+    static void open(String client) {
+        CURRENT.set(client);
+    }
+
+    static void close() {
+        CURRENT.remove();
+    }
+
+    // work handed to another thread keeps running for the client that asked for it
+    public static <T> Supplier<T> propagate(Supplier<T> supplier) {
+        String client = CURRENT.get();
+
+        if (client == null) {
+            return supplier;
+        }
+
+        return () -> {
+            String previous = CURRENT.get();
+            CURRENT.set(client);
+
+            try {
+                return supplier.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+}
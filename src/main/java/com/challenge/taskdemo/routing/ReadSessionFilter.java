@@ -0,0 +1,31 @@
+package com.challenge.taskdemo.routing;
+
+import com.challenge.taskdemo.admission.ClientResolver;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+public class ReadSessionFilter extends OncePerRequestFilter {
+
+    private final ClientResolver clientResolver;
+
+    public ReadSessionFilter(ClientResolver clientResolver) {
+        this.clientResolver = clientResolver;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ReadSession.open(clientResolver.resolve(request));
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadSession.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.challenge.taskdemo.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// the clients whose last write may not be on every replica yet; without replicas nothing is written down
+@Component
+public class RecentWrites {
+
+    private static final long MAXIMUM_SESSIONS = 100000;
+
+    private final Cache<String, Instant> lastWrites;
+
+    public RecentWrites(@Value("${tasks.datasource.max-lag:5s}") Duration maxLag) {
+        // a write older than max-lag is on every replica that may still be read from
+        this.lastWrites = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_SESSIONS)
+                .expireAfterWrite(maxLag)
+                .build();
+    }
+
+    // whether the current client's reads are held on the primary until the replicas have its last write
+    public boolean wroteRecently() {
+        return lastWrite(ReadSession.current()) != null;
+    }
+
+    void record(String client, Instant writtenAt) {
+        lastWrites.put(client, writtenAt);
+    }
+
+    Instant lastWrite(String client) {
+        return client == null ? null : lastWrites.getIfPresent(client);
+    }
+}
@@ -0,0 +1,178 @@
+package com.challenge.taskdemo.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// read-only transactions go to a replica that is fresh enough for the session, everything else to the primary
+public class ReplicaRoutingDataSource extends AbstractDataSource implements MeterBinder, Closeable {
+
+    private static final String UPDATE_HEARTBEAT = "UPDATE REPLICATION_HEARTBEAT SET BEAT_AT_MILLIS = ? WHERE ID = 1";
+    private static final String INSERT_HEARTBEAT = "INSERT INTO REPLICATION_HEARTBEAT (ID, BEAT_AT_MILLIS) VALUES (1, ?)";
+    private static final String SELECT_HEARTBEAT = "SELECT BEAT_AT_MILLIS FROM REPLICATION_HEARTBEAT WHERE ID = 1";
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<Replica>();
+    private final Duration maxLag;
+    private final Clock clock;
+    private final RecentWrites recentWrites;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag, Clock clock,
+                                    RecentWrites recentWrites) {
+        this.primary = primary;
+        this.maxLag = maxLag;
+        this.clock = clock;
+        this.recentWrites = recentWrites;
+
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWrite();
+
+            return primary.getConnection();
+        }
+
+        if (ReadSession.isOnPrimary()) {
+            return primary.getConnection();
+        }
+
+        Replica replica = replicaFor(recentWrites.lastWrite(ReadSession.current()));
+
+        if (replica != null) {
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException sqlException) {
+                // taken out of rotation until the next check finds it again
+                replica.caughtUpTo = null;
+            }
+        }
+
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // the primary stamps the time, each replica shows the newest stamp it has applied
+    @Scheduled(fixedDelayString = "${tasks.datasource.check-interval:PT1S}")
+    public void checkReplicas() {
+        long now = clock.millis();
+        JdbcTemplate primaryTemplate = new JdbcTemplate(primary);
+
+        if (primaryTemplate.update(UPDATE_HEARTBEAT, now) == 0) {
+            primaryTemplate.update(INSERT_HEARTBEAT, now);
+        }
+
+        for (Replica replica : replicas) {
+            try {
+                List<Long> beats = replica.jdbcTemplate.queryForList(SELECT_HEARTBEAT, Long.class);
+                replica.caughtUpTo = beats.isEmpty() ? null : Instant.ofEpochMilli(beats.get(0));
+            } catch (DataAccessException dataAccessException) {
+                replica.caughtUpTo = null;
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : replicas) {
+            Gauge.builder("tasks.datasource.replica.lag", replica, this::lagSeconds)
+                    .tag("replica", replica.name)
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(primary);
+
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private Replica replicaFor(Instant lastWrite) {
+        Instant oldestAllowed = clock.instant().minus(maxLag);
+        int start = next.getAndIncrement();
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            Instant caughtUpTo = replica.caughtUpTo;
+
+            // a replica that stopped answering checks ages out on its own
+            if (caughtUpTo != null && !caughtUpTo.isBefore(oldestAllowed) && (lastWrite == null || caughtUpTo.isAfter(lastWrite))) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    private void rememberWrite() {
+        String session = ReadSession.current();
+
+        if (session == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                recentWrites.record(session, clock.instant());
+            }
+        });
+    }
+
+    private double lagSeconds(Replica replica) {
+        Instant caughtUpTo = replica.caughtUpTo;
+
+        return caughtUpTo == null ? Double.NaN : (clock.millis() - caughtUpTo.toEpochMilli()) / (double) TimeUnit.SECONDS.toMillis(1);
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private volatile Instant caughtUpTo;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.challenge.taskdemo.search;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.ArchivedTask;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.TaskRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+public class TaskSearchIndex {
+
+    static final int NAME_WEIGHT = 3;
+    static final int DESCRIPTION_WEIGHT = 1;
+    static final double PREFIX_MATCH_FACTOR = 0.5;
+    static final int REBUILD_FETCH_SIZE = 1000;
+
+    private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<String, Map<Long, Integer>>();
+    private final Map<Long, Document> documents = new HashMap<Long, Document>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private TaskRepository taskRepository;
+
+    public TaskSearchIndex(TaskRepository taskRepository) {
+        this.taskRepository = taskRepository;
+    }
+
+    public void index(Long id, Long version, String name, String description) {
+        Map<String, Integer> terms = new HashMap<String, Integer>();
+        addTerms(terms, name, NAME_WEIGHT);
+        addTerms(terms, description, DESCRIPTION_WEIGHT);
+
+        lock.writeLock().lock();
+        try {
+            Document previous = documents.get(id);
+
+            // a rebuild may read a row before a concurrent write indexes a newer version of it
+            if (previous != null && version != null && previous.version != null && previous.version > version) {
+                return;
+            }
+
+            removePostings(id, previous);
+            documents.put(id, new Document(version, terms));
+
+            for (Map.Entry<String, Integer> term : terms.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new HashMap<Long, Integer>()).put(id, term.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removePostings(id, documents.remove(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> search(String text, int offset, int limit) {
+        List<String> tokens = new ArrayList<String>(new LinkedHashSet<String>(tokenize(text)));
+
+        if (tokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            // score the most selective token through the postings and check the others per candidate,
+            // so a common word next to a rare one does not walk the whole index
+            String rarest = Collections.min(tokens, Comparator.comparingLong(this::frequency));
+            Map<Long, Double> scores = match(rarest);
+
+            for (String token : tokens) {
+                if (token.equals(rarest)) {
+                    continue;
+                }
+
+                Iterator<Map.Entry<Long, Double>> candidates = scores.entrySet().iterator();
+                while (candidates.hasNext()) {
+                    Map.Entry<Long, Double> candidate = candidates.next();
+                    double score = score(documents.get(candidate.getKey()), token);
+
+                    if (score == 0) {
+                        candidates.remove();
+                    } else {
+                        candidate.setValue(candidate.getValue() + score);
+                    }
+                }
+            }
+
+            return top(scores, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        TaskQuery query = new TaskQuery();
+        query.setLimit(REBUILD_FETCH_SIZE);
+
+        List<Task> tasks;
+        do {
+            tasks = taskRepository.findAll(query);
+
+            for (Task task : tasks) {
+                index(task.getId(), task.getVersion(), task.getName(), task.getDescription());
+            }
+
+            if (!tasks.isEmpty()) {
+                query.setAfter(tasks.get(tasks.size() - 1).getId());
+            }
+        } while (tasks.size() == REBUILD_FETCH_SIZE);
+        // archived tasks are searchable too
+        List<ArchivedTask> archived;
+        long after = 0;
+        do {
+            archived = taskRepository.findArchivedAfter(after, PageRequest.of(0, REBUILD_FETCH_SIZE));
+
+            for (ArchivedTask task : archived) {
+                index(task.getId(), task.getVersion(), task.getName(), task.getDescription());
+                after = task.getId();
+            }
+        } while (archived.size() == REBUILD_FETCH_SIZE);
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> tokens = new ArrayList<String>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    private long frequency(String token) {
+        long frequency = 0;
+        for (Map<Long, Integer> ids : terms(token).values()) {
+            frequency += ids.size();
+        }
+
+        return frequency;
+    }
+
+    private Map<Long, Double> match(String token) {
+        Map<Long, Double> scores = new HashMap<Long, Double>();
+
+        for (Map.Entry<String, Map<Long, Integer>> term : terms(token).entrySet()) {
+            double weight = weight(token, term.getKey(), term.getValue().size());
+
+            for (Map.Entry<Long, Integer> posting : term.getValue().entrySet()) {
+                scores.merge(posting.getKey(), posting.getValue() * weight, Math::max);
+            }
+        }
+
+        return scores;
+    }
+
+    private double score(Document document, String token) {
+        double score = 0;
+
+        for (Map.Entry<String, Integer> term : document.terms.entrySet()) {
+            if (term.getKey().startsWith(token)) {
+                score = Math.max(score, term.getValue() * weight(token, term.getKey(), postings.get(term.getKey()).size()));
+            }
+        }
+
+        return score;
+    }
+
+    // the token matches itself and every longer term it is a prefix of, the latter at a discount
+    private NavigableMap<String, Map<Long, Integer>> terms(String token) {
+        return postings.subMap(token, true, token + Character.MAX_VALUE, true);
+    }
+
+    private double weight(String token, String term, int documentFrequency) {
+        double idf = Math.log(1 + (double) documents.size() / documentFrequency);
+
+        return term.equals(token) ? idf : idf * PREFIX_MATCH_FACTOR;
+    }
+
+    private static List<Long> top(Map<Long, Double> scores, int offset, int limit) {
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+
+        if (offset >= scores.size()) {
+            return Collections.emptyList();
+        }
+
+        int size = Math.min(offset + limit, scores.size());
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<Map.Entry<Long, Double>>(size + 1, ranking.reversed());
+        for (Map.Entry<Long, Double> score : scores.entrySet()) {
+            best.add(score);
+
+            if (best.size() > size) {
+                best.poll();
+            }
+        }
+
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<Map.Entry<Long, Double>>(best);
+        ranked.sort(ranking);
+
+        List<Long> ids = new ArrayList<Long>(limit);
+        for (Map.Entry<Long, Double> entry : ranked.subList(offset, ranked.size())) {
+            ids.add(entry.getKey());
+        }
+
+        return ids;
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Integer::sum);
+        }
+    }
+
+    private void removePostings(Long id, Document document) {
+        if (document == null) {
+            return;
+        }
+
+        for (String term : document.terms.keySet()) {
+            Map<Long, Integer> ids = postings.get(term);
+            ids.remove(id);
+
+            if (ids.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static class Document {
+
+        private final Long version;
+        private final Map<String, Integer> terms;
+
+        private Document(Long version, Map<String, Integer> terms) {
+            this.version = version;
+            this.terms = terms;
+        }
+    }
+}
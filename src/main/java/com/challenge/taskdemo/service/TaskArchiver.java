@@ -0,0 +1,55 @@
+package com.challenge.taskdemo.service;
+
+import com.challenge.taskdemo.cache.TaskCache;
+import com.challenge.taskdemo.repository.TaskRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "tasks.archive.enabled", havingValue = "true", matchIfMissing = true)
+public class TaskArchiver {
+
+    private TaskRepository taskRepository;
+    private TaskCache taskCache;
+    private Duration after;
+    private int batchSize;
+
+    public TaskArchiver(TaskRepository taskRepository, TaskCache taskCache,
+                        @Value("${tasks.archive.after:30d}") Duration after, @Value("${tasks.archive.batch-size:500}") int batchSize) {
+        this.taskRepository = taskRepository;
+        this.taskCache = taskCache;
+        this.after = after;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${tasks.archive.interval:PT1M}", fixedDelayString = "${tasks.archive.interval:PT1M}")
+    public void archive() {
+        archive(Instant.now().minus(after));
+    }
+
+    // every chunk is its own short transaction, so writers never wait on more than one chunk's rows
+    public int archive(Instant completedBefore) {
+        Instant archivedAt = Instant.now();
+        int archived = 0;
+
+        List<Long> ids;
+        do {
+            ids = taskRepository.archive(completedBefore, archivedAt, batchSize);
+
+            // reads by id and searches still find them, but they no longer take up room in the cache
+            for (Long id : ids) {
+                taskCache.evict(id);
+            }
+
+            archived += ids.size();
+        } while (ids.size() == batchSize);
+
+        return archived;
+    }
+}
@@ -1,17 +1,44 @@
 package com.challenge.taskdemo.service;
 
+import com.challenge.taskdemo.cache.SingleFlight;
+import com.challenge.taskdemo.cache.TaskCache;
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
+import com.challenge.taskdemo.dto.TaskFields;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.dto.TaskSearchResultDto;
+import com.challenge.taskdemo.events.TaskEvent;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.exception.BatchSizeExceededException;
+import com.challenge.taskdemo.exception.TaskArchivedException;
+import com.challenge.taskdemo.exception.TaskLeaseLostException;
 import com.challenge.taskdemo.util.Mapper;
 import com.challenge.taskdemo.util.Status;
 import com.challenge.taskdemo.dto.TaskDto;
 import com.challenge.taskdemo.entity.Task;
 import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.exception.TaskVersionMismatchException;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
 import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.routing.ReadSession;
+import com.challenge.taskdemo.routing.RecentWrites;
+import com.challenge.taskdemo.search.TaskSearchIndex;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import javax.persistence.Tuple;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
 
 @Service
 @AllArgsConstructor
@@ -19,61 +46,525 @@ public class TaskService {
 
     private TaskRepository taskRepository;
     private Mapper mapper;
+    private TaskCache taskCache;
+    private Validator validator;
+    private TaskStats taskStats;
+    private TaskEventStream taskEventStream;
+    private ChangeStampGenerator changeStampGenerator;
+    private TaskSearchIndex taskSearchIndex;
+    private RecentWrites recentWrites;
+    private final SingleFlight<List<Object>, TaskDto> partialLoads = new SingleFlight<List<Object>, TaskDto>();
 
-    public List<TaskDto> getAll() {
-        List<TaskDto> tasksDto = new ArrayList<TaskDto>();
+    static final int MAX_BATCH_SIZE = 1000;
+    static final int CLAIM_WINDOW_FACTOR = 8;
 
-        Iterable<Task> tasks = taskRepository.findAll();
+    @Transactional(readOnly = true)
+    public List<TaskDto> find(TaskQuery query) {
+        if (query.getSelection() != null || query.isArchived()) {
+            List<TaskDto> tasksDto = new ArrayList<TaskDto>();
+            Collection<String> fields = query.getSelection() == null ? TaskFields.ALL_FIELDS : query.getSelection();
 
-        if (tasks != null) {
-            for (Task task : tasks) {
-                tasksDto.add(mapper.convertToDto(task));
+            for (Tuple tuple : taskRepository.findAll(query, fields)) {
+                tasksDto.add(mapper.convertToDto(tuple));
             }
+
+            return tasksDto;
+        }
+
+        List<TaskDto> tasksDto = new ArrayList<TaskDto>(query.getLimit());
+
+        List<Task> tasks = taskRepository.findAll(query);
+
+        for (Task task : tasks) {
+            tasksDto.add(mapper.convertToDto(task));
         }
 
         return tasksDto;
     }
 
+    // Ids the index still holds for tasks that are gone are skipped and the page is filled from
+    // further down the ranking, so offsets count index hits and the next page starts after the
+    // last hit this one used. Archived tasks stay in the index and are read from the archive.
+    @Transactional(readOnly = true)
+    public TaskSearchResultDto search(String text, int offset, int limit) {
+        List<TaskDto> tasksDto = new ArrayList<TaskDto>(limit);
+        int position = offset;
+
+        while (tasksDto.size() < limit) {
+            int wanted = limit - tasksDto.size();
+            List<Long> ids = taskSearchIndex.search(text, position, wanted);
+
+            Map<Long, TaskDto> found = new HashMap<Long, TaskDto>();
+            for (Task task : taskRepository.findAllById(ids)) {
+                found.put(task.getId(), mapper.convertToDto(task));
+            }
+
+            for (Long id : ids) {
+                if (!found.containsKey(id)) {
+                    taskRepository.findArchivedFieldsById(id, TaskFields.ALL_FIELDS).ifPresent(tuple -> found.put(id, mapper.convertToDto(tuple)));
+                }
+
+                if (found.containsKey(id)) {
+                    tasksDto.add(found.get(id));
+                }
+            }
+
+            position += ids.size();
+
+            if (ids.size() < wanted) {
+                return new TaskSearchResultDto(tasksDto, null);
+            }
+        }
+
+        return new TaskSearchResultDto(tasksDto, position);
+    }
+
+    @Transactional(readOnly = true)
+    public TaskChangesDto getChanges(long since, int limit) {
+        // a replica may not have applied every committed stamp yet, and a stamp it lacks would be skipped for good
+        return ReadSession.onPrimary(() -> changes(since, limit));
+    }
+
+    private TaskChangesDto changes(long since, int limit) {
+        List<TaskDto> changed = new ArrayList<TaskDto>();
+        List<Long> deleted = new ArrayList<Long>();
+        long watermark = since;
+        // taken before the query: everything up to it is committed and visible to the query, a
+        // later stamp may still have an older one in flight that the next call must not skip
+        long committed = changeStampGenerator.committedUpTo();
+
+        for (Task task : taskRepository.findChangedSince(since, limit)) {
+            if (task.getChangeStamp() > committed) {
+                break;
+            }
+
+            if (task.isDeleted()) {
+                deleted.add(task.getId());
+            } else {
+                changed.add(mapper.convertToDto(task));
+            }
+
+            watermark = task.getChangeStamp();
+        }
+
+        return new TaskChangesDto(changed, deleted, watermark);
+    }
+
+    public Map<Status, Long> getStats() {
+        return taskStats.snapshot();
+    }
+
     public TaskDto get(Long id) {
-        return mapper.convertToDto(getById(id));
+        return taskCache.get(id, this::load);
+    }
+
+    // a partial task is read straight from the database, the cache only holds whole ones
+    @Transactional(readOnly = true)
+    public TaskDto get(Long id, Collection<String> fields) {
+        if (recentWrites.wroteRecently()) {
+            return load(id, fields);
+        }
+
+        return partialLoads.load(Arrays.asList(id, fields), key -> load(id, fields));
     }
 
     public TaskDto add(TaskDto taskDto) {
         taskDto.setStatus(Status.TODO);
 
-        return mapper.convertToDto(taskRepository.save(mapper.convertToEntity(taskDto)));
+        TaskDto taskDtoNew = mapper.convertToDto(taskRepository.save(mapper.convertToEntity(taskDto)));
+        cache(taskDtoNew);
+        taskStats.added(taskDtoNew.getStatus());
+        index(taskDtoNew);
+        taskEventStream.publish(TaskEvent.Type.CREATED, taskDtoNew);
+
+        return taskDtoNew;
     }
 
     public TaskDto update(Long id, TaskDto taskDto) {
-        Task task = getById(id);
+        return update(id, taskDto, null);
+    }
+
+    public TaskDto update(Long id, TaskDto taskDto, Long expectedVersion) {
+        long changeStamp = changeStampGenerator.next();
+        TaskSnapshot previous;
+
+        try {
+            previous = taskRepository.updateReturningPrevious(id, taskDto.getName(), taskDto.getDescription(), taskDto.getStatus(), expectedVersion, changeStamp)
+                    .orElseThrow(() -> writeConflict(id, expectedVersion));
+        } finally {
+            changeStampGenerator.release(changeStamp);
+        }
 
-        if (taskDto.getName() != null && !taskDto.getName().isEmpty()) {
-            task.setName(taskDto.getName());
+        return updated(previous, taskDto, changeStamp);
+    }
+
+    public TaskClaimDto claim(int limit, Duration lease) {
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(lease);
+        String leaseId = UUID.randomUUID().toString();
+
+        // each claimer picks at random from a wider window than it needs, so concurrent claims
+        // rarely wait on each other's row locks and a lost race only costs another round
+        List<Long> candidates = new ArrayList<Long>(taskRepository.findClaimable(Status.TODO, now, PageRequest.of(0, limit * CLAIM_WINDOW_FACTOR)));
+        Collections.shuffle(candidates);
+
+        int claimed = 0;
+        int from = 0;
+        while (claimed < limit && from < candidates.size()) {
+            int to = Math.min(from + limit - claimed, candidates.size());
+            claimed += taskRepository.lease(candidates.subList(from, to), leaseId, now, expiresAt);
+            from = to;
         }
 
-        if (taskDto.getDescription() != null && !taskDto.getDescription().isEmpty()) {
-            task.setDescription(taskDto.getDescription());
+        List<TaskDto> tasksDto = new ArrayList<TaskDto>(claimed);
+        if (claimed > 0) {
+            for (Task task : taskRepository.findByLeaseIdOrderById(leaseId)) {
+                tasksDto.add(mapper.convertToDto(task));
+            }
         }
 
-        if (taskDto.getStatus() != null) {
-            task.setStatus(taskDto.getStatus());
+        return new TaskClaimDto(leaseId, expiresAt, tasksDto);
+    }
+
+    public TaskDto ack(Long id, String leaseId) {
+        long changeStamp = changeStampGenerator.next();
+        TaskSnapshot previous;
+
+        try {
+            previous = taskRepository.ackReturningPrevious(id, leaseId, Instant.now(), changeStamp)
+                    .orElseThrow(() -> leaseLost(id));
+        } finally {
+            changeStampGenerator.release(changeStamp);
         }
 
-        return mapper.convertToDto(taskRepository.save(task));
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(Status.DONE);
+
+        return updated(previous, taskDto, changeStamp);
+    }
+
+    public void nack(Long id, String leaseId) {
+        if (taskRepository.release(id, leaseId, Instant.now()) == 0) {
+            throw leaseLost(id);
+        }
     }
 
     public void delete(Long id) {
-        getById(id);
-        taskRepository.deleteById(id);
+        delete(id, null);
     }
 
-    private Task getById(Long id) {
-        Optional<Task> optional = taskRepository.findById(id);
+    public void delete(Long id, Long expectedVersion) {
+        long changeStamp = changeStampGenerator.next();
+        TaskSnapshot previous;
 
-        if (!optional.isPresent()) {
-            throw new TaskNotFoundException();
+        try {
+            previous = taskRepository.deleteReturningPrevious(id, expectedVersion, changeStamp)
+                    .orElseThrow(() -> writeConflict(id, expectedVersion));
+        } finally {
+            changeStampGenerator.release(changeStamp);
         }
 
-        return optional.get();
+        evict(id);
+        taskStats.removed(previous.getStatus());
+        taskSearchIndex.remove(id);
+        taskEventStream.publish(TaskEvent.Type.DELETED, mapper.convertToDto(mapper.convertToEntity(previous)));
+    }
+
+    @Transactional
+    public List<TaskBatchResultDto> addAll(List<TaskDto> tasksDto) {
+        checkBatchSize(tasksDto);
+
+        TaskBatchResultDto[] results = new TaskBatchResultDto[tasksDto.size()];
+        List<Task> tasks = new ArrayList<Task>(tasksDto.size());
+        List<Integer> indexes = new ArrayList<Integer>(tasksDto.size());
+
+        for (int i = 0; i < tasksDto.size(); i++) {
+            TaskDto taskDto = tasksDto.get(i);
+            List<String> errors = validate(taskDto);
+
+            if (!errors.isEmpty()) {
+                results[i] = new TaskBatchResultDto(i, null, HttpStatus.BAD_REQUEST.value(), errors, null);
+                continue;
+            }
+
+            taskDto.setStatus(Status.TODO);
+            tasks.add(mapper.convertToEntity(taskDto));
+            indexes.add(i);
+        }
+
+        List<TaskDto> created = new ArrayList<TaskDto>(tasks.size());
+
+        for (Task task : taskRepository.saveAll(tasks)) {
+            TaskDto taskDtoNew = mapper.convertToDto(task);
+            int index = indexes.get(created.size());
+
+            results[index] = new TaskBatchResultDto(index, taskDtoNew.getId(), HttpStatus.CREATED.value(), null, taskDtoNew);
+            created.add(taskDtoNew);
+        }
+
+        afterCommit(() -> created.forEach(taskDtoNew -> {
+            cache(taskDtoNew);
+            taskStats.added(taskDtoNew.getStatus());
+            index(taskDtoNew);
+            taskEventStream.publish(TaskEvent.Type.CREATED, taskDtoNew);
+        }));
+
+        return Arrays.asList(results);
+    }
+
+    @Transactional
+    public List<TaskBatchResultDto> updateAll(List<TaskDto> tasksDto) {
+        checkBatchSize(tasksDto);
+
+        List<Long> ids = new ArrayList<Long>(tasksDto.size());
+        for (TaskDto taskDto : tasksDto) {
+            if (taskDto != null && taskDto.getId() != null) {
+                ids.add(taskDto.getId());
+            }
+        }
+
+        Map<Long, Task> tasks = new HashMap<Long, Task>();
+        Map<Long, Status> previousStatus = new HashMap<Long, Status>();
+        for (Task task : taskRepository.findAllById(ids)) {
+            tasks.put(task.getId(), task);
+            previousStatus.put(task.getId(), task.getStatus());
+        }
+
+        Set<Long> archived = archived(ids, tasks.keySet());
+        List<TaskBatchResultDto> results = new ArrayList<TaskBatchResultDto>(tasksDto.size());
+        Map<Long, Task> updated = new LinkedHashMap<Long, Task>();
+
+        for (int i = 0; i < tasksDto.size(); i++) {
+            TaskDto taskDto = tasksDto.get(i);
+            List<String> errors = validate(taskDto, TaskDto.BatchUpdate.class);
+
+            if (!errors.isEmpty()) {
+                results.add(new TaskBatchResultDto(i, null, HttpStatus.BAD_REQUEST.value(), errors, null));
+                continue;
+            }
+
+            Task task = tasks.get(taskDto.getId());
+
+            if (task == null) {
+                HttpStatus status = archived.contains(taskDto.getId()) ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND;
+                results.add(new TaskBatchResultDto(i, taskDto.getId(), status.value(), null, null));
+                continue;
+            }
+
+            updated.put(task.getId(), mapper.merge(taskDto, task));
+            results.add(new TaskBatchResultDto(i, task.getId(), HttpStatus.OK.value(), null, null));
+        }
+
+        taskRepository.saveAll(updated.values());
+        taskRepository.flush();
+
+        Map<Long, TaskDto> updatedDto = new HashMap<Long, TaskDto>();
+        for (Task task : updated.values()) {
+            updatedDto.put(task.getId(), mapper.convertToDto(task));
+        }
+
+        for (TaskBatchResultDto result : results) {
+            if (result.getStatus() == HttpStatus.OK.value()) {
+                result.setTask(updatedDto.get(result.getId()));
+            }
+        }
+
+        afterCommit(() -> updatedDto.values().forEach(taskDtoUpdated -> {
+            cache(taskDtoUpdated);
+            taskStats.changed(previousStatus.get(taskDtoUpdated.getId()), taskDtoUpdated.getStatus());
+            index(taskDtoUpdated);
+            taskEventStream.publish(TaskEvent.Type.UPDATED, taskDtoUpdated);
+        }));
+
+        return results;
+    }
+
+    // status changes queued by TaskUpdateBatcher, all committed in one transaction; ids that are gone are left out
+    @Transactional
+    public Map<Long, TaskDto> updateStatuses(Map<Long, Status> statuses) {
+        List<Task> tasks = taskRepository.findAllForUpdate(statuses.keySet());
+        Map<Long, Status> previousStatus = new HashMap<Long, Status>();
+        List<Task> changed = new ArrayList<Task>();
+
+        // an unchanged status is neither written nor announced
+        for (Task task : tasks) {
+            previousStatus.put(task.getId(), task.getStatus());
+
+            if (task.getStatus() != statuses.get(task.getId())) {
+                task.setStatus(statuses.get(task.getId()));
+                changed.add(task);
+            }
+        }
+
+        taskRepository.saveAll(changed);
+        taskRepository.flush();
+
+        Map<Long, TaskDto> updatedDto = new HashMap<Long, TaskDto>();
+        List<TaskDto> changedDto = new ArrayList<TaskDto>();
+
+        for (Task task : tasks) {
+            TaskDto taskDtoUpdated = mapper.convertToDto(task);
+            updatedDto.put(task.getId(), taskDtoUpdated);
+
+            if (previousStatus.get(task.getId()) != task.getStatus()) {
+                changedDto.add(taskDtoUpdated);
+            }
+        }
+
+        afterCommit(() -> changedDto.forEach(taskDtoUpdated -> {
+            cache(taskDtoUpdated);
+            taskStats.changed(previousStatus.get(taskDtoUpdated.getId()), taskDtoUpdated.getStatus());
+            index(taskDtoUpdated);
+            taskEventStream.publish(TaskEvent.Type.UPDATED, taskDtoUpdated);
+        }));
+
+        return updatedDto;
+    }
+
+    @Transactional
+    public List<TaskBatchResultDto> deleteAll(List<Long> ids) {
+        checkBatchSize(ids);
+
+        List<Task> tasks = new ArrayList<Task>(ids.size());
+        Set<Long> found = new HashSet<Long>();
+
+        for (Task task : taskRepository.findAllById(ids)) {
+            task.setDeleted(true);
+            tasks.add(task);
+            found.add(task.getId());
+        }
+
+        // deletes are soft so that /tasks/changes can hand out tombstones
+        taskRepository.saveAll(tasks);
+        taskRepository.flush();
+
+        Set<Long> archived = archived(ids, found);
+        List<TaskBatchResultDto> results = new ArrayList<TaskBatchResultDto>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            HttpStatus status = found.contains(ids.get(i)) ? HttpStatus.NO_CONTENT
+                    : archived.contains(ids.get(i)) ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND;
+            results.add(new TaskBatchResultDto(i, ids.get(i), status.value(), null, null));
+        }
+
+        afterCommit(() -> tasks.forEach(task -> {
+            evict(task.getId());
+            taskStats.removed(task.getStatus());
+            taskSearchIndex.remove(task.getId());
+            taskEventStream.publish(TaskEvent.Type.DELETED, mapper.convertToDto(task));
+        }));
+
+        return results;
+    }
+
+    // archived tasks are no longer in the task table but can still be read by id
+    private TaskDto load(Long id, Collection<String> fields) {
+        Optional<Tuple> tuple = taskRepository.findFieldsById(id, fields);
+
+        if (!tuple.isPresent()) {
+            tuple = taskRepository.findArchivedFieldsById(id, fields);
+        }
+
+        return mapper.convertToDto(tuple.orElseThrow(TaskNotFoundException::new));
+    }
+
+    private TaskDto load(Long id) {
+        Optional<Task> task = taskRepository.findById(id);
+
+        if (task.isPresent()) {
+            return mapper.convertToDto(task.get());
+        }
+
+        return mapper.convertToDto(taskRepository.findArchivedFieldsById(id, TaskFields.ALL_FIELDS).orElseThrow(TaskNotFoundException::new));
+    }
+
+    // partial loads that started before a write are not shared with reads that start after it
+    private void cache(TaskDto taskDto) {
+        taskCache.put(taskDto);
+        partialLoads.forget(key -> key.get(0).equals(taskDto.getId()));
+    }
+
+    private void evict(Long id) {
+        taskCache.evict(id);
+        partialLoads.forget(key -> key.get(0).equals(id));
+    }
+
+    private void index(TaskDto taskDto) {
+        taskSearchIndex.index(taskDto.getId(), taskDto.getVersion(), taskDto.getName(), taskDto.getDescription());
+    }
+
+    private TaskDto updated(TaskSnapshot previous, TaskDto taskDto, long changeStamp) {
+        Task task = mapper.merge(taskDto, mapper.convertToEntity(previous));
+        task.setVersion(previous.getVersion() + 1);
+        task.setChangeStamp(changeStamp);
+
+        TaskDto taskDtoUpdated = mapper.convertToDto(task);
+        cache(taskDtoUpdated);
+        taskStats.changed(previous.getStatus(), taskDtoUpdated.getStatus());
+        index(taskDtoUpdated);
+        taskEventStream.publish(TaskEvent.Type.UPDATED, taskDtoUpdated);
+
+        return taskDtoUpdated;
+    }
+
+    private RuntimeException leaseLost(Long id) {
+        return existsOnPrimary(id) ? new TaskLeaseLostException() : notFound(id);
+    }
+
+    private RuntimeException writeConflict(Long id, Long expectedVersion) {
+        if (expectedVersion != null && existsOnPrimary(id)) {
+            return new TaskVersionMismatchException();
+        }
+
+        return notFound(id);
+    }
+
+    // asked right after a write missed, which a replica that lags behind the primary could answer wrongly
+    private boolean existsOnPrimary(Long id) {
+        return ReadSession.onPrimary(() -> taskRepository.existsById(id));
+    }
+
+    // the ids of a batch that were not found live but are in the archive
+    private Set<Long> archived(List<Long> ids, Set<Long> found) {
+        Set<Long> missing = new HashSet<Long>(ids);
+        missing.removeAll(found);
+
+        return missing.isEmpty() ? Collections.emptySet() : new HashSet<Long>(taskRepository.findArchivedIds(missing));
+    }
+
+    // archived tasks can still be read, so a write to one is refused rather than reported missing
+    RuntimeException notFound(Long id) {
+        List<Long> archived = ReadSession.onPrimary(() -> taskRepository.findArchivedIds(Collections.singletonList(id)));
+
+        return archived.isEmpty() ? new TaskNotFoundException() : new TaskArchivedException();
+    }
+
+    private void checkBatchSize(List<?> batch) {
+        if (batch.size() > MAX_BATCH_SIZE) {
+            throw new BatchSizeExceededException();
+        }
+    }
+
+    private List<String> validate(TaskDto taskDto, Class<?>... groups) {
+        List<String> errors = new ArrayList<String>();
+
+        for (ConstraintViolation<TaskDto> violation : validator.validate(taskDto == null ? new TaskDto() : taskDto, groups)) {
+            errors.add(violation.getMessage());
+        }
+
+        return errors;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
@@ -0,0 +1,95 @@
+package com.challenge.taskdemo.service;
+
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.routing.ReadSession;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class TaskStats {
+
+    private final Map<Status, LongAdder> counters = new EnumMap<Status, LongAdder>(Status.class);
+
+    private TaskRepository taskRepository;
+
+    public TaskStats(TaskRepository taskRepository) {
+        this.taskRepository = taskRepository;
+
+        for (Status status : Status.values()) {
+            counters.put(status, new LongAdder());
+        }
+    }
+
+    public void added(Status status) {
+        if (status != null) {
+            counters.get(status).increment();
+        }
+    }
+
+    public void removed(Status status) {
+        if (status != null) {
+            counters.get(status).decrement();
+        }
+    }
+
+    public void changed(Status previous, Status current) {
+        if (previous != current) {
+            removed(previous);
+            added(current);
+        }
+    }
+
+    public Map<Status, Long> snapshot() {
+        Map<Status, Long> counts = new EnumMap<Status, Long>(Status.class);
+
+        for (Map.Entry<Status, LongAdder> counter : counters.entrySet()) {
+            counts.put(counter.getKey(), counter.getValue().sum());
+        }
+
+        return counts;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${tasks.stats.reconcile-interval:PT5M}", fixedDelayString = "${tasks.stats.reconcile-interval:PT5M}")
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void reconcile() {
+        // the drift is what the counters held when the count began against what it found; a change
+        // counted while the count runs is added on top, where a plain overwrite would drop it
+        Map<Status, Long> counted = snapshot();
+        Map<Status, Long> counts = ReadSession.onPrimary(this::count);
+
+        for (Status status : Status.values()) {
+            counters.get(status).add(counts.getOrDefault(status, 0L) - counted.get(status));
+        }
+    }
+
+    // a lagging replica would undercount, so the primary is counted
+    private Map<Status, Long> count() {
+        Map<Status, Long> counts = new EnumMap<Status, Long>(Status.class);
+
+        // archived tasks still count; both tables are counted in one snapshot, so a task being
+        // archived in between is counted once, either still in the task table or already archived
+        List<StatusCount> statusCounts = new ArrayList<StatusCount>(taskRepository.countByStatus());
+        statusCounts.addAll(taskRepository.countArchivedByStatus());
+
+        for (StatusCount statusCount : statusCounts) {
+            if (statusCount.getStatus() != null) {
+                counts.merge(statusCount.getStatus(), statusCount.getCount(), Long::sum);
+            }
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,244 @@
+package com.challenge.taskdemo.service;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+public class TaskUpdateBatcher {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrentLinkedQueue<PendingUpdate> queue = new ConcurrentLinkedQueue<PendingUpdate>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private TaskService taskService;
+    private boolean enabled;
+    private int capacity;
+    private int batchSize;
+    private Duration maxDelay;
+    private Duration awaitTimeout;
+    private Thread flusher;
+    private volatile boolean running;
+
+    public TaskUpdateBatcher(TaskService taskService,
+                             @Value("${tasks.group-commit.enabled:false}") boolean enabled,
+                             @Value("${tasks.group-commit.capacity:10000}") int capacity,
+                             @Value("${tasks.group-commit.batch-size:500}") int batchSize,
+                             @Value("${tasks.group-commit.max-delay:2ms}") Duration maxDelay,
+                             @Value("${tasks.group-commit.await-timeout:10s}") Duration awaitTimeout) {
+        this.taskService = taskService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.awaitTimeout = awaitTimeout;
+    }
+
+    // only plain status changes are queued, anything conditional or touching text goes straight to the service
+    public TaskDto update(Long id, TaskDto taskDto, Long expectedVersion) {
+        if (!running || expectedVersion != null || !isStatusOnly(taskDto)) {
+            return taskService.update(id, taskDto, expectedVersion);
+        }
+
+        // the caller is answered once the batch holding its change has committed
+        return await(submit(id, taskDto.getStatus()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "task-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private CompletableFuture<TaskDto> submit(Long id, Status status) {
+        int position = queued.incrementAndGet();
+
+        if (position > capacity) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException();
+        }
+
+        PendingUpdate pendingUpdate = new PendingUpdate(id, status);
+        queue.add(pendingUpdate);
+
+        // the flusher may have made its last pass before this update got in; whichever of the two
+        // takes it back off the queue answers it
+        if (!running && queue.remove(pendingUpdate)) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException();
+        }
+
+        // the flusher is woken to open a batch and again once the batch is full, not for every update
+        if (position == 1 || position == batchSize) {
+            LockSupport.unpark(flusher);
+        }
+
+        return pendingUpdate.result;
+    }
+
+    private void flushLoop() {
+        List<PendingUpdate> batch = new ArrayList<PendingUpdate>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+
+            // a batch gets up to max-delay to fill up unless it already is full
+            long deadline = System.nanoTime() + maxDelay.toNanos();
+            long remaining;
+            while (running && queued.get() < batchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            // an update is counted just before it is queued, so one counted into this batch may
+            // still be on its way; left behind, it would wait for the next batch to fill up (a count
+            // over capacity is a rejected update about to take itself back off)
+            int counted = Math.min(Math.min(batchSize, capacity), queued.get());
+            while (batch.size() < counted) {
+                PendingUpdate pendingUpdate = queue.poll();
+
+                if (pendingUpdate == null) {
+                    // once stopped, a late update takes itself back off instead of arriving
+                    if (!running) {
+                        break;
+                    }
+
+                    Thread.yield();
+                } else {
+                    batch.add(pendingUpdate);
+                }
+            }
+            queued.addAndGet(-batch.size());
+
+            flush(batch);
+            batch.clear();
+        }
+
+        PendingUpdate left;
+        while ((left = queue.poll()) != null) {
+            queued.decrementAndGet();
+            left.result.completeExceptionally(new RejectedExecutionException());
+        }
+    }
+
+    private void flush(List<PendingUpdate> batch) {
+        // a later change of the same task replaces an earlier one, everybody waiting on it gets the outcome
+        Map<Long, Status> statuses = new LinkedHashMap<Long, Status>();
+        Map<Long, List<PendingUpdate>> waiting = new HashMap<Long, List<PendingUpdate>>();
+
+        for (PendingUpdate pendingUpdate : batch) {
+            statuses.put(pendingUpdate.id, pendingUpdate.status);
+            waiting.computeIfAbsent(pendingUpdate.id, id -> new ArrayList<PendingUpdate>()).add(pendingUpdate);
+        }
+
+        try {
+            Map<Long, TaskDto> updated = taskService.updateStatuses(statuses);
+
+            for (Map.Entry<Long, List<PendingUpdate>> entry : waiting.entrySet()) {
+                complete(entry.getValue(), updated.get(entry.getKey()), null);
+            }
+        } catch (RuntimeException | Error batchFailure) {
+            // one bad row must not fail the rest, so they are retried one task at a time
+            for (Map.Entry<Long, List<PendingUpdate>> entry : waiting.entrySet()) {
+                try {
+                    Map<Long, TaskDto> updated = taskService.updateStatuses(Collections.singletonMap(entry.getKey(), statuses.get(entry.getKey())));
+                    complete(entry.getValue(), updated.get(entry.getKey()), null);
+                } catch (RuntimeException | Error failure) {
+                    complete(entry.getValue(), null, failure);
+                }
+            }
+        }
+    }
+
+    // a task left out of the batch is answered as a direct update would be, 409 when it was archived
+    private void complete(List<PendingUpdate> pendingUpdates, TaskDto taskDto, Throwable failure) {
+        if (failure == null && taskDto == null) {
+            try {
+                failure = taskService.notFound(pendingUpdates.get(0).id);
+            } catch (RuntimeException lookupFailure) {
+                failure = lookupFailure;
+            }
+        }
+
+        for (PendingUpdate pendingUpdate : pendingUpdates) {
+            if (failure != null) {
+                pendingUpdate.result.completeExceptionally(failure);
+            } else {
+                pendingUpdate.result.complete(taskDto);
+            }
+        }
+    }
+
+    private static boolean isStatusOnly(TaskDto taskDto) {
+        return taskDto.getStatus() != null && isEmpty(taskDto.getName()) && isEmpty(taskDto.getDescription());
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    // a status change can safely be sent again, so a caller that waited too long is told to retry
+    private TaskDto await(CompletableFuture<TaskDto> result) {
+        try {
+            return result.get(awaitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException executionException) {
+            if (executionException.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) executionException.getCause();
+            }
+
+            throw new CompletionException(executionException.getCause());
+        } catch (TimeoutException timeoutException) {
+            throw new RejectedExecutionException(timeoutException);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(interruptedException);
+        }
+    }
+
+    private static class PendingUpdate {
+
+        private final Long id;
+        private final Status status;
+        private final CompletableFuture<TaskDto> result = new CompletableFuture<TaskDto>();
+
+        private PendingUpdate(Long id, Status status) {
+            this.id = id;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskRepositoryCustomImpl;
+import org.springframework.dao.support.PersistenceExceptionTranslationInterceptor;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// The databases of a sharded H2 store, each with its own entity manager factory, transactions and
+// TaskRepository, placed on the ring and rebalanced as RingShards does it. Shard 0 is the
+// application's own database, so an unsharded store carries on as the first shard and hands its
+// tasks over to the shards added to it.
+public class JpaTaskShards extends RingShards<TaskRepository> implements AutoCloseable {
+
+    private static final String MAX_ID = "SELECT GREATEST((SELECT COALESCE(MAX(ID), 0) FROM TASK), "
+            + "(SELECT COALESCE(MAX(ID), 0) FROM ARCHIVED_TASK))";
+
+    private final List<EntityManagerFactory> entityManagerFactories;
+    private final List<TaskRepositoryCustomImpl> queries = new ArrayList<TaskRepositoryCustomImpl>();
+    private final List<JdbcTemplate> jdbcTemplates = new ArrayList<JdbcTemplate>();
+    private final List<TransactionTemplate> transactions = new ArrayList<TransactionTemplate>();
+    private final List<TransactionTemplate> ownTransactions = new ArrayList<TransactionTemplate>();
+
+    // shard 0 uses the application's transaction manager, so its work joins the service's transactions
+    public JpaTaskShards(List<EntityManagerFactory> entityManagerFactories, PlatformTransactionManager transactionManager,
+                         ChangeStampGenerator changeStampGenerator) {
+        super(entityManagerFactories.size());
+        this.entityManagerFactories = entityManagerFactories;
+
+        long lastId = 0;
+
+        for (int shard = 0; shard < entityManagerFactories.size(); shard++) {
+            EntityManagerFactory entityManagerFactory = entityManagerFactories.get(shard);
+            PlatformTransactionManager shardTransactionManager = shard == 0 ? transactionManager : new JpaTransactionManager(entityManagerFactory);
+            EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+            TaskRepositoryCustomImpl query = new TaskRepositoryCustomImpl(entityManager, this::anchorValue);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource(entityManagerFactory));
+            TransactionTemplate ownTransaction = new TransactionTemplate(shardTransactionManager);
+            ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+            changeStampGenerator.advanceTo(jdbcTemplate);
+            lastId = Math.max(lastId, jdbcTemplate.queryForObject(MAX_ID, Long.class));
+
+            queries.add(query);
+            jdbcTemplates.add(jdbcTemplate);
+            transactions.add(new TransactionTemplate(shardTransactionManager));
+            ownTransactions.add(ownTransaction);
+            repositories.add(repository(entityManager, shardTransactionManager, query));
+        }
+
+        startIds(lastId);
+    }
+
+    // a transaction on one shard; on shard 0 it joins the caller's
+    <T> T inTransaction(int shard, Supplier<T> work) {
+        return transactions.get(shard).execute(status -> work.get());
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        stopRebalancing();
+
+        for (int shard = 1; shard < entityManagerFactories.size(); shard++) {
+            DataSource dataSource = dataSource(entityManagerFactories.get(shard));
+            entityManagerFactories.get(shard).close();
+
+            if (dataSource instanceof Closeable) {
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+
+    // asked outside the caller's transaction, which may be reading shard 0 from a replica
+    @Override
+    protected boolean holds(int shard, long id) {
+        return ownTransactions.get(shard).execute(status ->
+                jdbcTemplates.get(shard).queryForObject("SELECT COUNT(*) FROM TASK WHERE ID = ?", Long.class, id) > 0);
+    }
+
+    // Each step commits on its own, whatever the caller's transaction does afterwards: a copy the
+    // owner already has, left by a move cut short before the delete, is only replaced by a newer one.
+    // Archived tasks stay on the shard that archived them.
+    @Override
+    protected boolean move(long id, int from) {
+        int to = shardFor(id);
+        List<Map<String, Object>> rows = ownTransactions.get(from).execute(status ->
+                jdbcTemplates.get(from).queryForList("SELECT * FROM TASK WHERE ID = ?", id));
+
+        if (rows.isEmpty()) {
+            return false;
+        }
+
+        Map<String, Object> row = rows.get(0);
+        long changeStamp = changeStamp(row.get("CHANGE_STAMP"));
+
+        ownTransactions.get(to).execute(status -> {
+            JdbcTemplate target = jdbcTemplates.get(to);
+            List<Long> copy = target.queryForList("SELECT CHANGE_STAMP FROM TASK WHERE ID = ? FOR UPDATE", Long.class, id);
+
+            if (copy.isEmpty() || changeStamp(copy.get(0)) < changeStamp) {
+                target.update("DELETE FROM TASK WHERE ID = ?", id);
+                target.update("INSERT INTO TASK (" + String.join(", ", row.keySet()) + ") VALUES ("
+                        + String.join(", ", Collections.nCopies(row.size(), "?")) + ")", row.values().toArray());
+            }
+
+            return null;
+        });
+
+        ownTransactions.get(from).execute(status -> jdbcTemplates.get(from).update("DELETE FROM TASK WHERE ID = ?", id));
+
+        return true;
+    }
+
+    // the anchor of a keyset page is on its owner unless it has yet to move there, or was archived
+    // on the shard that held it before
+    private Object anchorValue(TaskQuery query) {
+        int owner = shardFor(query.getAfter());
+        Object value = queries.get(owner).anchorValue(query);
+
+        for (int shard = 0; shard < queries.size() && value == null && (isRebalancing() || query.isArchived()); shard++) {
+            if (shard != owner) {
+                value = queries.get(shard).anchorValue(query);
+            }
+        }
+
+        return value;
+    }
+
+    // a task stored before change stamps were kept has none
+    private static long changeStamp(Object changeStamp) {
+        return changeStamp == null ? 0 : ((Number) changeStamp).longValue();
+    }
+
+    // what Spring Data puts around a repository bean, for a transaction manager that is not a bean
+    private static TaskRepository repository(EntityManager entityManager, PlatformTransactionManager transactionManager,
+                                             TaskRepositoryCustomImpl query) {
+        JpaRepositoryFactory factory = new JpaRepositoryFactory(entityManager);
+        factory.addRepositoryProxyPostProcessor((proxy, repository) ->
+                proxy.addAdvice(new PersistenceExceptionTranslationInterceptor(new HibernateJpaDialect())));
+        factory.addRepositoryProxyPostProcessor((proxy, repository) ->
+                proxy.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource())));
+
+        return factory.getRepository(TaskRepository.class, RepositoryFragments.just(query));
+    }
+
+    private static DataSource dataSource(EntityManagerFactory entityManagerFactory) {
+        return ((EntityManagerFactoryInfo) entityManagerFactory).getDataSource();
+    }
+}
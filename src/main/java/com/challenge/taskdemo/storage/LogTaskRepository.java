@@ -0,0 +1,701 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.ArchivedTask;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import javax.persistence.Tuple;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// TaskRepository on top of the task log: reads and writes by id go straight to the log's index, claims,
+// leases, counts and status filters to its secondary indexes, and everything else is answered by
+// scanning the live tasks with the same semantics as the SQL it replaces
+public class LogTaskRepository implements TaskRepository {
+
+    private TaskLog taskLog;
+    private ChangeStampGenerator changeStampGenerator;
+
+    public LogTaskRepository(TaskLog taskLog, ChangeStampGenerator changeStampGenerator) {
+        this.taskLog = taskLog;
+        this.changeStampGenerator = changeStampGenerator;
+    }
+
+    @Override
+    public <S extends Task> S save(S task) {
+        return store(task, taskLog::nextId);
+    }
+
+    // a new task under an id handed out by the caller, for logs that share one id sequence
+    <S extends Task> S insert(S task, long id) {
+        task.setVersion(null);
+
+        return store(task, () -> id);
+    }
+
+    private <S extends Task> S store(S task, LongSupplier newId) {
+        return taskLog.atomically(() -> {
+            // a task without a version has never been stored, as with JPA's merge
+            if (task.getId() != null && task.getVersion() != null) {
+                Task stored = live(task.getId());
+
+                if (stored == null || !stored.getVersion().equals(task.getVersion())) {
+                    throw new ObjectOptimisticLockingFailureException(Task.class, task.getId());
+                }
+
+                task.setVersion(task.getVersion() + 1);
+                task.setCreatedAt(stored.getCreatedAt());
+            } else {
+                task.setId(newId.getAsLong());
+                task.setVersion(0L);
+                task.setCreatedAt(Instant.now());
+            }
+
+            task.setChangeStamp(changeStampGenerator.next());
+
+            try {
+                taskLog.write(task);
+            } finally {
+                changeStampGenerator.release(task.getChangeStamp());
+            }
+
+            return task;
+        });
+    }
+
+    // all or nothing, as the batch would be in one JPA transaction: every version is checked under
+    // the write lock before the first task is written
+    @Override
+    public <S extends Task> Iterable<S> saveAll(Iterable<S> tasks) {
+        return taskLog.atomically(() -> {
+            List<S> batch = new ArrayList<S>();
+            tasks.forEach(batch::add);
+            checkVersions(batch);
+
+            List<S> saved = new ArrayList<S>(batch.size());
+
+            for (S task : batch) {
+                saved.add(save(task));
+            }
+
+            return saved;
+        });
+    }
+
+    <T> T atomically(Supplier<T> action) {
+        return taskLog.atomically(action);
+    }
+
+    // the same task twice in one batch would fail on its second write, so it fails up front
+    void checkVersions(Collection<? extends Task> tasks) {
+        Set<Long> seen = new HashSet<Long>();
+
+        for (Task task : tasks) {
+            if (task.getId() == null || task.getVersion() == null) {
+                continue;
+            }
+
+            Task stored = live(task.getId());
+
+            if (!seen.add(task.getId()) || stored == null || !stored.getVersion().equals(task.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Task.class, task.getId());
+            }
+        }
+    }
+
+    @Override
+    public Optional<Task> findById(Long id) {
+        return Optional.ofNullable(live(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return live(id) != null;
+    }
+
+    @Override
+    public Iterable<Task> findAll() {
+        return scan(task -> true, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Iterable<Task> findAllById(Iterable<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Long id : ids) {
+            Task task = live(id);
+
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public long count() {
+        return taskLog.count();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        if (markDeleted(id) == 0) {
+            throw new EmptyResultDataAccessException(1);
+        }
+    }
+
+    // deletes leave a tombstone, as the service's own deletes do
+    @Override
+    public void delete(Task task) {
+        markDeleted(task.getId());
+    }
+
+    private int markDeleted(Long id) {
+        long changeStamp = changeStampGenerator.next();
+
+        try {
+            return markDeleted(id, null, changeStamp);
+        } finally {
+            changeStampGenerator.release(changeStamp);
+        }
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Task> tasks) {
+        taskLog.atomically(() -> {
+            for (Task task : tasks) {
+                delete(task);
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll() {
+        deleteAll(findAll());
+    }
+
+    @Override
+    public List<Task> findAll(TaskQuery query) {
+        return query(query, this::live);
+    }
+
+    // the keyset anchor is passed in, as the task it names may be stored in another log
+    List<Task> findAll(TaskQuery query, Task anchor) {
+        return query(query, after -> anchor);
+    }
+
+    @Override
+    public List<Tuple> findAll(TaskQuery query, Collection<String> fields) {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+
+        for (Task task : query(query, this::live)) {
+            tuples.add(tuple(task, fields));
+        }
+
+        return tuples;
+    }
+
+    @Override
+    public Optional<Tuple> findFieldsById(Long id, Collection<String> fields) {
+        return findById(id).map(task -> tuple(task, fields));
+    }
+
+    @Override
+    public Optional<Tuple> findArchivedFieldsById(Long id, Collection<String> fields) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<TaskSnapshot> updateReturningPrevious(Long id, String name, String description, Status status,
+                                                          Long version, long changeStamp) {
+        return taskLog.atomically(() -> {
+            Optional<TaskSnapshot> previous = live(id, version);
+            previous.ifPresent(snapshot -> update(id, name, description, status, version, changeStamp));
+
+            return previous;
+        });
+    }
+
+    // saving checks every version again, so a task changed in between fails the batch like a stale row lock would
+    @Override
+    public List<Task> findAllForUpdate(Collection<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Long id : new TreeSet<Long>(ids)) {
+            Task task = live(id);
+
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public Optional<TaskSnapshot> deleteReturningPrevious(Long id, Long version, long changeStamp) {
+        return taskLog.atomically(() -> {
+            Optional<TaskSnapshot> previous = live(id, version);
+            previous.ifPresent(snapshot -> markDeleted(id, version, changeStamp));
+
+            return previous;
+        });
+    }
+
+    @Override
+    public int update(Long id, String name, String description, Status status, Long version, long changeStamp) {
+        return rewrite(id, version, changeStamp, task -> {
+            if (name != null && !name.isEmpty()) {
+                task.setName(name);
+            }
+
+            if (description != null && !description.isEmpty()) {
+                task.setDescription(description);
+            }
+
+            if (status != null) {
+                task.setStatus(status);
+            }
+        });
+    }
+
+    @Override
+    public int markDeleted(Long id, Long version, long changeStamp) {
+        return rewrite(id, version, changeStamp, task -> task.setDeleted(true));
+    }
+
+    @Override
+    public Optional<TaskSnapshot> ackReturningPrevious(Long id, String leaseId, Instant now, long changeStamp) {
+        return taskLog.atomically(() -> {
+            Optional<TaskSnapshot> previous = findLeasedForUpdate(id, leaseId, now);
+            previous.ifPresent(snapshot -> complete(id, changeStamp));
+
+            return previous;
+        });
+    }
+
+    @Override
+    public Optional<TaskSnapshot> findLeasedForUpdate(Long id, String leaseId, Instant now) {
+        Task task = live(id);
+
+        if (task == null || !isLeasedTo(task, leaseId, now)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(snapshot(task));
+    }
+
+    @Override
+    public int complete(Long id, long changeStamp) {
+        return rewrite(id, changeStamp, task -> {
+            task.setStatus(Status.DONE);
+            task.setLeaseId(null);
+            task.setLeaseExpiresAt(null);
+        });
+    }
+
+    @Override
+    public List<Long> findClaimable(Status status, Instant now, Pageable pageable) {
+        List<Long> ids = taskLog.unleased(status, now, (int) pageable.getOffset() + pageable.getPageSize());
+
+        return ids.subList((int) Math.min(pageable.getOffset(), ids.size()), ids.size());
+    }
+
+    // leases are not changes, they keep the version and change stamp as the SQL updates do
+    @Override
+    public int lease(Collection<Long> ids, String leaseId, Instant now, Instant expiresAt) {
+        return taskLog.atomically(() -> {
+            int leased = 0;
+
+            for (Long id : ids) {
+                Task task = live(id);
+
+                if (task != null && task.getStatus() == Status.TODO && !isLeased(task, now)) {
+                    task.setLeaseId(leaseId);
+                    task.setLeaseExpiresAt(expiresAt);
+                    taskLog.write(task);
+                    leased++;
+                }
+            }
+
+            return leased;
+        });
+    }
+
+    @Override
+    public int release(Long id, String leaseId, Instant now) {
+        return taskLog.atomically(() -> {
+            Task task = live(id);
+
+            if (task == null || !isLeasedTo(task, leaseId, now)) {
+                return 0;
+            }
+
+            task.setLeaseId(null);
+            task.setLeaseExpiresAt(null);
+            taskLog.write(task);
+
+            return 1;
+        });
+    }
+
+    @Override
+    public List<Task> findByLeaseIdOrderById(String leaseId) {
+        return taskLog.leasedTo(leaseId);
+    }
+
+    @Override
+    public List<Task> findChangedSince(long since, int limit) {
+        return taskLog.changedSince(since, limit);
+    }
+
+    @Override
+    public List<StatusCount> countByStatus() {
+        return statusCounts(taskLog.countByStatus());
+    }
+
+    static List<StatusCount> statusCounts(Map<Status, Long> counts) {
+        List<StatusCount> statusCounts = new ArrayList<StatusCount>(counts.size());
+        for (Map.Entry<Status, Long> count : counts.entrySet()) {
+            statusCounts.add(new StatusCount() {
+                @Override
+                public Status getStatus() {
+                    return count.getKey();
+                }
+
+                @Override
+                public long getCount() {
+                    return count.getValue();
+                }
+            });
+        }
+
+        return statusCounts;
+    }
+
+    // the log keeps every task in its in-memory index, so nothing is ever moved to an archive and
+    // completion times, which only the archiver needs, are not recorded
+    @Override
+    public List<Long> archive(Instant completedBefore, Instant archivedAt, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Long> findArchivable(Status status, Instant completedBefore, Pageable pageable) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<TaskSnapshot> findForArchive(Collection<Long> ids) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int copyToArchive(Collection<Long> ids, Instant archivedAt) {
+        return 0;
+    }
+
+    @Override
+    public int deleteArchived(Collection<Long> ids) {
+        return 0;
+    }
+
+    @Override
+    public List<StatusCount> countArchivedByStatus() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Long> findArchivedIds(Collection<Long> ids) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ArchivedTask> findArchivedAfter(long after, Pageable pageable) {
+        return Collections.emptyList();
+    }
+
+    // every write goes to the log as it happens, there is nothing to flush
+    @Override
+    public void flush() {
+    }
+
+    boolean holds(Long id) {
+        return taskLog.holds(id);
+    }
+
+    private Task live(Long id) {
+        Task task = taskLog.get(id);
+
+        return task == null || task.isDeleted() ? null : task;
+    }
+
+    private Optional<TaskSnapshot> live(Long id, Long version) {
+        Task task = live(id);
+
+        if (task == null || (version != null && !version.equals(task.getVersion()))) {
+            return Optional.empty();
+        }
+
+        return Optional.of(snapshot(task));
+    }
+
+    private int rewrite(Long id, long changeStamp, Consumer<Task> change) {
+        return rewrite(id, null, changeStamp, change);
+    }
+
+    // a deleted task is gone for writes too, as a row is for SQL
+    private int rewrite(Long id, Long version, long changeStamp, Consumer<Task> change) {
+        return taskLog.atomically(() -> {
+            Task task = live(id);
+
+            if (task == null || (version != null && !version.equals(task.getVersion()))) {
+                return 0;
+            }
+
+            change.accept(task);
+            task.setVersion(task.getVersion() + 1);
+            task.setChangeStamp(changeStamp);
+            taskLog.write(task);
+
+            return 1;
+        });
+    }
+
+    private List<Task> scan(Predicate<Task> filter, int limit) {
+        return taskLog.reading(() -> {
+            List<Task> tasks = new ArrayList<Task>();
+
+            for (long id = 1, last = taskLog.lastId(); id <= last && tasks.size() < limit; id++) {
+                Task task = live(id);
+
+                if (task != null && filter.test(task)) {
+                    tasks.add(task);
+                }
+            }
+
+            return tasks;
+        });
+    }
+
+    private List<Task> query(TaskQuery query, Function<Long, Task> anchors) {
+        if (query.isArchived()) {
+            return Collections.emptyList();
+        }
+
+        int limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+        Predicate<Task> filter = filter(query);
+
+        return taskLog.reading(() -> {
+            List<Task> tasks = new ArrayList<Task>();
+
+            // id order is also the order of the status index, so only the ids of the status are walked
+            if (query.getSortProperty().equals("id") && query.getStatus() != null) {
+                NavigableSet<Long> ids = taskLog.idsWith(query.getStatus());
+                ids = query.isSortDescending() ? ids.descendingSet() : ids;
+                ids = query.getAfter() == null ? ids : ids.tailSet(query.getAfter(), false);
+
+                for (Iterator<Long> candidates = ids.iterator(); candidates.hasNext() && tasks.size() < limit; ) {
+                    Task task = live(candidates.next());
+
+                    if (task != null && filter.test(task)) {
+                        tasks.add(task);
+                    }
+                }
+
+                return tasks;
+            }
+
+            // id order is the log's own order, the walk stops as soon as the page is full
+            if (query.getSortProperty().equals("id")) {
+                long last = taskLog.lastId();
+                long step = query.isSortDescending() ? -1 : 1;
+                long id = query.getAfter() == null ? (step > 0 ? 1 : last) : query.getAfter() + step;
+
+                for (; id >= 1 && id <= last && tasks.size() < limit; id += step) {
+                    Task task = live(id);
+
+                    if (task != null && filter.test(task)) {
+                        tasks.add(task);
+                    }
+                }
+
+                return tasks;
+            }
+
+            Comparator<Task> order = order(query);
+            Predicate<Task> page = filter.and(keyset(query, order, anchors));
+
+            for (long id = 1, last = taskLog.lastId(); id <= last; id++) {
+                Task task = live(id);
+
+                if (task != null && page.test(task)) {
+                    tasks.add(task);
+                }
+            }
+
+            tasks.sort(order);
+
+            return tasks.size() > limit ? new ArrayList<Task>(tasks.subList(0, limit)) : tasks;
+        });
+    }
+
+    private Predicate<Task> filter(TaskQuery query) {
+        Predicate<Task> filter = task -> true;
+
+        if (query.getStatus() != null) {
+            filter = filter.and(task -> task.getStatus() == query.getStatus());
+        }
+
+        if (query.getNameStartsWith() != null) {
+            filter = filter.and(task -> task.getName() != null && task.getName().startsWith(query.getNameStartsWith()));
+        }
+
+        if (query.getCreatedAfter() != null) {
+            filter = filter.and(task -> task.getCreatedAt() != null && task.getCreatedAt().isAfter(query.getCreatedAfter()));
+        }
+
+        if (query.getCreatedBefore() != null) {
+            filter = filter.and(task -> task.getCreatedAt() != null && task.getCreatedAt().isBefore(query.getCreatedBefore()));
+        }
+
+        return filter;
+    }
+
+    // rows with no value in the sort column never follow an anchor, as with SQL comparisons against NULL
+    private Predicate<Task> keyset(TaskQuery query, Comparator<Task> order, Function<Long, Task> anchors) {
+        if (query.getAfter() == null) {
+            return task -> true;
+        }
+
+        Task anchor = anchors.apply(query.getAfter());
+
+        if (anchor == null || sortValue(anchor, query.getSortProperty()) == null) {
+            return task -> query.isSortDescending() ? task.getId() < query.getAfter() : task.getId() > query.getAfter();
+        }
+
+        return task -> sortValue(task, query.getSortProperty()) != null && order.compare(task, anchor) > 0;
+    }
+
+    // NULLs sort low, first in ascending order and last in descending order, as H2 sorts them
+    static Comparator<Task> order(TaskQuery query) {
+        String property = query.getSortProperty();
+        Comparator<Task> order = Comparator.comparing(task -> sortValue(task, property), Comparator.nullsFirst(Comparator.naturalOrder()));
+        order = order.thenComparing(Task::getId);
+
+        return query.isSortDescending() ? order.reversed() : order;
+    }
+
+    // status is stored by name, so it sorts alphabetically rather than in declaration order
+    private static Comparable<Object> sortValue(Task task, String property) {
+        Object value;
+
+        switch (property) {
+            case "name":
+                value = task.getName();
+                break;
+            case "status":
+                value = task.getStatus() == null ? null : task.getStatus().name();
+                break;
+            case "createdAt":
+                value = task.getCreatedAt();
+                break;
+            default:
+                value = task.getId();
+        }
+
+        @SuppressWarnings("unchecked")
+        Comparable<Object> comparable = (Comparable<Object>) value;
+
+        return comparable;
+    }
+
+    private static boolean isLeased(Task task, Instant now) {
+        return task.getLeaseExpiresAt() != null && !task.getLeaseExpiresAt().isBefore(now);
+    }
+
+    private static boolean isLeasedTo(Task task, String leaseId, Instant now) {
+        return leaseId != null && leaseId.equals(task.getLeaseId()) && isLeased(task, now);
+    }
+
+    static Tuple tuple(Task task, Collection<String> fields) {
+        TaskTuple tuple = new TaskTuple();
+
+        for (String field : fields) {
+            tuple.add(field, field(task, field));
+        }
+
+        return tuple;
+    }
+
+    private static Object field(Task task, String field) {
+        switch (field) {
+            case "id":
+                return task.getId();
+            case "name":
+                return task.getName();
+            case "description":
+                return task.getDescription();
+            case "status":
+                return task.getStatus();
+            case "version":
+                return task.getVersion();
+            case "createdAt":
+                return task.getCreatedAt();
+            case "changeStamp":
+                return task.getChangeStamp();
+            default:
+                throw new IllegalArgumentException(field);
+        }
+    }
+
+    private static TaskSnapshot snapshot(Task task) {
+        return new TaskSnapshot() {
+            @Override
+            public Long getId() {
+                return task.getId();
+            }
+
+            @Override
+            public String getName() {
+                return task.getName();
+            }
+
+            @Override
+            public String getDescription() {
+                return task.getDescription();
+            }
+
+            @Override
+            public Status getStatus() {
+                return task.getStatus();
+            }
+
+            @Override
+            public Long getVersion() {
+                return task.getVersion();
+            }
+
+            @Override
+            public Instant getCreatedAt() {
+                return task.getCreatedAt();
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.challenge.taskdemo.storage;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+// k-way merge of iterators that are each already in the given order, pulling one element at a
+// time; an element that compares equal to the one before it is a copy of a task caught moving
+// between shards and is skipped
+class MergingIterator<T> implements Iterator<T> {
+
+    private final Comparator<? super T> order;
+    private final PriorityQueue<Head<T>> heads;
+    private T last;
+
+    MergingIterator(List<? extends Iterator<? extends T>> sources, Comparator<? super T> order) {
+        this.order = order;
+        this.heads = new PriorityQueue<Head<T>>(Math.max(1, sources.size()), (a, b) -> order.compare(a.value, b.value));
+
+        for (Iterator<? extends T> source : sources) {
+            advance(source);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!heads.isEmpty() && last != null && order.compare(heads.peek().value, last) == 0) {
+            advance(heads.poll().source);
+        }
+
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Head<T> head = heads.poll();
+        last = head.value;
+        advance(head.source);
+
+        return last;
+    }
+
+    private void advance(Iterator<? extends T> source) {
+        if (source.hasNext()) {
+            heads.add(new Head<T>(source.next(), source));
+        }
+    }
+
+    private static class Head<T> {
+
+        private final T value;
+        private final Iterator<? extends T> source;
+
+        private Head(T value, Iterator<? extends T> source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// The shards of a sharded store, whatever holds them. A consistent-hash ring decides which shard owns
+// an id and each shard numbers new tasks with ids it owns. Shards can be added to an existing store:
+// until rebalance() has moved every task to the shard that now owns it, writes move their task over
+// first and reads that miss on the owner look on the other shards.
+@Slf4j
+abstract class RingShards<R extends TaskRepository> {
+
+    private static final int MOVE_BATCH = 1000;
+    private static final Comparator<Task> BY_CHANGE_STAMP = Comparator.comparingLong(Task::getChangeStamp).thenComparing(Task::getId);
+
+    protected final List<R> repositories = new ArrayList<R>();
+
+    private final ShardRing ring;
+    private final List<AtomicLong> lastIds = new ArrayList<AtomicLong>();
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final Object moveLock = new Object();
+
+    private volatile boolean rebalancing = true;
+    private volatile boolean closed;
+    private Thread rebalancer;
+
+    RingShards(int shardCount) {
+        this.ring = new ShardRing(shardCount);
+    }
+
+    // a task still waiting to move may hold an id its new owner has not seen yet, so every shard
+    // starts counting above the highest id on any of them
+    protected void startIds(long lastId) {
+        for (int shard = 0; shard < repositories.size(); shard++) {
+            lastIds.add(new AtomicLong(lastId));
+        }
+    }
+
+    // whether the shard has a record of the task, deleted or not
+    protected abstract boolean holds(int shard, long id);
+
+    // copies the task from the shard to its owner and only then takes it off the shard, so it can
+    // always be found on one of the two; false if the shard no longer had it
+    protected abstract boolean move(long id, int from);
+
+    // New tasks go to the shards in turn. Each shard counts on from its own last id and skips the
+    // ids the ring gives to others, so no two shards hand out the same id and an id needs no
+    // counter shared by all of them.
+    public long nextId() {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), repositories.size());
+        AtomicLong lastId = lastIds.get(shard);
+        long id;
+
+        do {
+            id = lastId.incrementAndGet();
+        } while (ring.shardFor(id) != shard);
+
+        return id;
+    }
+
+    public boolean isRebalancing() {
+        return rebalancing;
+    }
+
+    int shardFor(long id) {
+        return ring.shardFor(id);
+    }
+
+    R owner(long id) {
+        return repositories.get(ring.shardFor(id));
+    }
+
+    // shards in index order; records only ever move to a shard added later, so reading them in
+    // this order sees a task that moves halfway through at least once
+    List<R> all() {
+        return repositories;
+    }
+
+    // the owner of the id, with the task moved to it first if it is still on another shard
+    R placed(long id) {
+        int owner = ring.shardFor(id);
+
+        if (rebalancing && !holds(owner, id)) {
+            synchronized (moveLock) {
+                for (int shard = 0; shard < repositories.size(); shard++) {
+                    if (shard != owner && holds(shard, id)) {
+                        move(id, shard);
+                    }
+                }
+            }
+        }
+
+        return repositories.get(owner);
+    }
+
+    // the owner is asked again last, in case the task moved to it while the others were looked at
+    <T> Optional<T> read(long id, Function<R, Optional<T>> action) {
+        int owner = ring.shardFor(id);
+        Optional<T> found = action.apply(repositories.get(owner));
+
+        if (found.isPresent() || !rebalancing) {
+            return found;
+        }
+
+        for (int shard = 0; shard < repositories.size(); shard++) {
+            if (shard != owner && holds(shard, id)) {
+                found = action.apply(repositories.get(shard));
+
+                if (found.isPresent()) {
+                    return found;
+                }
+            }
+        }
+
+        return action.apply(repositories.get(owner));
+    }
+
+    // Moves every task that is not on the shard owning it. The tasks of all shards are walked in
+    // change stamp order, which lets a new shard take the moved records in at the end of its own
+    // stamp index instead of in the middle of it.
+    public int rebalance() {
+        long started = System.nanoTime();
+        List<Iterator<Task>> changes = new ArrayList<Iterator<Task>>();
+
+        for (R repository : repositories) {
+            changes.add(new Changes(repository));
+        }
+
+        Iterator<Task> tasks = new MergingIterator<Task>(changes, BY_CHANGE_STAMP);
+        int moved = 0;
+
+        while (tasks.hasNext() && !closed) {
+            Task task = tasks.next();
+            int owner = ring.shardFor(task.getId());
+
+            for (int shard = 0; shard < repositories.size(); shard++) {
+                if (shard != owner && holds(shard, task.getId())) {
+                    synchronized (moveLock) {
+                        if (move(task.getId(), shard)) {
+                            moved++;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!closed) {
+            rebalancing = false;
+            log.info("Rebalanced {} task shards, moved {} tasks in {} ms", repositories.size(), moved, (System.nanoTime() - started) / 1000000);
+        }
+
+        return moved;
+    }
+
+    public synchronized void rebalanceInBackground() {
+        rebalancer = new Thread(() -> {
+            try {
+                rebalance();
+            } catch (RuntimeException e) {
+                log.error("Task shard rebalancing failed, tasks stay readable from the shards they are on", e);
+            }
+        }, "task-shard-rebalancer");
+        rebalancer.setDaemon(true);
+        rebalancer.start();
+    }
+
+    // lets a rebalance in progress stop at the next task before the shards are closed under it
+    protected void stopRebalancing() throws InterruptedException {
+        closed = true;
+
+        synchronized (this) {
+            if (rebalancer != null) {
+                rebalancer.join();
+            }
+        }
+    }
+
+    // the change index of one shard, read a batch at a time
+    private static class Changes implements Iterator<Task> {
+
+        private final TaskRepository repository;
+        private Iterator<Task> batch = Collections.emptyIterator();
+        private long since;
+        private boolean exhausted;
+
+        private Changes(TaskRepository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!batch.hasNext() && !exhausted) {
+                List<Task> tasks = repository.findChangedSince(since, MOVE_BATCH);
+                exhausted = tasks.size() < MOVE_BATCH;
+
+                if (!tasks.isEmpty()) {
+                    since = tasks.get(tasks.size() - 1).getChangeStamp();
+                }
+
+                batch = tasks.iterator();
+            }
+
+            return batch.hasNext();
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return batch.next();
+        }
+    }
+}
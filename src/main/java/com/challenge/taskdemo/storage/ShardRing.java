@@ -0,0 +1,62 @@
+package com.challenge.taskdemo.storage;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Consistent hashing of task ids onto shards: every shard owns many small arcs of a 64-bit ring
+// and an id belongs to the shard of the first point at or after its hash. A shard's points depend
+// only on its own index, so adding a shard hands it an even share of ids from each existing shard
+// and moves nothing else.
+class ShardRing {
+
+    private static final int POINTS_PER_SHARD = 128;
+    private static final long POINT_SEED = 0x6a09e667f3bcc909L;
+
+    private final long[] points;
+    private final int[] shards;
+
+    ShardRing(int shardCount) {
+        TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                ring.put(mix(((long) shard << 32 | point) ^ POINT_SEED), shard);
+            }
+        }
+
+        points = new long[ring.size()];
+        shards = new int[ring.size()];
+        int i = 0;
+
+        for (Map.Entry<Long, Integer> entry : ring.entrySet()) {
+            points[i] = entry.getKey();
+            shards[i++] = entry.getValue();
+        }
+    }
+
+    int shardFor(long id) {
+        long hash = mix(id);
+        int low = 0;
+        int high = points.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return shards[low == points.length ? 0 : low];
+    }
+
+    // splitmix64's finalizer, which spreads consecutive ids evenly over the ring
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,537 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.ArchivedTask;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import javax.persistence.Tuple;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// TaskRepository over H2 shards: anything addressed by id goes to the one shard owning it, lists ask
+// every shard for its own already ordered page and merge the pages as they are read
+public class ShardedJpaTaskRepository implements TaskRepository {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final Comparator<Task> BY_ID = Comparator.comparing(Task::getId);
+    private static final Comparator<Task> BY_CHANGE_STAMP = Comparator.comparingLong(Task::getChangeStamp).thenComparing(Task::getId);
+
+    private final JpaTaskShards jpaTaskShards;
+
+    public ShardedJpaTaskRepository(JpaTaskShards jpaTaskShards) {
+        this.jpaTaskShards = jpaTaskShards;
+    }
+
+    // a task without a version has never been stored, so it gets a new id, which also picks its shard
+    @Override
+    public <S extends Task> S save(S task) {
+        if (task.getVersion() != null) {
+            return jpaTaskShards.placed(task.getId()).save(task);
+        }
+
+        task.setId(jpaTaskShards.nextId());
+
+        return jpaTaskShards.owner(task.getId()).save(task);
+    }
+
+    // Each shard's part is locked, checked against the versions the batch was read at and written in
+    // a transaction of that shard's own, one shard after the other; shard 0's joins the caller's. All
+    // versions are checked before the first shard writes, so a batch that is already stale writes
+    // nothing; only a task changed on a later shard in the meantime leaves the earlier ones written.
+    // A task read on another shard than the caller's transaction is detached and merging it writes a
+    // copy, so what the write changed is copied back to it.
+    @Override
+    public <S extends Task> Iterable<S> saveAll(Iterable<S> tasks) {
+        List<S> batch = new ArrayList<S>();
+        Map<Integer, List<S>> byShard = new TreeMap<Integer, List<S>>();
+
+        for (S task : tasks) {
+            if (task.getVersion() != null) {
+                jpaTaskShards.placed(task.getId());
+            } else {
+                task.setId(jpaTaskShards.nextId());
+            }
+
+            batch.add(task);
+            byShard.computeIfAbsent(jpaTaskShards.shardFor(task.getId()), shard -> new ArrayList<S>()).add(task);
+        }
+
+        for (Map.Entry<Integer, List<S>> shard : byShard.entrySet()) {
+            checkVersions(jpaTaskShards.all().get(shard.getKey()).findAllById(storedIds(shard.getValue())), shard.getValue());
+        }
+
+        for (Map.Entry<Integer, List<S>> shard : byShard.entrySet()) {
+            TaskRepository repository = jpaTaskShards.all().get(shard.getKey());
+
+            jpaTaskShards.inTransaction(shard.getKey(), () -> {
+                List<Long> ids = storedIds(shard.getValue());
+
+                if (!ids.isEmpty()) {
+                    checkVersions(repository.findAllForUpdate(ids), shard.getValue());
+                }
+
+                Iterator<S> written = repository.saveAll(shard.getValue()).iterator();
+                repository.flush();
+
+                for (S task : shard.getValue()) {
+                    copyWritten(written.next(), task);
+                }
+
+                return null;
+            });
+        }
+
+        return batch;
+    }
+
+    @Override
+    public Optional<Task> findById(Long id) {
+        return jpaTaskShards.read(id, shard -> shard.findById(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return findById(id).isPresent();
+    }
+
+    // each shard is read in id order a page at a time, so the store is never all loaded at once
+    @Override
+    public Iterable<Task> findAll() {
+        return () -> merge(IdPages::new, BY_ID);
+    }
+
+    // while tasks move, the ones their owners do not have yet are looked for one at a time
+    @Override
+    public Iterable<Task> findAllById(Iterable<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+        Map<Integer, List<Long>> byShard = new TreeMap<Integer, List<Long>>();
+
+        for (Long id : ids) {
+            byShard.computeIfAbsent(jpaTaskShards.shardFor(id), shard -> new ArrayList<Long>()).add(id);
+        }
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard.entrySet()) {
+            jpaTaskShards.all().get(shard.getKey()).findAllById(shard.getValue()).forEach(tasks::add);
+        }
+
+        if (jpaTaskShards.isRebalancing()) {
+            Set<Long> found = tasks.stream().map(Task::getId).collect(Collectors.toSet());
+
+            for (Long id : ids) {
+                if (!found.contains(id)) {
+                    findById(id).ifPresent(tasks::add);
+                }
+            }
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            count += shard.count();
+        }
+
+        return count;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        jpaTaskShards.placed(id).deleteById(id);
+    }
+
+    @Override
+    public void delete(Task task) {
+        jpaTaskShards.placed(task.getId()).delete(task);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Task> tasks) {
+        for (Task task : tasks) {
+            delete(task);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            shard.deleteAll();
+        }
+    }
+
+    // the anchor of a keyset page is on one shard only, and every shard's query reads it from there
+    @Override
+    public List<Task> findAll(TaskQuery query) {
+        return take(merge(shard -> shard.findAll(query).iterator(), LogTaskRepository.order(query)), limit(query));
+    }
+
+    // the shards also read the columns the pages are merged by, which are dropped again unless asked for
+    @Override
+    public List<Tuple> findAll(TaskQuery query, Collection<String> fields) {
+        Set<String> read = new LinkedHashSet<String>(fields);
+        read.add("id");
+        read.add(query.getSortProperty());
+
+        List<Tuple> tuples = take(merge(shard -> shard.findAll(query, read).iterator(), tupleOrder(query)), limit(query));
+
+        if (fields.containsAll(read)) {
+            return tuples;
+        }
+
+        List<Tuple> projected = new ArrayList<Tuple>(tuples.size());
+
+        for (Tuple tuple : tuples) {
+            TaskTuple taskTuple = new TaskTuple();
+
+            for (String field : fields) {
+                taskTuple.add(field, tuple.get(field));
+            }
+
+            projected.add(taskTuple);
+        }
+
+        return projected;
+    }
+
+    @Override
+    public Optional<Tuple> findFieldsById(Long id, Collection<String> fields) {
+        return jpaTaskShards.read(id, shard -> shard.findFieldsById(id, fields));
+    }
+
+    // archived tasks stay on the shard that archived them, which is the owner unless shards were added since
+    @Override
+    public Optional<Tuple> findArchivedFieldsById(Long id, Collection<String> fields) {
+        Optional<Tuple> found = jpaTaskShards.owner(id).findArchivedFieldsById(id, fields);
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            if (!found.isPresent() && shard != jpaTaskShards.owner(id)) {
+                found = shard.findArchivedFieldsById(id, fields);
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public Optional<TaskSnapshot> updateReturningPrevious(Long id, String name, String description, Status status,
+                                                          Long version, long changeStamp) {
+        return jpaTaskShards.placed(id).updateReturningPrevious(id, name, description, status, version, changeStamp);
+    }
+
+    // a shard other than the caller's transaction's holds its locks only while it reads; saveAll
+    // locks the tasks again in that shard's own transaction and checks them against these versions
+    @Override
+    public List<Task> findAllForUpdate(Collection<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard(ids).entrySet()) {
+            tasks.addAll(jpaTaskShards.inTransaction(shard.getKey(),
+                    () -> jpaTaskShards.all().get(shard.getKey()).findAllForUpdate(shard.getValue())));
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public Optional<TaskSnapshot> deleteReturningPrevious(Long id, Long version, long changeStamp) {
+        return jpaTaskShards.placed(id).deleteReturningPrevious(id, version, changeStamp);
+    }
+
+    @Override
+    public int update(Long id, String name, String description, Status status, Long version, long changeStamp) {
+        return jpaTaskShards.inTransaction(jpaTaskShards.shardFor(id),
+                () -> jpaTaskShards.placed(id).update(id, name, description, status, version, changeStamp));
+    }
+
+    @Override
+    public int markDeleted(Long id, Long version, long changeStamp) {
+        return jpaTaskShards.inTransaction(jpaTaskShards.shardFor(id),
+                () -> jpaTaskShards.placed(id).markDeleted(id, version, changeStamp));
+    }
+
+    @Override
+    public Optional<TaskSnapshot> ackReturningPrevious(Long id, String leaseId, Instant now, long changeStamp) {
+        return jpaTaskShards.placed(id).ackReturningPrevious(id, leaseId, now, changeStamp);
+    }
+
+    @Override
+    public Optional<TaskSnapshot> findLeasedForUpdate(Long id, String leaseId, Instant now) {
+        return jpaTaskShards.placed(id).findLeasedForUpdate(id, leaseId, now);
+    }
+
+    @Override
+    public int complete(Long id, long changeStamp) {
+        return jpaTaskShards.inTransaction(jpaTaskShards.shardFor(id),
+                () -> jpaTaskShards.placed(id).complete(id, changeStamp));
+    }
+
+    // every shard's first offset + size candidates are enough to fill the merged page
+    @Override
+    public List<Long> findClaimable(Status status, Instant now, Pageable pageable) {
+        Pageable candidates = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize());
+
+        return page(merge(shard -> shard.findClaimable(status, now, candidates).iterator(), Comparator.<Long>naturalOrder()), pageable);
+    }
+
+    @Override
+    public int lease(Collection<Long> ids, String leaseId, Instant now, Instant expiresAt) {
+        int leased = 0;
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard(ids).entrySet()) {
+            leased += jpaTaskShards.all().get(shard.getKey()).lease(shard.getValue(), leaseId, now, expiresAt);
+        }
+
+        return leased;
+    }
+
+    @Override
+    public int release(Long id, String leaseId, Instant now) {
+        return jpaTaskShards.placed(id).release(id, leaseId, now);
+    }
+
+    @Override
+    public List<Task> findByLeaseIdOrderById(String leaseId) {
+        return take(merge(shard -> shard.findByLeaseIdOrderById(leaseId).iterator(), BY_ID), Integer.MAX_VALUE);
+    }
+
+    // change stamps come from one generator for all shards, so their order is the order of the changes
+    @Override
+    public List<Task> findChangedSince(long since, int limit) {
+        return take(merge(shard -> shard.findChangedSince(since, limit).iterator(), BY_CHANGE_STAMP), limit);
+    }
+
+    @Override
+    public List<StatusCount> countByStatus() {
+        return sum(TaskRepository::countByStatus);
+    }
+
+    // each shard moves its own tasks to its own ARCHIVED_TASK, with what is left of the limit
+    @Override
+    public List<Long> archive(Instant completedBefore, Instant archivedAt, int limit) {
+        List<Long> ids = new ArrayList<Long>();
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            if (ids.size() >= limit) {
+                break;
+            }
+
+            ids.addAll(shard.archive(completedBefore, archivedAt, limit - ids.size()));
+        }
+
+        return ids;
+    }
+
+    @Override
+    public List<Long> findArchivable(Status status, Instant completedBefore, Pageable pageable) {
+        Pageable candidates = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize());
+
+        return page(merge(shard -> shard.findArchivable(status, completedBefore, candidates).iterator(), Comparator.<Long>naturalOrder()), pageable);
+    }
+
+    @Override
+    public List<TaskSnapshot> findForArchive(Collection<Long> ids) {
+        List<TaskSnapshot> snapshots = new ArrayList<TaskSnapshot>();
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard(ids).entrySet()) {
+            snapshots.addAll(jpaTaskShards.all().get(shard.getKey()).findForArchive(shard.getValue()));
+        }
+
+        return snapshots;
+    }
+
+    @Override
+    public int copyToArchive(Collection<Long> ids, Instant archivedAt) {
+        int copied = 0;
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard(ids).entrySet()) {
+            copied += jpaTaskShards.inTransaction(shard.getKey(),
+                    () -> jpaTaskShards.all().get(shard.getKey()).copyToArchive(shard.getValue(), archivedAt));
+        }
+
+        return copied;
+    }
+
+    @Override
+    public int deleteArchived(Collection<Long> ids) {
+        int deleted = 0;
+
+        for (Map.Entry<Integer, List<Long>> shard : byShard(ids).entrySet()) {
+            deleted += jpaTaskShards.inTransaction(shard.getKey(),
+                    () -> jpaTaskShards.all().get(shard.getKey()).deleteArchived(shard.getValue()));
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public List<StatusCount> countArchivedByStatus() {
+        return sum(TaskRepository::countArchivedByStatus);
+    }
+
+    // archived tasks are not moved, so every shard is asked
+    @Override
+    public List<Long> findArchivedIds(Collection<Long> ids) {
+        List<Long> archived = new ArrayList<Long>();
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            archived.addAll(shard.findArchivedIds(ids));
+        }
+
+        return archived;
+    }
+
+    @Override
+    public List<ArchivedTask> findArchivedAfter(long after, Pageable pageable) {
+        return take(merge(shard -> shard.findArchivedAfter(after, pageable).iterator(), Comparator.comparing(ArchivedTask::getId)),
+                pageable.getPageSize());
+    }
+
+    @Override
+    public void flush() {
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            shard.flush();
+        }
+    }
+
+    // the ids by the shard owning them, with the tasks still on another shard moved to it first
+    private Map<Integer, List<Long>> byShard(Iterable<Long> ids) {
+        Map<Integer, List<Long>> byShard = new TreeMap<Integer, List<Long>>();
+
+        for (Long id : ids) {
+            jpaTaskShards.placed(id);
+            byShard.computeIfAbsent(jpaTaskShards.shardFor(id), shard -> new ArrayList<Long>()).add(id);
+        }
+
+        return byShard;
+    }
+
+    private List<StatusCount> sum(Function<TaskRepository, List<StatusCount>> query) {
+        Map<Status, Long> counts = new LinkedHashMap<Status, Long>();
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            for (StatusCount count : query.apply(shard)) {
+                counts.merge(count.getStatus(), count.getCount(), Long::sum);
+            }
+        }
+
+        return LogTaskRepository.statusCounts(counts);
+    }
+
+    private <T> Iterator<T> merge(Function<TaskRepository, Iterator<T>> query, Comparator<? super T> order) {
+        List<Iterator<T>> sources = new ArrayList<Iterator<T>>();
+
+        for (TaskRepository shard : jpaTaskShards.all()) {
+            sources.add(query.apply(shard));
+        }
+
+        return new MergingIterator<T>(sources, order);
+    }
+
+    private static List<Long> storedIds(List<? extends Task> tasks) {
+        return tasks.stream().filter(task -> task.getVersion() != null).map(Task::getId).collect(Collectors.toList());
+    }
+
+    private static void checkVersions(Iterable<Task> stored, List<? extends Task> tasks) {
+        Map<Long, Long> versions = new HashMap<Long, Long>();
+        stored.forEach(task -> versions.put(task.getId(), task.getVersion()));
+
+        for (Task task : tasks) {
+            if (task.getVersion() != null && !task.getVersion().equals(versions.get(task.getId()))) {
+                throw new ObjectOptimisticLockingFailureException(Task.class, task.getId());
+            }
+        }
+    }
+
+    private static void copyWritten(Task written, Task task) {
+        if (written != task) {
+            task.setVersion(written.getVersion());
+            task.setChangeStamp(written.getChangeStamp());
+            task.setCompletedAt(written.getCompletedAt());
+        }
+    }
+
+    private static int limit(TaskQuery query) {
+        return query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+    }
+
+    // the order of the database's own sort: status by name, nulls first and the id last
+    private static Comparator<Tuple> tupleOrder(TaskQuery query) {
+        String property = query.getSortProperty();
+        Comparator<Tuple> order = Comparator.comparing(tuple -> sortValue(tuple.get(property)), Comparator.nullsFirst(Comparator.naturalOrder()));
+        order = order.thenComparing(tuple -> (Long) tuple.get("id"));
+
+        return query.isSortDescending() ? order.reversed() : order;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> sortValue(Object value) {
+        return (Comparable<Object>) (value instanceof Enum ? ((Enum<?>) value).name() : value);
+    }
+
+    private static <T> List<T> page(Iterator<T> merged, Pageable pageable) {
+        List<T> ids = take(merged, (int) pageable.getOffset() + pageable.getPageSize());
+
+        return ids.subList((int) Math.min(pageable.getOffset(), ids.size()), ids.size());
+    }
+
+    private static <T> List<T> take(Iterator<T> merged, int limit) {
+        List<T> taken = new ArrayList<T>();
+
+        while (taken.size() < limit && merged.hasNext()) {
+            taken.add(merged.next());
+        }
+
+        return taken;
+    }
+
+    // one shard's tasks in id order, read a page at a time
+    private static class IdPages implements Iterator<Task> {
+
+        private final TaskRepository shard;
+        private final TaskQuery query = new TaskQuery();
+        private Iterator<Task> page = Collections.emptyIterator();
+        private boolean exhausted;
+
+        private IdPages(TaskRepository shard) {
+            this.shard = shard;
+            query.setLimit(PAGE_SIZE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !exhausted) {
+                List<Task> tasks = shard.findAll(query);
+                exhausted = tasks.size() < PAGE_SIZE;
+
+                if (!tasks.isEmpty()) {
+                    query.setAfter(tasks.get(tasks.size() - 1).getId());
+                }
+
+                page = tasks.iterator();
+            }
+
+            return page.hasNext();
+        }
+
+        @Override
+        public Task next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return page.next();
+        }
+    }
+}
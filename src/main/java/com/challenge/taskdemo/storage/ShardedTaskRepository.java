@@ -0,0 +1,359 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.ArchivedTask;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.util.Status;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import javax.persistence.Tuple;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// TaskRepository over task log shards: anything addressed by id goes to the one shard owning it,
+// lists ask every shard for its own already ordered page and merge the pages as they are read
+public class ShardedTaskRepository implements TaskRepository {
+
+    private static final Comparator<Task> BY_ID = Comparator.comparing(Task::getId);
+    private static final Comparator<Task> BY_CHANGE_STAMP = Comparator.comparingLong(Task::getChangeStamp).thenComparing(Task::getId);
+
+    private TaskShards taskShards;
+
+    public ShardedTaskRepository(TaskShards taskShards) {
+        this.taskShards = taskShards;
+    }
+
+    // a task without a version has never been stored, so it gets a new id, which also picks its shard
+    @Override
+    public <S extends Task> S save(S task) {
+        if (task.getId() != null && task.getVersion() != null) {
+            return taskShards.placed(task.getId()).save(task);
+        }
+
+        long id = taskShards.nextId();
+
+        return taskShards.owner(id).insert(task, id);
+    }
+
+    // All or nothing, as for a single log: every shard holding a task of the batch is locked, in
+    // shard order so that two batches cannot deadlock, and all versions are checked before the
+    // first write. Tasks waiting to move are moved before any lock is taken.
+    @Override
+    public <S extends Task> Iterable<S> saveAll(Iterable<S> tasks) {
+        List<S> batch = new ArrayList<S>();
+        Map<Integer, List<S>> byShard = new TreeMap<Integer, List<S>>();
+
+        for (S task : tasks) {
+            batch.add(task);
+
+            if (task.getId() != null && task.getVersion() != null) {
+                taskShards.placed(task.getId());
+                byShard.computeIfAbsent(taskShards.shardFor(task.getId()), shard -> new ArrayList<S>()).add(task);
+            }
+        }
+
+        return lockShards(new ArrayList<Integer>(byShard.keySet()), 0, () -> {
+            for (Map.Entry<Integer, List<S>> shard : byShard.entrySet()) {
+                taskShards.all().get(shard.getKey()).checkVersions(shard.getValue());
+            }
+
+            List<S> saved = new ArrayList<S>(batch.size());
+
+            for (S task : batch) {
+                if (task.getId() != null && task.getVersion() != null) {
+                    saved.add(taskShards.owner(task.getId()).save(task));
+                } else {
+                    long id = taskShards.nextId();
+                    saved.add(taskShards.owner(id).insert(task, id));
+                }
+            }
+
+            return saved;
+        });
+    }
+
+    @Override
+    public Optional<Task> findById(Long id) {
+        return taskShards.read(id, shard -> shard.findById(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public Iterable<Task> findAll() {
+        return () -> merge(shard -> shard.findAll().iterator(), BY_ID);
+    }
+
+    @Override
+    public Iterable<Task> findAllById(Iterable<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Long id : ids) {
+            findById(id).ifPresent(tasks::add);
+        }
+
+        return tasks;
+    }
+
+    // while tasks move, one can be on two shards at once and is counted by id
+    @Override
+    public long count() {
+        if (taskShards.isRebalancing()) {
+            return countByStatus().stream().mapToLong(StatusCount::getCount).sum();
+        }
+
+        long count = 0;
+
+        for (LogTaskRepository shard : taskShards.all()) {
+            count += shard.count();
+        }
+
+        return count;
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        taskShards.placed(id).deleteById(id);
+    }
+
+    @Override
+    public void delete(Task task) {
+        taskShards.placed(task.getId()).delete(task);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Task> tasks) {
+        for (Task task : tasks) {
+            delete(task);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        deleteAll(findAll());
+    }
+
+    // the anchor of a keyset page is on one shard only, so it is looked up once and handed to all of them
+    @Override
+    public List<Task> findAll(TaskQuery query) {
+        Task anchor = query.getAfter() == null || query.getSortProperty().equals("id") ? null : findById(query.getAfter()).orElse(null);
+        int limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+
+        return take(merge(shard -> shard.findAll(query, anchor).iterator(), LogTaskRepository.order(query)), limit);
+    }
+
+    @Override
+    public List<Tuple> findAll(TaskQuery query, Collection<String> fields) {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+
+        for (Task task : findAll(query)) {
+            tuples.add(LogTaskRepository.tuple(task, fields));
+        }
+
+        return tuples;
+    }
+
+    @Override
+    public Optional<Tuple> findFieldsById(Long id, Collection<String> fields) {
+        return taskShards.read(id, shard -> shard.findFieldsById(id, fields));
+    }
+
+    @Override
+    public Optional<Tuple> findArchivedFieldsById(Long id, Collection<String> fields) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<TaskSnapshot> updateReturningPrevious(Long id, String name, String description, Status status,
+                                                          Long version, long changeStamp) {
+        return taskShards.placed(id).updateReturningPrevious(id, name, description, status, version, changeStamp);
+    }
+
+    @Override
+    public List<Task> findAllForUpdate(Collection<Long> ids) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (Long id : new TreeSet<Long>(ids)) {
+            findById(id).ifPresent(tasks::add);
+        }
+
+        return tasks;
+    }
+
+    @Override
+    public Optional<TaskSnapshot> deleteReturningPrevious(Long id, Long version, long changeStamp) {
+        return taskShards.placed(id).deleteReturningPrevious(id, version, changeStamp);
+    }
+
+    @Override
+    public int update(Long id, String name, String description, Status status, Long version, long changeStamp) {
+        return taskShards.placed(id).update(id, name, description, status, version, changeStamp);
+    }
+
+    @Override
+    public int markDeleted(Long id, Long version, long changeStamp) {
+        return taskShards.placed(id).markDeleted(id, version, changeStamp);
+    }
+
+    @Override
+    public Optional<TaskSnapshot> ackReturningPrevious(Long id, String leaseId, Instant now, long changeStamp) {
+        return taskShards.placed(id).ackReturningPrevious(id, leaseId, now, changeStamp);
+    }
+
+    @Override
+    public Optional<TaskSnapshot> findLeasedForUpdate(Long id, String leaseId, Instant now) {
+        return taskShards.read(id, shard -> shard.findLeasedForUpdate(id, leaseId, now));
+    }
+
+    @Override
+    public int complete(Long id, long changeStamp) {
+        return taskShards.placed(id).complete(id, changeStamp);
+    }
+
+    // every shard's first offset + size candidates are enough to fill the merged page
+    @Override
+    public List<Long> findClaimable(Status status, Instant now, Pageable pageable) {
+        Pageable candidates = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize());
+        List<Long> ids = take(merge(shard -> shard.findClaimable(status, now, candidates).iterator(), Comparator.<Long>naturalOrder()),
+                (int) pageable.getOffset() + pageable.getPageSize());
+
+        return ids.subList((int) Math.min(pageable.getOffset(), ids.size()), ids.size());
+    }
+
+    @Override
+    public int lease(Collection<Long> ids, String leaseId, Instant now, Instant expiresAt) {
+        Map<LogTaskRepository, List<Long>> byShard = new LinkedHashMap<LogTaskRepository, List<Long>>();
+
+        for (Long id : ids) {
+            byShard.computeIfAbsent(taskShards.placed(id), shard -> new ArrayList<Long>()).add(id);
+        }
+
+        int leased = 0;
+
+        for (Map.Entry<LogTaskRepository, List<Long>> shard : byShard.entrySet()) {
+            leased += shard.getKey().lease(shard.getValue(), leaseId, now, expiresAt);
+        }
+
+        return leased;
+    }
+
+    @Override
+    public int release(Long id, String leaseId, Instant now) {
+        return taskShards.placed(id).release(id, leaseId, now);
+    }
+
+    @Override
+    public List<Task> findByLeaseIdOrderById(String leaseId) {
+        return take(merge(shard -> shard.findByLeaseIdOrderById(leaseId).iterator(), BY_ID), Integer.MAX_VALUE);
+    }
+
+    // change stamps come from one generator for all shards, so their order is the order of the changes
+    @Override
+    public List<Task> findChangedSince(long since, int limit) {
+        return take(merge(shard -> shard.findChangedSince(since, limit).iterator(), BY_CHANGE_STAMP), limit);
+    }
+
+    @Override
+    public List<StatusCount> countByStatus() {
+        Map<Status, Long> counts = new LinkedHashMap<Status, Long>();
+
+        if (taskShards.isRebalancing()) {
+            findAll().forEach(task -> counts.merge(task.getStatus(), 1L, Long::sum));
+
+            return LogTaskRepository.statusCounts(counts);
+        }
+
+        for (LogTaskRepository shard : taskShards.all()) {
+            for (StatusCount count : shard.countByStatus()) {
+                counts.merge(count.getStatus(), count.getCount(), Long::sum);
+            }
+        }
+
+        return LogTaskRepository.statusCounts(counts);
+    }
+
+    // the shards are task logs, which never archive
+    @Override
+    public List<Long> archive(Instant completedBefore, Instant archivedAt, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Long> findArchivable(Status status, Instant completedBefore, Pageable pageable) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<TaskSnapshot> findForArchive(Collection<Long> ids) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int copyToArchive(Collection<Long> ids, Instant archivedAt) {
+        return 0;
+    }
+
+    @Override
+    public int deleteArchived(Collection<Long> ids) {
+        return 0;
+    }
+
+    @Override
+    public List<StatusCount> countArchivedByStatus() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<Long> findArchivedIds(Collection<Long> ids) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ArchivedTask> findArchivedAfter(long after, Pageable pageable) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void flush() {
+        for (LogTaskRepository shard : taskShards.all()) {
+            shard.flush();
+        }
+    }
+
+    private <T> T lockShards(List<Integer> shards, int from, Supplier<T> action) {
+        if (from == shards.size()) {
+            return action.get();
+        }
+
+        return taskShards.all().get(shards.get(from)).atomically(() -> lockShards(shards, from + 1, action));
+    }
+
+    private <T> Iterator<T> merge(Function<LogTaskRepository, Iterator<T>> query, Comparator<? super T> order) {
+        List<Iterator<T>> sources = new ArrayList<Iterator<T>>();
+
+        for (LogTaskRepository shard : taskShards.all()) {
+            sources.add(query.apply(shard));
+        }
+
+        return new MergingIterator<T>(sources, order);
+    }
+
+    private static <T> List<T> take(Iterator<T> merged, int limit) {
+        List<T> taken = new ArrayList<T>();
+
+        while (taken.size() < limit && merged.hasNext()) {
+            taken.add(merged.next());
+        }
+
+        return taken;
+    }
+}
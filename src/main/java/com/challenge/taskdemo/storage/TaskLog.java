@@ -0,0 +1,831 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.util.Status;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+// Tasks are appended as [length][crc32][payload] records to memory-mapped segment files; the
+// latest record of every id is found through a location array indexed by id, so a point read is
+// an array lookup and a decode and a write is an append.
+@Slf4j
+public class TaskLog implements AutoCloseable {
+
+    static final int HEADER_SIZE = 8;
+    static final int ID_OFFSET = 0;
+    static final int STAMP_OFFSET = 16;
+    static final int FLAGS_OFFSET = 24;
+    static final int MIN_PAYLOAD_SIZE = 8 + 8 + 8 + 1 + 1 + 12 + 12 + 4 * 3;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final byte DELETED = 1;
+    private static final byte MOVED = 2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final boolean fsync;
+
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService compactor;
+
+    private Segment active;
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+    // latest record of each id, ((segment number << 32) | offset), 0 for ids never written
+    private long[] locations = new long[1024];
+    private long lastId;
+    private long lastChangeStamp;
+
+    // change stamps in ascending order with the id they were written for; an entry is stale once
+    // its id has been written again with another stamp and is dropped by compaction
+    private long[] stamps = new long[1024];
+    private long[] stampIds = new long[1024];
+    private int stampCount;
+
+    // secondary indexes over the live tasks, kept in step with every write and rebuilt after replay:
+    // the ids of each status and of each lease in id order, and the lease each leased task is held under
+    private final BitSet live = new BitSet();
+    private long liveCount;
+    private final Map<Status, NavigableSet<Long>> statusIds = new EnumMap<Status, NavigableSet<Long>>(Status.class);
+    private final Map<String, NavigableSet<Long>> leaseIds = new HashMap<String, NavigableSet<Long>>();
+    private final Map<Long, Lease> leases = new HashMap<Long, Lease>();
+
+    public TaskLog(Path directory, int segmentSize, double compactionThreshold, boolean fsync, Duration compactionInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.fsync = fsync;
+
+        for (Status status : Status.values()) {
+            statusIds.put(status, new TreeSet<Long>());
+        }
+
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (compactionInterval.isZero()) {
+            this.compactor = null;
+        } else {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public <T> T atomically(Supplier<T> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public <T> T reading(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Task get(long id) {
+        lock.readLock().lock();
+        try {
+            long location = location(id);
+
+            return location == 0 ? null : decode(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long lastId() {
+        lock.readLock().lock();
+        try {
+            return lastId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long lastChangeStamp() {
+        lock.readLock().lock();
+        try {
+            return lastChangeStamp;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long nextId() {
+        lock.writeLock().lock();
+        try {
+            return ++lastId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void write(Task task) {
+        lock.writeLock().lock();
+        try {
+            int length = encode(task, task.isDeleted() ? DELETED : 0);
+            long previous = location(task.getId());
+            boolean stamped = previous == 0 || stampAt(previous) != task.getChangeStamp();
+
+            long location = append(scratch.array(), 0, length);
+            index(task.getId(), location, previous);
+            track(task.getId(), task);
+            lastId = Math.max(lastId, task.getId());
+
+            if (stamped) {
+                addStamp(task.getChangeStamp(), task.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // leaves a copy that reads as deleted and is left out of the changes, for a task that now lives
+    // in another log; it keeps the stamp so that replay still prefers it over the record it replaces
+    public void markMoved(long id) {
+        lock.writeLock().lock();
+        try {
+            long previous = location(id);
+
+            if (previous != 0) {
+                int length = encode(decode(previous), MOVED);
+                index(id, append(scratch.array(), 0, length), previous);
+                track(id, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // whether the latest record of the id is this log's own, deleted or not
+    public boolean holds(long id) {
+        lock.readLock().lock();
+        try {
+            long location = location(id);
+
+            return location != 0 && flagsAt(location) != MOVED;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Task> changedSince(long since, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Task> changed = new ArrayList<Task>(Math.min(limit, 1024));
+
+            for (int i = firstStampAfter(since); i < stampCount && changed.size() < limit; i++) {
+                long location = location(stampIds[i]);
+
+                if (location != 0 && stampAt(location) == stamps[i] && flagsAt(location) != MOVED) {
+                    changed.add(decode(location));
+                }
+            }
+
+            return changed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // only statuses some live task has, as a GROUP BY would return them
+    public Map<Status, Long> countByStatus() {
+        lock.readLock().lock();
+        try {
+            Map<Status, Long> counts = new EnumMap<Status, Long>(Status.class);
+
+            for (Map.Entry<Status, NavigableSet<Long>> ids : statusIds.entrySet()) {
+                if (!ids.getValue().isEmpty()) {
+                    counts.put(ids.getKey(), (long) ids.getValue().size());
+                }
+            }
+
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ids of the status that are not leased, or whose lease ran out before now, in id order
+    public List<Long> unleased(Status status, Instant now, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Long> ids = new ArrayList<Long>(Math.min(limit, 1024));
+
+            for (Iterator<Long> candidates = statusIds.get(status).iterator(); candidates.hasNext() && ids.size() < limit; ) {
+                Long id = candidates.next();
+                Lease lease = leases.get(id);
+
+                if (lease == null || lease.expiresAt == null || lease.expiresAt.isBefore(now)) {
+                    ids.add(id);
+                }
+            }
+
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Task> leasedTo(String leaseId) {
+        lock.readLock().lock();
+        try {
+            List<Task> tasks = new ArrayList<Task>();
+
+            for (Long id : leaseIds.getOrDefault(leaseId, Collections.emptyNavigableSet())) {
+                tasks.add(decode(location(id)));
+            }
+
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the live ids of a status in id order, a view that is only to be walked within reading()
+    NavigableSet<Long> idsWith(Status status) {
+        return Collections.unmodifiableNavigableSet(statusIds.get(status));
+    }
+
+    // copies the records still current out of the sparsest sealed segment and drops its file,
+    // one segment per call so that writers are never held up for more than one segment's worth
+    public boolean compact() {
+        lock.writeLock().lock();
+        try {
+            Segment candidate = null;
+
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.liveBytes < segment.position * compactionThreshold
+                        && (candidate == null || segment.liveBytes < candidate.liveBytes)) {
+                    candidate = segment;
+                }
+            }
+
+            if (candidate == null) {
+                return false;
+            }
+
+            int firstTarget = active.number;
+            ByteBuffer buffer = candidate.buffer.duplicate();
+            byte[] record = new byte[0];
+            int offset = 0;
+
+            while (offset < candidate.position) {
+                int size = HEADER_SIZE + buffer.getInt(offset);
+                long location = location(candidate.number, offset);
+                long id = buffer.getLong(offset + HEADER_SIZE + ID_OFFSET);
+
+                if (location(id) == location) {
+                    if (record.length < size) {
+                        record = new byte[size];
+                    }
+
+                    buffer.position(offset);
+                    buffer.get(record, 0, size);
+                    index(id, appendRecord(record, size), location);
+                }
+
+                offset += size;
+            }
+
+            // the copies have to be on disk before the only other copy of them goes away
+            for (Segment segment : segments.tailMap(firstTarget, true).values()) {
+                segment.buffer.force();
+            }
+
+            segments.remove(candidate.number);
+            Files.delete(candidate.path);
+            pruneStamps();
+
+            log.debug("Compacted task log segment {}", candidate.number);
+
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+
+            segments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            while (compact()) {
+                // keep going while there is garbage to collect
+            }
+        } catch (RuntimeException e) {
+            log.warn("Task log compaction failed", e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Integer> numbers = new ArrayList<Integer>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+
+        Collections.sort(numbers);
+
+        for (int number : numbers) {
+            Segment segment = Segment.open(directory, number, segmentSize);
+            segments.put(number, segment);
+            replay(segment);
+        }
+
+        active = segments.isEmpty() ? roll() : segments.lastEntry().getValue();
+
+        long[][] entries = new long[2][];
+        entries[0] = new long[(int) lastId + 1];
+        entries[1] = new long[(int) lastId + 1];
+        int count = 0;
+
+        for (long id = 1; id <= lastId; id++) {
+            long location = location(id);
+
+            if (location != 0) {
+                entries[0][count] = stampAt(location);
+                entries[1][count++] = id;
+
+                if (flagsAt(location) == 0) {
+                    track(id, decode(location));
+                }
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> entries[0][i]));
+
+        stamps = new long[Math.max(1024, count * 2)];
+        stampIds = new long[stamps.length];
+        for (int i = 0; i < count; i++) {
+            stamps[i] = entries[0][order[i]];
+            stampIds[i] = entries[1][order[i]];
+        }
+        stampCount = count;
+
+        log.info("Recovered {} tasks from {} task log segments in {}", count, segments.size(), directory);
+    }
+
+    // replays the records of a segment up to the first one that is not whole, which is where a
+    // crash stopped the last append; anything after it is zeroed so the next append starts clean
+    private void replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = 0;
+
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+
+            if (length < MIN_PAYLOAD_SIZE || offset + HEADER_SIZE + length > buffer.capacity()
+                    || buffer.getInt(offset + 4) != checksum(buffer, offset + HEADER_SIZE, length)) {
+                break;
+            }
+
+            long location = location(segment.number, offset);
+            long id = buffer.getLong(offset + HEADER_SIZE + ID_OFFSET);
+            long stamp = buffer.getLong(offset + HEADER_SIZE + STAMP_OFFSET);
+            long previous = location(id);
+
+            // a compacted copy keeps its stamp and lease writes do not change it, so ties go to the later record
+            if (previous == 0 || stampAt(previous) <= stamp) {
+                index(id, location, previous);
+            }
+
+            segment.position = offset + HEADER_SIZE + length;
+            lastId = Math.max(lastId, id);
+            lastChangeStamp = Math.max(lastChangeStamp, stamp);
+            offset = segment.position;
+        }
+
+        if (segment.position + HEADER_SIZE <= buffer.capacity() && buffer.getInt(segment.position) != 0) {
+            log.warn("Truncating torn record at offset {} of task log segment {}", segment.position, segment.number);
+
+            for (int i = segment.position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private long append(byte[] payload, int offset, int length) {
+        crc.reset();
+        crc.update(payload, offset, length);
+
+        int size = HEADER_SIZE + length;
+        ensureRoom(size);
+
+        ByteBuffer buffer = active.writer;
+        int position = active.position;
+        buffer.putInt(position, length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(payload, offset, length);
+
+        return appended(position, size);
+    }
+
+    private long appendRecord(byte[] record, int size) {
+        ensureRoom(size);
+
+        active.writer.position(active.position);
+        active.writer.put(record, 0, size);
+
+        return appended(active.position, size);
+    }
+
+    private long appended(int position, int size) {
+        if (fsync) {
+            active.buffer.force();
+        }
+
+        active.position = position + size;
+
+        return location(active.number, position);
+    }
+
+    private void ensureRoom(int size) {
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Task record of " + size + " bytes does not fit a task log segment");
+        }
+
+        if (active.position + size > segmentSize) {
+            active = roll();
+        }
+    }
+
+    private Segment roll() {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+
+        try {
+            Segment segment = Segment.open(directory, number, segmentSize);
+            segments.put(number, segment);
+
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void index(long id, long location, long previous) {
+        if (id >= locations.length) {
+            locations = Arrays.copyOf(locations, (int) Math.max(id + 1, locations.length * 2L));
+        }
+
+        if (previous != 0) {
+            Segment segment = segments.get(segmentOf(previous));
+            segment.liveBytes -= HEADER_SIZE + segment.buffer.getInt(offsetOf(previous));
+        }
+
+        Segment segment = segments.get(segmentOf(location));
+        segment.liveBytes += HEADER_SIZE + segment.buffer.getInt(offsetOf(location));
+        locations[(int) id] = location;
+    }
+
+    // moves the id to where the task written for it belongs, or out of every index for a task that is
+    // gone; a null task is one that now lives in another log
+    private void track(long id, Task task) {
+        if (live.get((int) id)) {
+            live.clear((int) id);
+            liveCount--;
+
+            for (NavigableSet<Long> ids : statusIds.values()) {
+                ids.remove(id);
+            }
+
+            Lease lease = leases.remove(id);
+
+            if (lease != null && lease.id != null) {
+                NavigableSet<Long> held = leaseIds.get(lease.id);
+                held.remove(id);
+
+                if (held.isEmpty()) {
+                    leaseIds.remove(lease.id);
+                }
+            }
+        }
+
+        if (task == null || task.isDeleted()) {
+            return;
+        }
+
+        live.set((int) id);
+        liveCount++;
+
+        if (task.getStatus() != null) {
+            statusIds.get(task.getStatus()).add(id);
+        }
+
+        if (task.getLeaseId() != null || task.getLeaseExpiresAt() != null) {
+            leases.put(id, new Lease(task.getLeaseId(), task.getLeaseExpiresAt()));
+        }
+
+        if (task.getLeaseId() != null) {
+            leaseIds.computeIfAbsent(task.getLeaseId(), leaseId -> new TreeSet<Long>()).add(id);
+        }
+    }
+
+    private long location(long id) {
+        return id > 0 && id < locations.length ? locations[(int) id] : 0;
+    }
+
+    private void addStamp(long stamp, long id) {
+        if (stampCount == stamps.length) {
+            pruneStamps();
+
+            if (stampCount * 2 > stamps.length) {
+                stamps = Arrays.copyOf(stamps, stamps.length * 2);
+                stampIds = Arrays.copyOf(stampIds, stampIds.length * 2);
+            }
+        }
+
+        // stamps are handed out before the write lock is taken, so a write can arrive slightly out of
+        // order; the reader of the changes stops below the oldest stamp still being written
+        int at = stampCount;
+        while (at > 0 && stamps[at - 1] > stamp) {
+            at--;
+        }
+
+        System.arraycopy(stamps, at, stamps, at + 1, stampCount - at);
+        System.arraycopy(stampIds, at, stampIds, at + 1, stampCount - at);
+        stamps[at] = stamp;
+        stampIds[at] = id;
+        stampCount++;
+        lastChangeStamp = Math.max(lastChangeStamp, stamp);
+    }
+
+    private void pruneStamps() {
+        int kept = 0;
+
+        for (int i = 0; i < stampCount; i++) {
+            long location = location(stampIds[i]);
+
+            if (location != 0 && stampAt(location) == stamps[i]) {
+                stamps[kept] = stamps[i];
+                stampIds[kept++] = stampIds[i];
+            }
+        }
+
+        stampCount = kept;
+    }
+
+    private int firstStampAfter(long since) {
+        int low = 0;
+        int high = stampCount;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (stamps[middle] <= since) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private long stampAt(long location) {
+        return segments.get(segmentOf(location)).buffer.getLong(offsetOf(location) + HEADER_SIZE + STAMP_OFFSET);
+    }
+
+    private byte flagsAt(long location) {
+        return segments.get(segmentOf(location)).buffer.get(offsetOf(location) + HEADER_SIZE + FLAGS_OFFSET);
+    }
+
+    private int encode(Task task, byte flags) {
+        byte[] name = bytes(task.getName());
+        byte[] description = bytes(task.getDescription());
+        byte[] leaseId = bytes(task.getLeaseId());
+        int length = MIN_PAYLOAD_SIZE + length(name) + length(description) + length(leaseId);
+
+        if (scratch.capacity() < length) {
+            scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        }
+
+        ByteBuffer buffer = scratch;
+        buffer.clear();
+        buffer.putLong(task.getId());
+        buffer.putLong(task.getVersion());
+        buffer.putLong(task.getChangeStamp());
+        buffer.put(flags);
+        buffer.put(task.getStatus() == null ? -1 : (byte) task.getStatus().ordinal());
+        putInstant(buffer, task.getCreatedAt());
+        putInstant(buffer, task.getLeaseExpiresAt());
+        putBytes(buffer, name);
+        putBytes(buffer, description);
+        putBytes(buffer, leaseId);
+
+        return length;
+    }
+
+    private Task decode(long location) {
+        ByteBuffer buffer = segments.get(segmentOf(location)).buffer.duplicate();
+        buffer.position(offsetOf(location) + HEADER_SIZE);
+
+        Task task = new Task();
+        task.setId(buffer.getLong());
+        task.setVersion(buffer.getLong());
+        task.setChangeStamp(buffer.getLong());
+        task.setDeleted(buffer.get() != 0);
+
+        byte status = buffer.get();
+        task.setStatus(status < 0 ? null : Status.values()[status]);
+        task.setCreatedAt(getInstant(buffer));
+        task.setLeaseExpiresAt(getInstant(buffer));
+        task.setName(getString(buffer));
+        task.setDescription(getString(buffer));
+        task.setLeaseId(getString(buffer));
+
+        return task;
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset);
+        payload.limit(offset + length);
+
+        crc.reset();
+        crc.update(payload);
+
+        return (int) crc.getValue();
+    }
+
+    private static void putInstant(ByteBuffer buffer, Instant instant) {
+        buffer.putLong(instant == null ? NO_TIME : instant.getEpochSecond());
+        buffer.putInt(instant == null ? 0 : instant.getNano());
+    }
+
+    private static Instant getInstant(ByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+
+        return seconds == NO_TIME ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes == null ? -1 : bytes.length);
+
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static class Lease {
+
+        private final String id;
+        private final Instant expiresAt;
+
+        private Lease(String id, Instant expiresAt) {
+            this.id = id;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Segment {
+
+        private final int number;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer writer;
+        private int position;
+        private long liveBytes;
+
+        private Segment(int number, Path path, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+
+        private static Segment open(Path directory, int number, int segmentSize) throws IOException {
+            Path path = directory.resolve(String.format("segment-%010d.log", number));
+
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                if (file.length() < segmentSize) {
+                    file.setLength(segmentSize);
+                }
+
+                // the mapping stays valid once the file is closed
+                return new Segment(number, path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length()));
+            }
+        }
+    }
+}
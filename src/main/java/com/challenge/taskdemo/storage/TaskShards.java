@@ -0,0 +1,62 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+
+import java.util.List;
+
+// The task logs of a sharded store, placed on the ring and rebalanced as RingShards does it
+public class TaskShards extends RingShards<LogTaskRepository> implements AutoCloseable {
+
+    private final List<TaskLog> logs;
+
+    public TaskShards(List<TaskLog> logs, ChangeStampGenerator changeStampGenerator) {
+        super(logs.size());
+        this.logs = logs;
+
+        long lastId = 0;
+
+        for (TaskLog taskLog : logs) {
+            repositories.add(new LogTaskRepository(taskLog, changeStampGenerator));
+            lastId = Math.max(lastId, taskLog.lastId());
+        }
+
+        startIds(lastId);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        stopRebalancing();
+
+        for (TaskLog taskLog : logs) {
+            taskLog.close();
+        }
+    }
+
+    @Override
+    protected boolean holds(int shard, long id) {
+        return logs.get(shard).holds(id);
+    }
+
+    // a copy the owner already has, left by a move cut short before the mark, is not written again
+    @Override
+    protected boolean move(long id, int from) {
+        TaskLog source = logs.get(from);
+        TaskLog target = logs.get(shardFor(id));
+        Task task = source.get(id);
+
+        if (task == null || !source.holds(id)) {
+            return false;
+        }
+
+        Task copy = target.holds(id) ? target.get(id) : null;
+
+        if (copy == null || copy.getChangeStamp() < task.getChangeStamp()) {
+            target.write(task);
+        }
+
+        source.markMoved(id);
+
+        return true;
+    }
+}
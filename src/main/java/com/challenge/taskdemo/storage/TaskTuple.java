@@ -0,0 +1,79 @@
+package com.challenge.taskdemo.storage;
+
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TaskTuple implements Tuple {
+
+    private final List<TupleElement<?>> elements = new ArrayList<TupleElement<?>>();
+    private final List<Object> values = new ArrayList<Object>();
+
+    public void add(String alias, Object value) {
+        elements.add(new Element<Object>(alias, Object.class));
+        values.add(value);
+    }
+
+    @Override
+    public <X> X get(TupleElement<X> tupleElement) {
+        return tupleElement.getJavaType().cast(values.get(elements.indexOf(tupleElement)));
+    }
+
+    @Override
+    public <X> X get(String alias, Class<X> type) {
+        return type.cast(get(alias));
+    }
+
+    @Override
+    public Object get(String alias) {
+        for (int i = 0; i < elements.size(); i++) {
+            if (elements.get(i).getAlias().equals(alias)) {
+                return values.get(i);
+            }
+        }
+
+        throw new IllegalArgumentException(alias);
+    }
+
+    @Override
+    public <X> X get(int i, Class<X> type) {
+        return type.cast(get(i));
+    }
+
+    @Override
+    public Object get(int i) {
+        return values.get(i);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return values.toArray();
+    }
+
+    @Override
+    public List<TupleElement<?>> getElements() {
+        return elements;
+    }
+
+    private static class Element<X> implements TupleElement<X> {
+
+        private final String alias;
+        private final Class<X> javaType;
+
+        private Element(String alias, Class<X> javaType) {
+            this.alias = alias;
+            this.javaType = javaType;
+        }
+
+        @Override
+        public Class<? extends X> getJavaType() {
+            return javaType;
+        }
+
+        @Override
+        public String getAlias() {
+            return alias;
+        }
+    }
+}
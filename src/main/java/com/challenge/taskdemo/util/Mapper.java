@@ -2,20 +2,103 @@ package com.challenge.taskdemo.util;
 
 import com.challenge.taskdemo.dto.TaskDto;
 import com.challenge.taskdemo.entity.Task;
-import lombok.AllArgsConstructor;
-import org.modelmapper.ModelMapper;
+import com.challenge.taskdemo.repository.TaskSnapshot;
 import org.springframework.stereotype.Component;
 
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import java.time.Instant;
+
 @Component
-@AllArgsConstructor
 public class Mapper {
-    private ModelMapper modelMapper;
 
     public TaskDto convertToDto(Task task) {
-        return this.modelMapper.map(task, TaskDto.class);
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(task.getId());
+        taskDto.setName(task.getName());
+        taskDto.setDescription(task.getDescription());
+        taskDto.setStatus(task.getStatus());
+        taskDto.setVersion(task.getVersion());
+        taskDto.setCreatedAt(task.getCreatedAt());
+        taskDto.setChangeStamp(task.getChangeStamp());
+
+        return taskDto;
+    }
+
+    public TaskDto convertToDto(Tuple tuple) {
+        TaskDto taskDto = new TaskDto();
+
+        for (TupleElement<?> element : tuple.getElements()) {
+            Object value = tuple.get(element);
+
+            switch (element.getAlias()) {
+                case "id":
+                    taskDto.setId((Long) value);
+                    break;
+                case "name":
+                    taskDto.setName((String) value);
+                    break;
+                case "description":
+                    taskDto.setDescription((String) value);
+                    break;
+                case "status":
+                    taskDto.setStatus((Status) value);
+                    break;
+                case "version":
+                    taskDto.setVersion((Long) value);
+                    break;
+                case "createdAt":
+                    taskDto.setCreatedAt((Instant) value);
+                    break;
+                case "changeStamp":
+                    taskDto.setChangeStamp((Long) value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(element.getAlias());
+            }
+        }
+
+        return taskDto;
     }
 
     public Task convertToEntity(TaskDto taskDto) {
-        return this.modelMapper.map(taskDto, Task.class);
+        Task task = new Task();
+        task.setId(taskDto.getId());
+        task.setName(taskDto.getName());
+        task.setDescription(taskDto.getDescription());
+        task.setStatus(taskDto.getStatus());
+        task.setVersion(taskDto.getVersion());
+        task.setCreatedAt(taskDto.getCreatedAt());
+        task.setChangeStamp(taskDto.getChangeStamp());
+
+        return task;
+    }
+
+    public Task convertToEntity(TaskSnapshot taskSnapshot) {
+        Task task = new Task();
+        task.setId(taskSnapshot.getId());
+        task.setName(taskSnapshot.getName());
+        task.setDescription(taskSnapshot.getDescription());
+        task.setStatus(taskSnapshot.getStatus());
+        task.setVersion(taskSnapshot.getVersion());
+        task.setCreatedAt(taskSnapshot.getCreatedAt());
+
+        return task;
+    }
+
+    public Task merge(TaskDto taskDto, Task task) {
+        if (taskDto.getName() != null && !taskDto.getName().isEmpty()) {
+            task.setName(taskDto.getName());
+        }
+
+        if (taskDto.getDescription() != null && !taskDto.getDescription().isEmpty()) {
+            task.setDescription(taskDto.getDescription());
+        }
+
+        if (taskDto.getStatus() != null) {
+            task.setStatus(taskDto.getStatus());
+        }
+
+        return task;
     }
 }
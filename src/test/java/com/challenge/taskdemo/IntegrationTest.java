@@ -1,9 +1,19 @@
 package com.challenge.taskdemo;
 
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
 import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
 import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.TaskSnapshot;
 import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.idempotency.IdempotencyStore;
+import com.challenge.taskdemo.service.TaskArchiver;
+import com.challenge.taskdemo.service.TaskStats;
 import com.challenge.taskdemo.util.Status;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,10 +23,23 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.*;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -28,6 +51,21 @@ public class IntegrationTest {
     @Autowired
     private TaskRepository taskRepository;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TaskArchiver taskArchiver;
+
+    @Autowired
+    private TaskStats taskStats;
+
+    @Autowired
+    private ChangeStampGenerator changeStampGenerator;
+
+    @Autowired
+    private TaskEventStream taskEventStream;
+
     @Test
     public void getAllTasks_shouldReturnAllTasks() {
         //arrange
@@ -49,6 +87,27 @@ public class IntegrationTest {
         Assertions.assertThat(responseEntity.getBody()[1].getStatus()).isEqualTo(tasks.get(1).getStatus());
     }
 
+    @Test
+    public void getAllTasks_whenFilteredAndSorted_shouldFollowNextLink() {
+        //arrange
+        List<Task> tasks = getTasks();
+        tasks.add(getFullDataTask());
+        tasks.forEach(task -> task.setStatus(Status.DONE));
+        taskRepository.saveAll(tasks);
+
+        //act
+        ResponseEntity<TaskDto[]> firstPage = testRestTemplate.getForEntity("/tasks?status=DONE&nameStartsWith=My new&sort=createdAt,desc&limit=2", TaskDto[].class);
+        String next = firstPage.getHeaders().getFirst(HttpHeaders.LINK);
+        ResponseEntity<TaskDto[]> secondPage = testRestTemplate.getForEntity(URI.create(next.substring(1, next.indexOf('>'))), TaskDto[].class);
+
+        //assert API response
+        Assertions.assertThat(firstPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(firstPage.getBody()).extracting(TaskDto::getId).containsExactly(tasks.get(2).getId(), tasks.get(1).getId());
+        Assertions.assertThat(secondPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(secondPage.getBody()[0].getId()).isEqualTo(tasks.get(0).getId());
+        Assertions.assertThat(secondPage.getBody()).extracting(TaskDto::getStatus).containsOnly(Status.DONE);
+    }
+
     @Test
     public void getTaskById_shouldReturnATask() {
         //arrange
@@ -66,6 +125,21 @@ public class IntegrationTest {
         Assertions.assertThat(responseEntity.getBody().getStatus()).isEqualTo(task.getStatus());
     }
 
+    @Test
+    public void getTaskById_whenRepeated_shouldRecordCacheHit() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        testRestTemplate.getForEntity("/tasks/" + task.getId(), TaskDto.class);
+
+        //act
+        testRestTemplate.getForEntity("/tasks/" + task.getId(), TaskDto.class);
+        ResponseEntity<Map> responseEntity = testRestTemplate.getForEntity("/actuator/metrics/cache.gets?tag=cache:tasks&tag=result:hit", Map.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody().get("measurements").toString()).doesNotContain("value=0.0");
+    }
+
     @Test
     public void addTask_shouldReturnATask() {
         //arrange
@@ -94,6 +168,27 @@ public class IntegrationTest {
         Assertions.assertThat(taskRepository.findById(id).get().getStatus()).isEqualTo(Status.TODO);
     }
 
+    @Test
+    public void addTask_whenRetriedWithIdempotencyKey_shouldCreateOnlyOneTask() {
+        //arrange
+        String body = "{\"name\":\"Retried task\",\"description\":\"Posted twice\"}";
+        HttpHeaders headers = jsonHeaders();
+        headers.set(IdempotencyStore.IDEMPOTENCY_KEY, UUID.randomUUID().toString());
+        long countBefore = taskRepository.count();
+
+        //act
+        ResponseEntity<TaskDto> first = testRestTemplate.postForEntity("/tasks", new HttpEntity<>(body, headers), TaskDto.class);
+        ResponseEntity<TaskDto> retry = testRestTemplate.postForEntity("/tasks", new HttpEntity<>(body, headers), TaskDto.class);
+
+        //assert
+        Assertions.assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Assertions.assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Assertions.assertThat(retry.getHeaders().getLocation()).isEqualTo(first.getHeaders().getLocation());
+        Assertions.assertThat(retry.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+        Assertions.assertThat(retry.getBody().getId()).isEqualTo(first.getBody().getId());
+        Assertions.assertThat(taskRepository.count()).isEqualTo(countBefore + 1);
+    }
+
     @Test
     public void updateTask_shouldReturnATask() {
         //arrange
@@ -140,6 +235,420 @@ public class IntegrationTest {
         Assertions.assertThat(taskRepository.findById(task.getId()).isPresent()).isEqualTo(false);
     }
 
+    @Test
+    public void updateReturningPrevious_shouldWriteOnlyALiveRowAtTheExpectedVersion() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        long changeStamp = changeStampGenerator.next();
+        changeStampGenerator.release(changeStamp);
+
+        //act
+        Optional<TaskSnapshot> stale = taskRepository.updateReturningPrevious(task.getId(), "Stale", null, Status.DONE, task.getVersion() + 1, changeStamp);
+        Optional<TaskSnapshot> updated = taskRepository.updateReturningPrevious(task.getId(), "Fresh", null, Status.DONE, task.getVersion(), changeStamp);
+        Optional<TaskSnapshot> deleted = taskRepository.deleteReturningPrevious(task.getId(), null, changeStamp);
+        Optional<TaskSnapshot> gone = taskRepository.deleteReturningPrevious(task.getId(), null, changeStamp);
+
+        //assert
+        Assertions.assertThat(stale).isEmpty();
+        Assertions.assertThat(updated.get().getStatus()).isEqualTo(Status.TODO);
+        Assertions.assertThat(updated.get().getVersion()).isEqualTo(task.getVersion());
+        Assertions.assertThat(updated.get().getName()).isEqualTo("My new task");
+        Assertions.assertThat(deleted.get().getName()).isEqualTo("Fresh");
+        Assertions.assertThat(deleted.get().getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(deleted.get().getVersion()).isEqualTo(task.getVersion() + 1);
+        Assertions.assertThat(gone).isEmpty();
+    }
+
+    @Test
+    public void updateTask_whenPartial_shouldKeepOtherFields() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+
+        //act
+        HttpEntity<String> request = new HttpEntity<>("{\"status\":\"DONE\"}", jsonHeaders());
+        ResponseEntity<TaskDto> responseEntity = testRestTemplate.exchange("/tasks/" + task.getId(), HttpMethod.PATCH, request, TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody().getId()).isEqualTo(task.getId());
+        Assertions.assertThat(responseEntity.getBody().getName()).isEqualTo(task.getName());
+        Assertions.assertThat(responseEntity.getBody().getDescription()).isEqualTo(task.getDescription());
+        Assertions.assertThat(responseEntity.getBody().getStatus()).isEqualTo(Status.DONE);
+
+        //assert environment state
+        Task persistedTask = taskRepository.findById(task.getId()).get();
+        Assertions.assertThat(persistedTask.getName()).isEqualTo(task.getName());
+        Assertions.assertThat(persistedTask.getStatus()).isEqualTo(Status.DONE);
+    }
+
+    @Test
+    public void updateTask_whenIfMatchIsStale_shouldReturnPreconditionFailed() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        HttpHeaders headers = jsonHeaders();
+        headers.setIfMatch("\"" + task.getVersion() + "\"");
+        HttpEntity<String> request = new HttpEntity<>("{\"status\":\"DONE\"}", headers);
+
+        //act
+        ResponseEntity<TaskDto> first = testRestTemplate.exchange("/tasks/" + task.getId(), HttpMethod.PATCH, request, TaskDto.class);
+        ResponseEntity<TaskDto> second = testRestTemplate.exchange("/tasks/" + task.getId(), HttpMethod.PATCH, request, TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(first.getHeaders().getETag()).isEqualTo("\"" + (task.getVersion() + 1) + "\"");
+        Assertions.assertThat(second.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        //assert environment state
+        Assertions.assertThat(taskRepository.findById(task.getId()).get().getVersion()).isEqualTo(task.getVersion() + 1);
+    }
+
+    @Test
+    public void getTaskById_whenETagMatches_shouldReturnNotModified() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"" + task.getVersion() + "\"");
+
+        //act
+        ResponseEntity<TaskDto> responseEntity = testRestTemplate.exchange("/tasks/" + task.getId(), HttpMethod.GET, new HttpEntity<>(headers), TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        Assertions.assertThat(responseEntity.getBody()).isNull();
+    }
+
+    @Test
+    public void updateTask_whenDoesNotExist_shouldReturnNotFound() {
+        HttpEntity<String> request = new HttpEntity<>("{\"status\":\"DONE\"}", jsonHeaders());
+        ResponseEntity<TaskDto> responseEntity = testRestTemplate.exchange("/tasks/-1", HttpMethod.PATCH, request, TaskDto.class);
+
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void deleteTask_whenDoesNotExist_shouldReturnNotFound() {
+        ResponseEntity responseEntity = testRestTemplate.exchange("/tasks/-1", HttpMethod.DELETE, null, ResponseEntity.class);
+
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void addTasksBatch_shouldSaveValidTasks() {
+        //arrange
+        List<TaskDto> tasksDto = new ArrayList<TaskDto>();
+        tasksDto.add(getFullDataTaskDto());
+        tasksDto.add(new TaskDto());
+        tasksDto.add(getFullDataTaskDto());
+
+        //act
+        HttpEntity<List<TaskDto>> request = new HttpEntity<>(tasksDto);
+        ResponseEntity<TaskBatchResultDto[]> responseEntity = testRestTemplate.postForEntity("/tasks/batch", request, TaskBatchResultDto[].class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody()[0].getStatus()).isEqualTo(HttpStatus.CREATED.value());
+        Assertions.assertThat(responseEntity.getBody()[1].getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        Assertions.assertThat(responseEntity.getBody()[1].getErrors()).contains("Please provide a name");
+        Assertions.assertThat(responseEntity.getBody()[2].getStatus()).isEqualTo(HttpStatus.CREATED.value());
+
+        //assert environment state
+        Assertions.assertThat(taskRepository.findById(responseEntity.getBody()[0].getId()).isPresent()).isEqualTo(true);
+        Assertions.assertThat(taskRepository.findById(responseEntity.getBody()[2].getId()).isPresent()).isEqualTo(true);
+    }
+
+    @Test
+    public void deleteTasksBatch_shouldDeleteExistingTasks() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+
+        //act
+        HttpEntity<List<Long>> request = new HttpEntity<>(Arrays.asList(task.getId(), -1L));
+        ResponseEntity<TaskBatchResultDto[]> responseEntity = testRestTemplate.exchange("/tasks/batch", HttpMethod.DELETE, request, TaskBatchResultDto[].class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody()[0].getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+        Assertions.assertThat(responseEntity.getBody()[1].getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+
+        //assert environment state
+        Assertions.assertThat(taskRepository.findById(task.getId()).isPresent()).isEqualTo(false);
+    }
+
+    @Test
+    public void getStats_shouldCountNewAndDeletedTasks() {
+        //arrange
+        Map before = testRestTemplate.getForObject("/tasks/stats", Map.class);
+        TaskDto taskDto = testRestTemplate.postForObject("/tasks", getFullDataTaskDto(), TaskDto.class);
+        testRestTemplate.postForObject("/tasks", getFullDataTaskDto(), TaskDto.class);
+        testRestTemplate.delete("/tasks/" + taskDto.getId());
+
+        //act
+        ResponseEntity<Map> responseEntity = testRestTemplate.getForEntity("/tasks/stats", Map.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(((Number) responseEntity.getBody().get("TODO")).longValue()).isEqualTo(((Number) before.get("TODO")).longValue() + 1);
+        Assertions.assertThat(responseEntity.getBody().get("DONE")).isEqualTo(before.get("DONE"));
+    }
+
+    @Test
+    public void prometheus_shouldExposeLatencyHistogramsAndSqlCounts() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        testRestTemplate.getForEntity("/tasks/" + task.getId(), TaskDto.class);
+        testRestTemplate.getForEntity("/tasks?limit=10", TaskDto[].class);
+
+        //act
+        ResponseEntity<String> responseEntity = testRestTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody())
+                .contains("http_server_requests_seconds_bucket{")
+                .contains("http_server_requests_seconds{exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/tasks/{id}\",quantile=\"0.99\",}")
+                .contains("tasks_repository_seconds_count{class=\"CrudRepository\",method=\"findById\",}")
+                .contains("tasks_mapper_seconds_bucket{class=\"Mapper\",method=\"convertToDto\",")
+                .contains("tasks_sql_statements_count{method=\"GET\",uri=\"/tasks\",}")
+                .contains("tasks_sql_rows_bucket{method=\"GET\",uri=\"/tasks\",");
+    }
+
+    @Test
+    public void getAllTasks_whenFieldsAreGiven_shouldReturnOnlyThoseFields() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+
+        //act
+        ResponseEntity<String> page = testRestTemplate.getForEntity("/tasks?fields=name,status&after=" + (task.getId() - 1) + "&limit=1", String.class);
+        ResponseEntity<String> single = testRestTemplate.getForEntity("/tasks/" + task.getId() + "?fields=description", String.class);
+
+        //assert API response
+        Assertions.assertThat(page.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(page.getBody()).isEqualTo("[{\"id\":" + task.getId() + ",\"name\":\"My new task\",\"status\":\"TODO\"}]");
+        Assertions.assertThat(single.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(single.getBody()).isEqualTo("{\"id\":" + task.getId() + ",\"description\":\"Task's description\"}");
+    }
+
+    @Test
+    public void getTaskById_whenCborAccepted_shouldReturnCbor() {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Arrays.asList(MediaType.APPLICATION_CBOR));
+
+        //act
+        ResponseEntity<TaskDto> responseEntity = testRestTemplate.exchange("/tasks/" + task.getId(), HttpMethod.GET, new HttpEntity<>(headers), TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_CBOR);
+        Assertions.assertThat(responseEntity.getBody().getId()).isEqualTo(task.getId());
+        Assertions.assertThat(responseEntity.getBody().getName()).isEqualTo(task.getName());
+        Assertions.assertThat(responseEntity.getBody().getCreatedAt()).isEqualTo(testRestTemplate.getForObject("/tasks/" + task.getId(), TaskDto.class).getCreatedAt());
+    }
+
+    @Test
+    public void getAllTasks_whenGzipAccepted_shouldCompressLargeResponses() throws Exception {
+        //arrange
+        List<Task> tasks = new ArrayList<Task>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(getFullDataTask());
+        }
+        taskRepository.saveAll(tasks);
+
+        //act
+        HttpURLConnection connection = (HttpURLConnection) new URL(testRestTemplate.getRootUri() + "/tasks?limit=50").openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+        TaskDto[] page;
+        try (InputStream inputStream = new GZIPInputStream(connection.getInputStream())) {
+            page = objectMapper.readValue(inputStream, TaskDto[].class);
+        } finally {
+            connection.disconnect();
+        }
+
+        //assert API response
+        Assertions.assertThat(connection.getResponseCode()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        Assertions.assertThat(page).hasSize(50);
+    }
+
+    @Test
+    public void claim_shouldLeaseDisjointTasksAndHandBackNackedOnes() {
+        //arrange
+        List<Task> tasks = getTasks();
+        taskRepository.saveAll(tasks);
+
+        //act
+        TaskClaimDto first = testRestTemplate.postForObject("/tasks/claim?limit=1000", null, TaskClaimDto.class);
+        TaskClaimDto second = testRestTemplate.postForObject("/tasks/claim?limit=1000", null, TaskClaimDto.class);
+        ResponseEntity<TaskDto> acked = testRestTemplate.postForEntity("/tasks/" + tasks.get(0).getId() + "/ack?leaseId=" + first.getLeaseId(), null, TaskDto.class);
+        ResponseEntity<Void> nacked = testRestTemplate.postForEntity("/tasks/" + tasks.get(1).getId() + "/nack?leaseId=" + first.getLeaseId(), null, Void.class);
+        TaskClaimDto third = testRestTemplate.postForObject("/tasks/claim?limit=1000", null, TaskClaimDto.class);
+        ResponseEntity<TaskDto> stale = testRestTemplate.postForEntity("/tasks/" + tasks.get(1).getId() + "/ack?leaseId=" + first.getLeaseId(), null, TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(first.getTasks()).extracting(TaskDto::getId).contains(tasks.get(0).getId(), tasks.get(1).getId());
+        Assertions.assertThat(second.getTasks()).extracting(TaskDto::getId).doesNotContainAnyElementsOf(
+                first.getTasks().stream().map(TaskDto::getId).collect(Collectors.toList()));
+        Assertions.assertThat(acked.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(acked.getBody().getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(nacked.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(third.getTasks()).extracting(TaskDto::getId).contains(tasks.get(1).getId()).doesNotContain(tasks.get(0).getId());
+        Assertions.assertThat(stale.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+
+        //assert environment state
+        Assertions.assertThat(taskRepository.findById(tasks.get(0).getId()).get().getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(taskRepository.findById(tasks.get(1).getId()).get().getLeaseId()).isEqualTo(third.getLeaseId());
+    }
+
+    @Test
+    public void claim_whenLeaseExpires_shouldLetAnotherWorkerReclaimTheTask() throws Exception {
+        //arrange
+        Task task = taskRepository.save(getFullDataTask());
+        TaskClaimDto expired = testRestTemplate.postForObject("/tasks/claim?limit=1000&lease=1s", null, TaskClaimDto.class);
+        Thread.sleep(Duration.between(Instant.now(), expired.getExpiresAt()).toMillis() + 100);
+
+        //act
+        TaskClaimDto reclaimed = testRestTemplate.postForObject("/tasks/claim?limit=1000", null, TaskClaimDto.class);
+        ResponseEntity<TaskDto> late = testRestTemplate.postForEntity("/tasks/" + task.getId() + "/ack?leaseId=" + expired.getLeaseId(), null, TaskDto.class);
+
+        //assert API response
+        Assertions.assertThat(expired.getTasks()).extracting(TaskDto::getId).contains(task.getId());
+        Assertions.assertThat(reclaimed.getTasks()).extracting(TaskDto::getId).contains(task.getId());
+        Assertions.assertThat(late.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    public void archive_shouldMoveDoneTasksOutOfListsButKeepThemReadable() throws Exception {
+        //arrange
+        TaskDto newTaskDto = getFullDataTaskDto();
+        newTaskDto.setName("Archive the quokka");
+        TaskDto taskDto = testRestTemplate.postForObject("/tasks", newTaskDto, TaskDto.class);
+        Thread.sleep(10);
+        Instant createdSince = Instant.now();
+        Thread.sleep(10);
+        testRestTemplate.exchange("/tasks/" + taskDto.getId(), HttpMethod.PATCH, new HttpEntity<>("{\"status\":\"DONE\"}", jsonHeaders()), TaskDto.class);
+        taskStats.reconcile();
+        Map statsBefore = testRestTemplate.getForObject("/tasks/stats", Map.class);
+
+        //act
+        taskArchiver.archive(createdSince);
+        TaskDto[] completedSince = testRestTemplate.getForObject("/tasks?status=DONE&after=" + (taskDto.getId() - 1) + "&limit=1", TaskDto[].class);
+        int archived = taskArchiver.archive(Instant.now().plusSeconds(1));
+        ResponseEntity<TaskDto> single = testRestTemplate.getForEntity("/tasks/" + taskDto.getId(), TaskDto.class);
+        TaskDto[] hot = testRestTemplate.getForObject("/tasks?status=DONE&after=" + (taskDto.getId() - 1) + "&limit=1", TaskDto[].class);
+        TaskDto[] cold = testRestTemplate.getForObject("/tasks?archived=true&after=" + (taskDto.getId() - 1) + "&limit=1", TaskDto[].class);
+        ResponseEntity<TaskDto> update = testRestTemplate.exchange("/tasks/" + taskDto.getId(), HttpMethod.PATCH, new HttpEntity<>("{\"name\":\"Too late\"}", jsonHeaders()), TaskDto.class);
+        ResponseEntity<Void> delete = testRestTemplate.exchange("/tasks/" + taskDto.getId(), HttpMethod.DELETE, null, Void.class);
+        TaskDto[] found = testRestTemplate.getForObject("/tasks/search?q=quokka", TaskDto[].class);
+        taskStats.reconcile();
+        Map statsAfter = testRestTemplate.getForObject("/tasks/stats", Map.class);
+
+        //assert API response
+        Assertions.assertThat(completedSince).extracting(TaskDto::getId).containsExactly(taskDto.getId());
+        Assertions.assertThat(archived).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(single.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(single.getBody().getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(single.getHeaders().getETag()).isEqualTo("\"1\"");
+        Assertions.assertThat(hot).extracting(TaskDto::getId).doesNotContain(taskDto.getId());
+        Assertions.assertThat(cold).extracting(TaskDto::getId).containsExactly(taskDto.getId());
+        Assertions.assertThat(cold[0].getName()).isEqualTo(taskDto.getName());
+        Assertions.assertThat(update.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        Assertions.assertThat(delete.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        Assertions.assertThat(found).extracting(TaskDto::getId).contains(taskDto.getId());
+        Assertions.assertThat(statsAfter.get("DONE")).isEqualTo(statsBefore.get("DONE"));
+
+        //assert environment state
+        Assertions.assertThat(taskRepository.findById(taskDto.getId())).isEmpty();
+    }
+
+    @Test
+    public void events_shouldReplayChangesAfterLastEventId() throws Exception {
+        //arrange
+        String lastEventId = taskEventStream.lastEventId();
+        TaskDto taskDto = testRestTemplate.postForObject("/tasks", getFullDataTaskDto(), TaskDto.class);
+        testRestTemplate.exchange("/tasks/" + taskDto.getId(), HttpMethod.PATCH, new HttpEntity<>("{\"status\":\"DONE\"}", jsonHeaders()), TaskDto.class);
+
+        //act
+        HttpURLConnection connection = (HttpURLConnection) new URL(testRestTemplate.getRootUri() + "/tasks/events").openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+        connection.setRequestProperty("Last-Event-ID", lastEventId);
+        connection.setReadTimeout(5000);
+
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null && !(line.startsWith("data:") && line.contains("\"DONE\"") && line.contains("\"id\":" + taskDto.getId() + ","))) {
+                lines.add(line);
+            }
+            lines.add(line);
+        } finally {
+            connection.disconnect();
+        }
+
+        //assert API response
+        Assertions.assertThat(connection.getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        Assertions.assertThat(lines).contains("event:created", "event:updated");
+        Assertions.assertThat(lines).anyMatch(line -> line.startsWith("id:"));
+        Assertions.assertThat(lines.get(lines.size() - 1)).contains("\"status\":\"DONE\"");
+    }
+
+    @Test
+    public void search_shouldFindTasksByWordsAndForgetDeletedOnes() {
+        //arrange
+        TaskDto first = getFullDataTaskDto();
+        first.setDescription("Book the zeppelin tickets");
+        first = testRestTemplate.postForObject("/tasks", first, TaskDto.class);
+        TaskDto second = getFullDataTaskDto();
+        second.setDescription("Zeppelins are back");
+        second = testRestTemplate.postForObject("/tasks", second, TaskDto.class);
+        testRestTemplate.delete("/tasks/" + first.getId());
+
+        //act
+        ResponseEntity<TaskDto[]> responseEntity = testRestTemplate.getForEntity("/tasks/search?q=zeppelin", TaskDto[].class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody()).extracting(TaskDto::getId).containsExactly(second.getId());
+        Assertions.assertThat(responseEntity.getBody()[0].getDescription()).isEqualTo("Zeppelins are back");
+    }
+
+    @Test
+    public void getChanges_shouldReturnUpdatesAndTombstonesSinceWatermark() {
+        //arrange
+        Task updated = taskRepository.save(getFullDataTask());
+        Task deleted = taskRepository.save(getFullDataTask());
+        long since = updated.getChangeStamp() - 1;
+        testRestTemplate.exchange("/tasks/" + updated.getId(), HttpMethod.PATCH, new HttpEntity<>("{\"status\":\"DONE\"}", jsonHeaders()), TaskDto.class);
+        testRestTemplate.delete("/tasks/" + deleted.getId());
+
+        //act
+        ResponseEntity<TaskChangesDto> responseEntity = testRestTemplate.getForEntity("/tasks/changes?since=" + since, TaskChangesDto.class);
+
+        //assert API response
+        Assertions.assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(responseEntity.getBody().getChanged())
+                .filteredOn(taskDto -> taskDto.getId().equals(updated.getId()))
+                .extracting(TaskDto::getStatus).containsExactly(Status.DONE);
+        Assertions.assertThat(responseEntity.getBody().getChanged()).noneMatch(taskDto -> taskDto.getId().equals(deleted.getId()));
+        Assertions.assertThat(responseEntity.getBody().getDeleted()).contains(deleted.getId());
+
+        //assert nothing is left past the returned watermark
+        long watermark = responseEntity.getBody().getWatermark();
+        TaskChangesDto next = testRestTemplate.getForObject("/tasks/changes?since=" + watermark, TaskChangesDto.class);
+        Assertions.assertThat(next.getChanged()).isEmpty();
+        Assertions.assertThat(next.getDeleted()).isEmpty();
+        Assertions.assertThat(next.getWatermark()).isEqualTo(watermark);
+    }
+
+    private HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        return headers;
+    }
+
     private Task getFullDataTask() {
         Task task = new Task();
         task.setName("My new task");
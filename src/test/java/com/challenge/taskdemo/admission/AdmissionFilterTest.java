@@ -0,0 +1,179 @@
+package com.challenge.taskdemo.admission;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionFilterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String PROXY = "10.0.0.1";
+
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(4, 1, 100, 2.0);
+    private AdmissionFilter admissionFilter = new AdmissionFilter(concurrencyLimit, 1, 2, 0.5,
+            new ClientResolver("X-Client-Id", Collections.singleton(PROXY)));
+
+    @Test
+    public void doFilter_WhenClientRunsOutOfTokens_ShouldReturnTooManyRequestsWithRetryAfter() throws Exception {
+        MockHttpServletResponse first = filter(request("PATCH", "/tasks/1", "a"));
+        MockHttpServletResponse second = filter(request("PATCH", "/tasks/1", "a"));
+        MockHttpServletResponse third = filter(request("PATCH", "/tasks/1", "a"));
+        MockHttpServletResponse otherClient = filter(request("PATCH", "/tasks/1", "b"));
+
+        Assertions.assertThat(first.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(second.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(third.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        Assertions.assertThat(third.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        Assertions.assertThat(otherClient.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(concurrencyLimit.getInFlight()).isZero();
+    }
+
+    @Test
+    public void doFilter_WhenClientHeaderDoesNotComeFromTrustedProxy_ShouldKeyOnRemoteAddress() throws Exception {
+        MockHttpServletResponse first = filter(direct("PATCH", "/tasks/1", "a"));
+        MockHttpServletResponse second = filter(direct("PATCH", "/tasks/1", "b"));
+        MockHttpServletResponse third = filter(direct("PATCH", "/tasks/1", "c"));
+
+        Assertions.assertThat(first.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(second.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(third.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    }
+
+    @Test
+    public void doFilter_WhenHalfTheLimitIsInFlight_ShouldShedListingsButAdmitWrites() throws Exception {
+        concurrencyLimit.tryAcquire(1);
+        concurrencyLimit.tryAcquire(1);
+
+        MockHttpServletResponse listing = filter(request("GET", "/tasks", "a"));
+        MockHttpServletResponse search = filter(request("GET", "/tasks/search", "b"));
+        MockHttpServletResponse single = filter(request("GET", "/tasks/1", "c"));
+        MockHttpServletResponse write = filter(request("POST", "/tasks", "d"));
+
+        Assertions.assertThat(listing.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        Assertions.assertThat(listing.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        Assertions.assertThat(search.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        Assertions.assertThat(single.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(write.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void doFilter_WhenLimitIsReached_ShouldRejectEverythingButEventSubscriptions() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            concurrencyLimit.tryAcquire(1);
+        }
+
+        MockHttpServletResponse write = filter(request("POST", "/tasks", "a"));
+        MockHttpServletResponse events = filter(request("GET", "/tasks/events", "b"));
+
+        Assertions.assertThat(write.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        Assertions.assertThat(events.getStatus()).isEqualTo(HttpStatus.OK.value());
+        Assertions.assertThat(concurrencyLimit.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    public void doFilter_WhenRequestGoesAsync_ShouldHoldSlotUntilCompleted() throws Exception {
+        MockHttpServletRequest request = request("GET", "/tasks/1", "a");
+        request.setAsyncSupported(true);
+        FilterChain asyncChain = (servletRequest, servletResponse) -> servletRequest.startAsync();
+
+        admissionFilter.doFilter(request, new MockHttpServletResponse(), asyncChain);
+        int inFlight = concurrencyLimit.getInFlight();
+        request.getAsyncContext().complete();
+
+        Assertions.assertThat(inFlight).isEqualTo(1);
+        Assertions.assertThat(concurrencyLimit.getInFlight()).isZero();
+    }
+
+    @Test
+    public void concurrencyLimit_WhenLatencyRisesUnderLoad_ShouldShrinkAndGrowBackOnceItSettles() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(20, 2, 100, 2.0);
+
+        for (int i = 0; i < 100; i++) {
+            sample(limit, MILLIS);
+        }
+        int settled = limit.getLimit();
+
+        for (int i = 0; i < 50; i++) {
+            sample(limit, 20 * MILLIS);
+        }
+        int overloaded = limit.getLimit();
+
+        for (int i = 0; i < 200; i++) {
+            sample(limit, MILLIS);
+        }
+        int recovered = limit.getLimit();
+
+        Assertions.assertThat(overloaded).isLessThan(settled / 4);
+        Assertions.assertThat(recovered).isGreaterThan(overloaded * 4);
+    }
+
+    @Test
+    public void concurrencyLimit_WhenMostlyIdle_ShouldKeepLimit() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(20, 2, 100, 2.0);
+
+        for (int i = 0; i < 100; i++) {
+            limit.tryAcquire(1);
+            limit.release(i % 2 == 0 ? MILLIS : 50 * MILLIS);
+        }
+
+        Assertions.assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void tokenBucket_ShouldRefillAtRateUpToBurst() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        TokenBucket tokenBucket = new TokenBucket(2, 2, 0);
+
+        Assertions.assertThat(tokenBucket.tryAcquire(0)).isZero();
+        Assertions.assertThat(tokenBucket.tryAcquire(0)).isZero();
+        Assertions.assertThat(tokenBucket.tryAcquire(0)).isEqualTo(second / 2);
+        Assertions.assertThat(tokenBucket.tryAcquire(second / 2)).isZero();
+        Assertions.assertThat(tokenBucket.tryAcquire(10 * second)).isZero();
+        Assertions.assertThat(tokenBucket.tryAcquire(10 * second)).isZero();
+        Assertions.assertThat(tokenBucket.tryAcquire(10 * second)).isPositive();
+    }
+
+    // keeps the limit busy so every sample counts
+    private static void sample(ConcurrencyLimit limit, long rttNanos) {
+        int busy = limit.getLimit();
+
+        for (int i = 0; i < busy; i++) {
+            limit.tryAcquire(1);
+        }
+
+        limit.release(rttNanos);
+
+        for (int i = 1; i < busy; i++) {
+            limit.release();
+        }
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        admissionFilter.doFilter(request, response, new MockFilterChain());
+
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String client) {
+        MockHttpServletRequest request = direct(method, uri, client);
+        request.setRemoteAddr(PROXY);
+
+        return request;
+    }
+
+    private static MockHttpServletRequest direct(String method, String uri, String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.addHeader("X-Client-Id", client);
+
+        return request;
+    }
+}
@@ -0,0 +1,242 @@
+package com.challenge.taskdemo.controller;
+
+import com.challenge.taskdemo.config.AsyncConfig;
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.idempotency.IdempotencyStore;
+import com.challenge.taskdemo.routing.ReadSession;
+import com.challenge.taskdemo.admission.ClientResolver;
+import com.challenge.taskdemo.routing.ReadSessionFilter;
+import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.service.TaskUpdateBatcher;
+import com.challenge.taskdemo.util.Status;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(TaskController.class)
+@Import({AsyncConfig.class, IdempotencyStore.class, TaskUpdateBatcher.class})
+@TestPropertySource(properties = {"tasks.async.enabled=true", "tasks.async.pool-size=1", "tasks.async.queue-capacity=0", "tasks.async.virtual-threads=false"})
+public class TaskControllerAsyncTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private TaskService taskService;
+
+    @MockBean
+    private TaskEventStream taskEventStream;
+
+    @Autowired
+    private AsyncTaskExecutor taskExecutor;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Test
+    public void get() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        given(taskService.get(1L)).willReturn(taskDto);
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("name").value(taskDto.getName()))
+                .andExpect(MockMvcResultMatchers.jsonPath("status").value(Status.TODO.name()));
+    }
+
+    @Test
+    public void getAll_WithLimit_ShouldLinkTheNextPageOfTheRequest() throws Exception {
+        TaskDto first = getFullDataTaskDto();
+        first.setId(1L);
+        TaskDto second = getFullDataTaskDto();
+        second.setId(2L);
+        given(taskService.find(any(TaskQuery.class))).willReturn(Arrays.asList(first, second));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks?after=5&limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, "<http://localhost/tasks?after=2&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    public void stream_ShouldStillWriteNdjsonLines() throws Exception {
+        given(taskService.find(any(TaskQuery.class))).willReturn(Collections.singletonList(getFullDataTaskDto()));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks").accept(TaskController.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(TaskController.APPLICATION_NDJSON));
+    }
+
+    @Test
+    public void get_WhenETagMatches_ShouldReturnNotModified() throws Exception {
+        given(taskService.get(1L)).willReturn(getFullDataTaskDto());
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void get_WhenOneOfSeveralWeakETagsMatches_ShouldReturnNotModified() throws Exception {
+        given(taskService.get(1L)).willReturn(getFullDataTaskDto());
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1").header(HttpHeaders.IF_NONE_MATCH, "\"2\", W/\"3\""))
+                .andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    public void get_ShouldReturnNotFoundException() throws Exception {
+        given(taskService.get(1L)).willThrow(new TaskNotFoundException());
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1")).andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void add() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        taskDto.setId(7L);
+        given(taskService.add(any(TaskDto.class))).willReturn(taskDto);
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.post("/tasks")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(getFullDataTaskDto()));
+
+        MvcResult mvcResult = mockMvc.perform(builder).andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isCreated())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LOCATION, "http://localhost/tasks/7"));
+    }
+
+    @Test
+    public void update_WithIfMatch_ShouldPassExpectedVersion() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        taskDto.setVersion(4L);
+        given(taskService.update(eq(1L), any(TaskDto.class), eq(3L))).willReturn(taskDto);
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.patch("/tasks/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .content("{\"status\":\"DONE\"}");
+
+        MvcResult mvcResult = mockMvc.perform(builder).andReturn();
+
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    public void delete_ShouldRunForTheClientThatAskedForIt() throws Exception {
+        MockMvc sessionMockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .addFilters(new ReadSessionFilter(new ClientResolver("X-Client-Id", Collections.singleton("127.0.0.1"))))
+                .build();
+        AtomicReference<String> client = new AtomicReference<String>();
+        willAnswer(invocation -> {
+            client.set(ReadSession.current());
+
+            return null;
+        }).given(taskService).delete(1L, null);
+
+        MvcResult mvcResult = sessionMockMvc.perform(MockMvcRequestBuilders.delete("/tasks/1").header("X-Client-Id", "client-1"))
+                .andReturn();
+
+        sessionMockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        assertEquals("client-1", client.get());
+    }
+
+    @Test
+    public void get_WhenExecutorIsSaturated_ShouldReturnServiceUnavailable() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            taskExecutor.execute(() -> {
+                started.countDown();
+                await(release);
+            });
+            started.await();
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1"))
+                    .andExpect(status().isServiceUnavailable());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private TaskDto getFullDataTaskDto() {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setName("My new task");
+        taskDto.setDescription("Task's description");
+        taskDto.setStatus(Status.TODO);
+        taskDto.setVersion(3L);
+
+        return taskDto;
+    }
+}
@@ -2,10 +2,22 @@ package com.challenge.taskdemo.controller;
 
 import com.challenge.taskdemo.config.MessageConfig;
 import com.challenge.taskdemo.util.Status;
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
 import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskSearchResultDto;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.exception.BatchSizeExceededException;
+import com.challenge.taskdemo.exception.TaskLeaseLostException;
 import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.exception.TaskVersionMismatchException;
+import com.challenge.taskdemo.idempotency.IdempotencyStore;
 import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.service.TaskUpdateBatcher;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,28 +25,48 @@ import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.MessageSource;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(TaskController.class)
+@Import({IdempotencyStore.class, TaskUpdateBatcher.class})
 public class TaskControllerTest {
 
     @Autowired
@@ -43,13 +75,16 @@ public class TaskControllerTest {
     @MockBean
     private TaskService taskService;
 
+    @MockBean
+    private TaskEventStream taskEventStream;
+
     @Autowired
     ObjectMapper objectMapper;
 
 
     @Test
     public void getAll() throws Exception {
-        given(taskService.getAll()).willReturn(getTasksDto());
+        given(taskService.find(argThat(query -> query.getAfter() == null && query.getLimit() == TaskController.MAX_PAGE_SIZE))).willReturn(getTasksDto());
 
         MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks")
                 .accept(MediaType.APPLICATION_JSON);
@@ -62,7 +97,7 @@ public class TaskControllerTest {
 
     @Test
     public void getAll_ShouldReturnEmptyArray() throws Exception {
-        given(taskService.getAll()).willReturn(new ArrayList<>());
+        given(taskService.find(argThat(query -> query.getAfter() == null && query.getLimit() == TaskController.MAX_PAGE_SIZE))).willReturn(new ArrayList<>());
 
         MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks")
                 .accept(MediaType.APPLICATION_JSON);
@@ -73,6 +108,238 @@ public class TaskControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    public void getAll_WithoutAcceptHeader_ShouldReturnJsonArray() throws Exception {
+        given(taskService.find(argThat(query -> query.getAfter() == null && query.getLimit() == TaskController.MAX_PAGE_SIZE))).willReturn(getTasksDto());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void getAll_WithCborAcceptHeader_ShouldReturnCborArray() throws Exception {
+        given(taskService.find(argThat(query -> query.getAfter() == null && query.getLimit() == TaskController.MAX_PAGE_SIZE))).willReturn(getTasksDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks")
+                .accept(MediaType.APPLICATION_CBOR);
+
+        byte[] content = mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        TaskDto[] tasks = new ObjectMapper(new CBORFactory()).readValue(content, TaskDto[].class);
+        Assertions.assertThat(tasks).extracting(TaskDto::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void getAll_WithFields_ShouldWriteOnlySelectedFields() throws Exception {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(1L);
+        taskDto.setName("My new task");
+        given(taskService.find(argThat(query -> query.getSelection().containsAll(Arrays.asList("id", "name")) && query.getLimit() == 2)))
+                .willReturn(Collections.singletonList(taskDto));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks?fields=name&limit=2").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name", is("My new task")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].description").doesNotExist())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").doesNotExist());
+    }
+
+    @Test
+    public void getAll_WithUnknownField_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks?fields=name,secret").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAll_WithLimit_ShouldReturnPageAndNextLink() throws Exception {
+        given(taskService.find(argThat(query -> query.getAfter() == 5L && query.getLimit() == 2))).willReturn(getTasksDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks?after=5&limit=2")
+                .accept(MediaType.APPLICATION_JSON);
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, "<http://localhost/tasks?after=2&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    public void search_WhenIndexHasMoreHits_ShouldReturnNextLinkWithOffset() throws Exception {
+        given(taskService.search("buy milk", 4, 2)).willReturn(new TaskSearchResultDto(getTasksDto(), 7));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(URI.create("/tasks/search?q=buy%20milk&offset=4&limit=2")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, "<http://localhost/tasks/search?q=buy%20milk&offset=7&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    public void search_WithoutQuery_ShouldReturnBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks/search").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getAll_WhenLastPage_ShouldNotReturnNextLink() throws Exception {
+        given(taskService.find(argThat(query -> query.getAfter() == null && query.getLimit() == TaskController.MAX_PAGE_SIZE))).willReturn(getTasksDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks?limit=100000")
+                .accept(MediaType.APPLICATION_JSON);
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void getAll_WithFilters_ShouldBindQueryAndKeepItInNextLink() throws Exception {
+        given(taskService.find(argThat(query -> query.getStatus() == Status.DONE
+                && query.getNameStartsWith().equals("My")
+                && query.getCreatedAfter().equals(Instant.parse("2020-01-01T00:00:00Z"))
+                && query.getSortProperty().equals("name")
+                && query.isSortDescending()
+                && query.getLimit() == 2))).willReturn(getTasksDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders
+                .get("/tasks?status=DONE&nameStartsWith=My&createdAfter=2020-01-01T00:00:00Z&sort=name,desc&limit=2")
+                .accept(MediaType.APPLICATION_JSON);
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, containsString("status=DONE")))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, containsString("sort=name,desc")))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LINK, containsString("after=2")));
+    }
+
+    @Test
+    public void getAll_WithUnknownSort_ShouldReturnBadRequest() throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks?sort=description")
+                .accept(MediaType.APPLICATION_JSON);
+
+        mockMvc.perform(builder)
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void stream_ShouldWriteOneTaskPerLine() throws Exception {
+        given(taskService.find(argThat(query -> query.getLimit() == TaskController.STREAM_FETCH_SIZE))).willReturn(getTasksDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks")
+                .accept(TaskController.APPLICATION_NDJSON_VALUE);
+
+        MvcResult mvcResult = mockMvc.perform(builder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        String[] lines = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(TaskController.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        Assertions.assertThat(lines).hasSize(2);
+        Assertions.assertThat(objectMapper.readValue(lines[1], TaskDto.class).getId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void events_ShouldResumeFromLastEventId() throws Exception {
+        given(taskEventStream.subscribe("1700000000000-5")).willReturn(new SseEmitter());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "1700000000000-5");
+
+        mockMvc.perform(builder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted());
+
+        verify(taskEventStream, times(1)).subscribe("1700000000000-5");
+    }
+
+    @Test
+    public void getStats_ShouldReturnCountsPerStatus() throws Exception {
+        Map<Status, Long> stats = new EnumMap<Status, Long>(Status.class);
+        stats.put(Status.TODO, 3L);
+        stats.put(Status.DONE, 5L);
+        given(taskService.getStats()).willReturn(stats);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks/stats").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.TODO", is(3)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.DONE", is(5)));
+    }
+
+    @Test
+    public void getChanges_ShouldClampLimitAndReturnWatermark() throws Exception {
+        TaskChangesDto changes = new TaskChangesDto(Collections.singletonList(getFullDataTaskDto()), Collections.singletonList(2L), 42L);
+        given(taskService.getChanges(7L, TaskController.MAX_PAGE_SIZE)).willReturn(changes);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks/changes?since=7&limit=100000").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.changed[0].name", is("My new task")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.deleted[0]", is(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.watermark", is(42)));
+    }
+
+    @Test
+    public void claim_ShouldParseLeaseAndClampLimit() throws Exception {
+        TaskClaimDto claim = new TaskClaimDto("lease", Instant.parse("2020-03-01T00:00:45Z"), getTasksDto());
+        given(taskService.claim(TaskController.MAX_PAGE_SIZE, Duration.ofSeconds(45))).willReturn(claim);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks/claim?limit=100000&lease=45s").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.leaseId", is("lease")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.tasks", hasSize(2)));
+    }
+
+    @Test
+    public void claim_WithoutParameters_ShouldLeaseOneTaskForThirtySeconds() throws Exception {
+        given(taskService.claim(1, Duration.ofSeconds(30))).willReturn(new TaskClaimDto("lease", Instant.now(), Collections.emptyList()));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks/claim"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.tasks", hasSize(0)));
+    }
+
+    @Test
+    public void ack_ShouldReturnDoneTaskWithETag() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        taskDto.setStatus(Status.DONE);
+        given(taskService.ack(1L, "lease")).willReturn(taskDto);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks/1/ack?leaseId=lease").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", is("DONE")));
+    }
+
+    @Test
+    public void nack_WhenLeaseIsLost_ShouldReturnConflict() throws Exception {
+        willThrow(new TaskLeaseLostException()).given(taskService).nack(1L, "lease");
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks/1/nack?leaseId=lease"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void get_WithFieldsWithoutVersion_ShouldNotSendETag() throws Exception {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(1L);
+        taskDto.setStatus(Status.DONE);
+        given(taskService.get(1L, new LinkedHashSet<String>(Arrays.asList("id", "status")))).willReturn(taskDto);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1?fields=status").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", is("DONE")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").doesNotExist());
+    }
+
     @Test
     public void get() throws Exception {
         TaskDto taskDto = getFullDataTaskDto();
@@ -88,6 +355,66 @@ public class TaskControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("status").value(Status.TODO.name()));
     }
 
+    @Test
+    public void get_ShouldReturnETag() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        given(taskService.get(1L)).willReturn(taskDto);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/tasks/1"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    public void get_WhenETagMatches_ShouldReturnNotModified() throws Exception {
+        given(taskService.get(1L)).willReturn(getFullDataTaskDto());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.get("/tasks/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    public void update_WithIfMatch_ShouldPassExpectedVersion() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        taskDto.setVersion(4L);
+        given(taskService.update(eq(1L), any(TaskDto.class), eq(3L))).willReturn(taskDto);
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.patch("/tasks/1")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"DONE\"}");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+
+    @Test
+    public void update_WhenVersionDoesNotMatch_ShouldReturnPreconditionFailed() throws Exception {
+        given(taskService.update(eq(1L), any(TaskDto.class), eq(3L))).willThrow(new TaskVersionMismatchException());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.patch("/tasks/1")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"DONE\"}");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void delete_WhenIfMatchIsMalformed_ShouldReturnPreconditionFailed() throws Exception {
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.delete("/tasks/1")
+                .header(HttpHeaders.IF_MATCH, "W/\"3\"");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void get_ShouldReturnNotFoundException() throws Exception {
         given(taskService.get(anyLong())).willThrow(new TaskNotFoundException());
@@ -113,6 +440,54 @@ public class TaskControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("status").value(Status.TODO.name()));
     }
 
+    @Test
+    public void add_WithRepeatedIdempotencyKey_ShouldReplayFirstResponseWithoutAddingAgain() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        taskDto.setId(1L);
+        taskDto.setVersion(0L);
+        given(taskService.add(any(TaskDto.class))).willReturn(taskDto);
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.post("/tasks")
+                .header(IdempotencyStore.IDEMPOTENCY_KEY, "retry-1")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(taskDto));
+
+        mockMvc.perform(builder)
+                .andExpect(status().isCreated())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(IdempotencyStore.IDEMPOTENT_REPLAYED));
+        mockMvc.perform(builder)
+                .andExpect(status().isCreated())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LOCATION, "http://localhost/tasks/1"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"0\""))
+                .andExpect(MockMvcResultMatchers.header().string(IdempotencyStore.IDEMPOTENT_REPLAYED, "true"))
+                .andExpect(MockMvcResultMatchers.jsonPath("id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("name").value(taskDto.getName()));
+
+        verify(taskService, times(1)).add(any(TaskDto.class));
+    }
+
+    @Test
+    public void add_WithIdempotencyKeyOfAnotherRequest_ShouldReturnUnprocessableEntity() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        given(taskService.add(any(TaskDto.class))).willReturn(taskDto);
+        TaskDto otherTaskDto = getFullDataTaskDto();
+        otherTaskDto.setName("Another task");
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks")
+                .header(IdempotencyStore.IDEMPOTENCY_KEY, "retry-2")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(taskDto)))
+                .andExpect(status().isCreated());
+        mockMvc.perform(MockMvcRequestBuilders.post("/tasks")
+                .header(IdempotencyStore.IDEMPOTENCY_KEY, "retry-2")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(otherTaskDto)))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(taskService, times(1)).add(any(TaskDto.class));
+    }
+
     @Test
     public void add_ShouldReturnExceptionMissingRequiredFields() throws Exception {
         MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.post("/tasks")
@@ -134,7 +509,7 @@ public class TaskControllerTest {
     @Test
     public void update() throws Exception {
         TaskDto taskDto = getFullDataTaskDto();
-        given(taskService.update(anyLong(), any(TaskDto.class))).willReturn(taskDto);
+        given(taskService.update(anyLong(), any(TaskDto.class), isNull())).willReturn(taskDto);
 
         taskDto.setDescription("Updated description");
         String taskDescriptionJson = "{\"description\":\"" + taskDto.getDescription() + "\"}";
@@ -159,11 +534,76 @@ public class TaskControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void addAll() throws Exception {
+        TaskDto taskDto = getFullDataTaskDto();
+        given(taskService.addAll(anyList())).willReturn(Arrays.asList(
+                new TaskBatchResultDto(0, 1L, HttpStatus.CREATED.value(), null, taskDto),
+                new TaskBatchResultDto(1, null, HttpStatus.BAD_REQUEST.value(), Collections.singletonList("Please provide a name"), null)));
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.post("/tasks/batch")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Arrays.asList(taskDto, new TaskDto())));
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$", hasSize(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(HttpStatus.CREATED.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].task.name").value(taskDto.getName()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value(HttpStatus.BAD_REQUEST.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].errors", hasItem("Please provide a name")));
+    }
+
+    @Test
+    public void addAll_ShouldReturnPayloadTooLarge() throws Exception {
+        given(taskService.addAll(anyList())).willThrow(new BatchSizeExceededException());
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.post("/tasks/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    @Test
+    public void updateAll() throws Exception {
+        given(taskService.updateAll(anyList())).willReturn(Collections.singletonList(
+                new TaskBatchResultDto(0, 1L, HttpStatus.NOT_FOUND.value(), null, null)));
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.patch("/tasks/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\":1,\"status\":\"DONE\"}]");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(HttpStatus.NOT_FOUND.value()));
+    }
+
+    @Test
+    public void deleteAll() throws Exception {
+        given(taskService.deleteAll(Arrays.asList(1L, 2L))).willReturn(Arrays.asList(
+                new TaskBatchResultDto(0, 1L, HttpStatus.NO_CONTENT.value(), null, null),
+                new TaskBatchResultDto(1, 2L, HttpStatus.NOT_FOUND.value(), null, null)));
+
+        MockHttpServletRequestBuilder builder = MockMvcRequestBuilders.delete("/tasks/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1,2]");
+
+        mockMvc.perform(builder)
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(HttpStatus.NO_CONTENT.value()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value(HttpStatus.NOT_FOUND.value()));
+    }
+
     private TaskDto getFullDataTaskDto() {
         TaskDto taskDto = new TaskDto();
         taskDto.setName("My new task");
         taskDto.setDescription("Task's description");
         taskDto.setStatus(Status.TODO);
+        taskDto.setVersion(3L);
 
         return taskDto;
     }
@@ -172,6 +612,8 @@ public class TaskControllerTest {
         List<TaskDto> tasks = new ArrayList<TaskDto>();
         tasks.add(getFullDataTaskDto());
         tasks.add(getFullDataTaskDto());
+        tasks.get(0).setId(1L);
+        tasks.get(1).setId(2L);
 
         return tasks;
     }
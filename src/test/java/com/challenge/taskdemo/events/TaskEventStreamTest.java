@@ -0,0 +1,144 @@
+package com.challenge.taskdemo.events;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TaskEventStreamTest {
+
+    private static final int SENDER_THREADS = 2;
+
+    private TaskEventStream taskEventStream;
+
+    @Before
+    public void setUp() {
+        taskEventStream = new TaskEventStream(new ObjectMapper(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1), 10, SENDER_THREADS);
+        taskEventStream.start();
+    }
+
+    @After
+    public void tearDown() {
+        taskEventStream.stop();
+    }
+
+    @Test
+    public void publish_WhenManySubscribersFollow_ShouldReachAllOfThemFromABoundedPool() throws Exception {
+        int subscribers = 2000;
+        CountDownLatch delivered = new CountDownLatch(subscribers);
+        Set<String> senderThreads = ConcurrentHashMap.newKeySet();
+
+        for (int i = 0; i < subscribers; i++) {
+            taskEventStream.subscribe(new RecordingEmitter(senderThreads, delivered), null);
+        }
+
+        taskEventStream.publish(TaskEvent.Type.CREATED, task(1L));
+
+        Assertions.assertThat(delivered.await(10, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(senderThreads).hasSizeBetween(1, SENDER_THREADS);
+    }
+
+    @Test
+    public void publish_WhenASubscriberIsSlow_ShouldStillReachTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(10);
+        Set<String> senderThreads = ConcurrentHashMap.newKeySet();
+
+        taskEventStream.subscribe(new BlockedEmitter(release), null);
+        for (int i = 0; i < 10; i++) {
+            taskEventStream.subscribe(new RecordingEmitter(senderThreads, delivered), null);
+        }
+
+        try {
+            taskEventStream.publish(TaskEvent.Type.CREATED, task(1L));
+
+            Assertions.assertThat(delivered.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void subscribe_WhenLastEventIdIsFromAnotherRun_ShouldResetWhateverItsSequence() throws Exception {
+        String lastEventId = taskEventStream.lastEventId();
+        for (long id = 1; id <= 3; id++) {
+            taskEventStream.publish(TaskEvent.Type.CREATED, task(id));
+        }
+        CountDownLatch delivered = new CountDownLatch(4);
+        Set<String> senderThreads = ConcurrentHashMap.newKeySet();
+        RecordingEmitter resumed = new RecordingEmitter(senderThreads, delivered);
+        RecordingEmitter restarted = new RecordingEmitter(senderThreads, delivered);
+
+        taskEventStream.subscribe(resumed, lastEventId);
+        taskEventStream.subscribe(restarted, "1-1");
+
+        Assertions.assertThat(delivered.await(10, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(resumed.events).hasSize(3).allMatch(event -> event.contains("event:created"));
+        Assertions.assertThat(restarted.events).hasSize(1);
+        Assertions.assertThat(restarted.events.get(0)).contains("event:reset").contains("id:" + taskEventStream.lastEventId());
+    }
+
+    private static TaskDto task(Long id) {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(id);
+        taskDto.setName("My new task");
+
+        return taskDto;
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final Set<String> senderThreads;
+        private final CountDownLatch delivered;
+        private final List<String> events = new CopyOnWriteArrayList<String>();
+
+        private RecordingEmitter(Set<String> senderThreads, CountDownLatch delivered) {
+            this.senderThreads = senderThreads;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            senderThreads.add(Thread.currentThread().getName());
+            StringBuilder event = new StringBuilder();
+            builder.build().forEach(data -> event.append(data.getData()));
+            events.add(event.toString());
+            delivered.countDown();
+        }
+    }
+
+    // holds its sender until released, as a client that stopped reading does
+    private static class BlockedEmitter extends SseEmitter {
+
+        private final CountDownLatch release;
+
+        private BlockedEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            await();
+        }
+
+        private void await() throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException interruptedException) {
+                throw new IOException(interruptedException);
+            }
+        }
+    }
+}
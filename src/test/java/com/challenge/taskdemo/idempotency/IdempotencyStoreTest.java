@@ -0,0 +1,185 @@
+package com.challenge.taskdemo.idempotency;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.entity.IdempotentResponse;
+import com.challenge.taskdemo.exception.IdempotencyKeyReusedException;
+import com.challenge.taskdemo.exception.InvalidIdempotencyKeyException;
+import com.challenge.taskdemo.repository.IdempotentResponseRepository;
+import com.challenge.taskdemo.util.Status;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyStoreTest {
+
+    @Mock
+    private ObjectProvider<IdempotentResponseRepository> repositoryProvider;
+
+    @Mock
+    private IdempotentResponseRepository idempotentResponseRepository;
+
+    @Test
+    public void execute_WhenDuplicatesRaceOnOneKey_ShouldRunActionOnce() throws Exception {
+        IdempotencyStore idempotencyStore = memoryStore(64);
+        AtomicInteger added = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ResponseEntity<TaskDto>>> responses = new ArrayList<Future<ResponseEntity<TaskDto>>>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                responses.add(executor.submit(() -> {
+                    start.await();
+
+                    return idempotencyStore.execute("key", request("My new task", null), () -> {
+                        sleep(50);
+
+                        return created(added.incrementAndGet());
+                    });
+                }));
+            }
+
+            for (Future<ResponseEntity<TaskDto>> response : responses) {
+                Assertions.assertThat(response.get(10, TimeUnit.SECONDS).getBody().getId()).isEqualTo(1L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertThat(added.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_WhenKeysAreOnDifferentStripes_ShouldNotWaitForEachOther() throws Exception {
+        IdempotencyStore idempotencyStore = memoryStore(2);
+        CountDownLatch otherKeyDone = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // "a" and "b" hash to different stripes of two, so "a" can wait on "b" without deadlocking
+            Future<ResponseEntity<TaskDto>> first = executor.submit(() -> idempotencyStore.execute("a", request("My new task", null), () -> {
+                await(otherKeyDone);
+
+                return created(1);
+            }));
+            idempotencyStore.execute("b", request("My new task", null), () -> created(2));
+            otherKeyDone.countDown();
+
+            Assertions.assertThat(first.get(10, TimeUnit.SECONDS).getBody().getId()).isEqualTo(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void execute_WhenPersistent_ShouldReplayResponseStoredBeforeRestart() {
+        given(repositoryProvider.getIfAvailable()).willReturn(idempotentResponseRepository);
+        IdempotentResponse stored = new IdempotentResponse("key", HttpStatus.CREATED.value(), "http://localhost/tasks/7", "\"0\"",
+                7L, "My new task", "Task's description", Status.TODO, 0L, Instant.now(), 3L, Instant.now());
+        given(idempotentResponseRepository.findById("key")).willReturn(Optional.of(stored));
+        IdempotencyStore idempotencyStore = new IdempotencyStore(repositoryProvider, 100, Duration.ofHours(1), 64, true);
+
+        ResponseEntity<TaskDto> response = idempotencyStore.execute("key", request("My new task", "Task's description"), () -> {
+            throw new AssertionError();
+        });
+
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Assertions.assertThat(response.getHeaders().getLocation()).isEqualTo(URI.create("http://localhost/tasks/7"));
+        Assertions.assertThat(response.getHeaders().getETag()).isEqualTo("\"0\"");
+        Assertions.assertThat(response.getBody().getId()).isEqualTo(7L);
+        Assertions.assertThat(response.getBody().getChangeStamp()).isEqualTo(3L);
+        verify(idempotentResponseRepository, never()).save(any());
+    }
+
+    @Test
+    public void execute_WhenPersistedResponseExpired_ShouldRunActionAndStoreNewResponse() {
+        given(repositoryProvider.getIfAvailable()).willReturn(idempotentResponseRepository);
+        IdempotentResponse stored = new IdempotentResponse("key", HttpStatus.CREATED.value(), null, null,
+                7L, "My new task", "Task's description", Status.TODO, 0L, Instant.now(), 3L, Instant.now().minus(Duration.ofHours(2)));
+        given(idempotentResponseRepository.findById("key")).willReturn(Optional.of(stored));
+        IdempotencyStore idempotencyStore = new IdempotencyStore(repositoryProvider, 100, Duration.ofHours(1), 64, true);
+
+        ResponseEntity<TaskDto> response = idempotencyStore.execute("key", request("My new task", "Task's description"), () -> created(8));
+
+        Assertions.assertThat(response.getBody().getId()).isEqualTo(8L);
+        verify(idempotentResponseRepository).save(any(IdempotentResponse.class));
+    }
+
+    @Test(expected = IdempotencyKeyReusedException.class)
+    public void execute_WhenKeyIsReusedForAnotherDescription_ShouldThrowException() {
+        IdempotencyStore idempotencyStore = memoryStore(64);
+        idempotencyStore.execute("key", request("My new task", null), () -> created(1));
+
+        idempotencyStore.execute("key", request("My new task", "Another description"), () -> created(2));
+    }
+
+    @Test(expected = InvalidIdempotencyKeyException.class)
+    public void execute_WhenKeyIsTooLong_ShouldThrowException() {
+        char[] key = new char[IdempotencyStore.MAX_KEY_LENGTH + 1];
+        Arrays.fill(key, 'k');
+
+        memoryStore(64).execute(new String(key), request("My new task", null), () -> created(1));
+    }
+
+    private IdempotencyStore memoryStore(int stripes) {
+        return new IdempotencyStore(repositoryProvider, 100, Duration.ofHours(1), stripes, false);
+    }
+
+    private static TaskDto request(String name, String description) {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setName(name);
+        taskDto.setDescription(description);
+
+        return taskDto;
+    }
+
+    private static ResponseEntity<TaskDto> created(long id) {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setId(id);
+        taskDto.setName("My new task");
+
+        return ResponseEntity.created(URI.create("http://localhost/tasks/" + id)).body(taskDto);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException interruptedException) {
+            throw new IllegalStateException(interruptedException);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException interruptedException) {
+            throw new IllegalStateException(interruptedException);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.challenge.taskdemo.routing;
+
+import com.challenge.taskdemo.admission.ClientResolver;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReadSessionFilterTest {
+
+    private static final String PROXY = "10.0.0.1";
+
+    private ReadSessionFilter readSessionFilter = new ReadSessionFilter(new ClientResolver("X-Client-Id", Collections.singleton(PROXY)));
+
+    @Test
+    public void doFilter_WhenClientHeaderComesFromTrustedProxy_ShouldRunForThatClient() throws Exception {
+        Assertions.assertThat(session(PROXY, "client-1")).isEqualTo("client-1");
+        Assertions.assertThat(ReadSession.current()).isNull();
+    }
+
+    @Test
+    public void doFilter_WhenClientHeaderDoesNotComeFromTrustedProxy_ShouldRunForTheRemoteAddress() throws Exception {
+        Assertions.assertThat(session("192.168.0.7", "client-1")).isEqualTo("192.168.0.7");
+    }
+
+    private String session(String remoteAddress, String client) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/tasks/1");
+        request.setRemoteAddr(remoteAddress);
+        request.addHeader("X-Client-Id", client);
+        AtomicReference<String> session = new AtomicReference<String>();
+
+        readSessionFilter.doFilter(request, new MockHttpServletResponse(), (filterRequest, filterResponse) -> session.set(ReadSession.current()));
+
+        return session.get();
+    }
+}
@@ -0,0 +1,178 @@
+package com.challenge.taskdemo.routing;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.UUID;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String CREATE_HEARTBEAT = "CREATE TABLE REPLICATION_HEARTBEAT (ID INT PRIMARY KEY, BEAT_AT_MILLIS BIGINT)";
+    private static final String DATABASE_NAME = "SELECT DATABASE()";
+
+    private MutableClock clock;
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private String primaryName;
+    private String replicaName;
+    private RecentWrites recentWrites;
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+    private JdbcTemplate routed;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        primary = database();
+        replica = database();
+        primaryName = primary.queryForObject(DATABASE_NAME, String.class);
+        replicaName = replica.queryForObject(DATABASE_NAME, String.class);
+
+        recentWrites = new RecentWrites(Duration.ofSeconds(5));
+        replicaRoutingDataSource = new ReplicaRoutingDataSource(primary.getDataSource(),
+                Collections.singletonMap("replica-0", replica.getDataSource()), Duration.ofSeconds(5), clock, recentWrites);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        routed = new JdbcTemplate(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @After
+    public void tearDown() {
+        ReadSession.close();
+        primary.execute("DROP ALL OBJECTS");
+        replica.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void getConnection_WhenReplicaHasCaughtUp_ShouldReadFromReplicaAndWriteToPrimary() {
+        checkAndReplicate();
+
+        Assertions.assertThat(readOnlyDatabase()).isEqualTo(replicaName);
+        Assertions.assertThat(readWriteDatabase()).isEqualTo(primaryName);
+        Assertions.assertThat(routed.queryForObject(DATABASE_NAME, String.class)).isEqualTo(primaryName);
+    }
+
+    @Test
+    public void getConnection_AfterOwnWrite_ShouldReadFromPrimaryUntilReplicaHasTheWrite() {
+        checkAndReplicate();
+        ReadSession.open("writer");
+        clock.advance(Duration.ofMillis(10));
+        readWriteDatabase();
+
+        String ownRead = readOnlyDatabase();
+        ReadSession.open("other");
+        String otherRead = readOnlyDatabase();
+        clock.advance(Duration.ofMillis(10));
+        checkAndReplicate();
+        ReadSession.open("writer");
+
+        Assertions.assertThat(ownRead).isEqualTo(primaryName);
+        Assertions.assertThat(otherRead).isEqualTo(replicaName);
+        Assertions.assertThat(readOnlyDatabase()).isEqualTo(replicaName);
+    }
+
+    @Test
+    public void getConnection_WhenReadMustBeOnPrimary_ShouldSkipCaughtUpReplica() {
+        checkAndReplicate();
+
+        Assertions.assertThat(ReadSession.onPrimary(this::readOnlyDatabase)).isEqualTo(primaryName);
+        Assertions.assertThat(readOnlyDatabase()).isEqualTo(replicaName);
+    }
+
+    @Test
+    public void wroteRecently_ShouldHoldOnlyForTheWritingSession() {
+        ReadSession.open("writer");
+        readWriteDatabase();
+        boolean writer = recentWrites.wroteRecently();
+        ReadSession.open("other");
+
+        Assertions.assertThat(writer).isTrue();
+        Assertions.assertThat(recentWrites.wroteRecently()).isFalse();
+    }
+
+    @Test
+    public void getConnection_WhenReplicaLagsOrIsDown_ShouldReadFromPrimary() {
+        Assertions.assertThat(readOnlyDatabase()).isEqualTo(primaryName);
+
+        checkAndReplicate();
+        clock.advance(Duration.ofSeconds(6));
+        String lagging = readOnlyDatabase();
+
+        checkAndReplicate();
+        replica.execute("DROP TABLE REPLICATION_HEARTBEAT");
+        replicaRoutingDataSource.checkReplicas();
+
+        Assertions.assertThat(lagging).isEqualTo(primaryName);
+        Assertions.assertThat(readOnlyDatabase()).isEqualTo(primaryName);
+    }
+
+    // stands in for replication, which only has to carry the heartbeat for routing to follow it
+    private void checkAndReplicate() {
+        replicaRoutingDataSource.checkReplicas();
+        Long beat = primary.queryForObject("SELECT BEAT_AT_MILLIS FROM REPLICATION_HEARTBEAT WHERE ID = 1", Long.class);
+        replica.update("MERGE INTO REPLICATION_HEARTBEAT (ID, BEAT_AT_MILLIS) KEY (ID) VALUES (1, ?)", beat);
+        replicaRoutingDataSource.checkReplicas();
+    }
+
+    private String readOnlyDatabase() {
+        return readOnly.execute(status -> routed.queryForObject(DATABASE_NAME, String.class));
+    }
+
+    private String readWriteDatabase() {
+        return readWrite.execute(status -> routed.queryForObject(DATABASE_NAME, String.class));
+    }
+
+    private static JdbcTemplate database() {
+        JdbcTemplate database = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1"));
+        database.execute(CREATE_HEARTBEAT);
+
+        return database;
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
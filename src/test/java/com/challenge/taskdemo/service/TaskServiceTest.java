@@ -1,10 +1,30 @@
 package com.challenge.taskdemo.service;
 
+import com.challenge.taskdemo.cache.CaffeineTaskCache;
+import com.challenge.taskdemo.cache.NoOpTaskCache;
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskChangesDto;
+import com.challenge.taskdemo.dto.TaskClaimDto;
+import com.challenge.taskdemo.dto.TaskFields;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.dto.TaskSearchResultDto;
+import com.challenge.taskdemo.events.TaskEvent;
+import com.challenge.taskdemo.events.TaskEventStream;
+import com.challenge.taskdemo.exception.BatchSizeExceededException;
+import com.challenge.taskdemo.exception.TaskLeaseLostException;
+import com.challenge.taskdemo.exception.TaskArchivedException;
 import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.exception.TaskVersionMismatchException;
 import com.challenge.taskdemo.util.Mapper;
 import com.challenge.taskdemo.util.Status;
 import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
 import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.routing.RecentWrites;
+import com.challenge.taskdemo.search.TaskSearchIndex;
+import com.challenge.taskdemo.storage.TaskTuple;
 import com.challenge.taskdemo.entity.Task;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -12,15 +32,34 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 
+import javax.validation.Validation;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -30,27 +69,99 @@ public class TaskServiceTest {
     @Mock
     private TaskRepository taskRepository;
 
+    @Mock
+    private TaskEventStream taskEventStream;
+
+    @Mock
+    private ChangeStampGenerator changeStampGenerator;
+
+    private TaskSearchIndex taskSearchIndex;
+
     private TaskService taskService;
 
     @Before
     public void setUp() {
-        taskService = new TaskService(taskRepository, new Mapper(new ModelMapper()));
+        taskSearchIndex = new TaskSearchIndex(taskRepository);
+        taskService = new TaskService(taskRepository, new Mapper(), new CaffeineTaskCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                Validation.buildDefaultValidatorFactory().getValidator(), new TaskStats(taskRepository), taskEventStream, changeStampGenerator, taskSearchIndex, new RecentWrites(Duration.ofSeconds(5)));
     }
 
     @Test
-    public void getAll() {
-        given(taskRepository.findAll()).willReturn(getTasks());
+    public void find_shouldQueryRepositoryWithFilter() {
+        TaskQuery query = new TaskQuery();
+        query.setStatus(Status.TODO);
+        query.setLimit(2);
+        given(taskRepository.findAll(query)).willReturn(getTasks());
 
-        List<TaskDto> tasks = taskService.getAll();
+        List<TaskDto> tasks = taskService.find(query);
 
-        verify(taskRepository, times(1)).findAll();
+        verify(taskRepository, times(1)).findAll(query);
         Assertions.assertThat(tasks.size()).isEqualTo(2);
-        Assertions.assertThat(tasks.get(0).getName()).isEqualTo(tasks.get(0).getName());
-        Assertions.assertThat(tasks.get(0).getDescription()).isEqualTo(tasks.get(0).getDescription());
-        Assertions.assertThat(tasks.get(0).getStatus()).isEqualTo(tasks.get(0).getStatus());
-        Assertions.assertThat(tasks.get(1).getName()).isEqualTo(tasks.get(1).getName());
-        Assertions.assertThat(tasks.get(1).getDescription()).isEqualTo(tasks.get(1).getDescription());
-        Assertions.assertThat(tasks.get(1).getStatus()).isEqualTo(tasks.get(1).getStatus());
+        Assertions.assertThat(tasks.get(0).getId()).isEqualTo(1L);
+    }
+
+    @Test
+    public void find_whenFieldsAreGiven_thenProjectWithoutLoadingEntities() {
+        TaskQuery query = new TaskQuery();
+        query.setFields("name,status");
+        given(taskRepository.findAll(eq(query), any())).willReturn(Collections.emptyList());
+
+        taskService.find(query);
+
+        verify(taskRepository, times(1)).findAll(query, new LinkedHashSet<String>(Arrays.asList("id", "name", "status")));
+        verify(taskRepository, never()).findAll(query);
+    }
+
+    @Test(expected = TaskNotFoundException.class)
+    public void get_whenFieldsAreGivenAndTaskDoesNotExist_thenThrow() {
+        given(taskRepository.findFieldsById(eq(1L), any())).willReturn(Optional.empty());
+
+        taskService.get(1L, Collections.singleton("name"));
+    }
+
+    @Test
+    public void get_whenTaskIsArchived_thenReadItFromTheArchive() {
+        TaskTuple tuple = new TaskTuple();
+        tuple.add("id", 1L);
+        tuple.add("name", "My archived task");
+        tuple.add("status", Status.DONE);
+        given(taskRepository.findById(1L)).willReturn(Optional.empty());
+        given(taskRepository.findArchivedFieldsById(1L, TaskFields.ALL_FIELDS)).willReturn(Optional.of(tuple));
+
+        TaskDto taskDto = taskService.get(1L);
+
+        Assertions.assertThat(taskDto.getId()).isEqualTo(1L);
+        Assertions.assertThat(taskDto.getName()).isEqualTo("My archived task");
+        Assertions.assertThat(taskDto.getStatus()).isEqualTo(Status.DONE);
+    }
+
+    @Test
+    public void find_whenArchivedTasksAreAsked_thenProjectEveryFieldFromTheArchive() {
+        TaskQuery query = new TaskQuery();
+        query.setArchived(true);
+        given(taskRepository.findAll(eq(query), any())).willReturn(Collections.emptyList());
+
+        taskService.find(query);
+
+        verify(taskRepository, times(1)).findAll(query, TaskFields.ALL_FIELDS);
+        verify(taskRepository, never()).findAll(query);
+    }
+
+    @Test
+    public void archive_shouldMoveChunksUntilOneComesBackShortAndDropArchivedTasksFromTheCache() {
+        CaffeineTaskCache taskCache = new CaffeineTaskCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        TaskArchiver taskArchiver = new TaskArchiver(taskRepository, taskCache, Duration.ofDays(30), 2);
+        Task task = getFullDataTask();
+        taskCache.put(new Mapper().convertToDto(task));
+        taskSearchIndex.index(task.getId(), task.getVersion(), task.getName(), task.getDescription());
+        given(taskRepository.archive(any(), any(), eq(2))).willReturn(Arrays.asList(1L, 2L)).willReturn(Collections.singletonList(3L));
+
+        int archived = taskArchiver.archive(Instant.now());
+
+        verify(taskRepository, times(2)).archive(any(), any(), eq(2));
+        Assertions.assertThat(archived).isEqualTo(3);
+        Assertions.assertThat(taskCache.get(1L, id -> null)).isNull();
+        Assertions.assertThat(taskSearchIndex.size()).isEqualTo(1);
     }
 
     @Test
@@ -66,6 +177,18 @@ public class TaskServiceTest {
         Assertions.assertThat(taskDto.getStatus()).isEqualTo(task.getStatus());
     }
 
+    @Test
+    public void get_whenCalledTwice_thenServeSecondFromCache() {
+        Task task = getFullDataTask();
+        given(taskRepository.findById(task.getId())).willReturn(Optional.of(task));
+
+        taskService.get(task.getId());
+        TaskDto taskDto = taskService.get(task.getId());
+
+        verify(taskRepository, times(1)).findById(task.getId());
+        Assertions.assertThat(taskDto.getName()).isEqualTo(task.getName());
+    }
+
     @Test(expected = TaskNotFoundException.class)
     public void get_whenTaskDoesNotExist_thenReturnEmpty() {
         given(taskRepository.findById(anyLong())).willReturn(Optional.empty());
@@ -73,6 +196,120 @@ public class TaskServiceTest {
         taskService.get(anyLong());
     }
 
+    @Test
+    public void get_whenTaskDoesNotExist_thenRememberItUntilItIsAdded() {
+        Task task = getFullDataTask();
+        given(taskRepository.findById(task.getId())).willReturn(Optional.empty());
+        given(taskRepository.findArchivedFieldsById(task.getId(), TaskFields.ALL_FIELDS)).willReturn(Optional.empty());
+        given(taskRepository.save(any(Task.class))).willReturn(task);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThatThrownBy(() -> taskService.get(task.getId())).isInstanceOf(TaskNotFoundException.class);
+        }
+        taskService.add(getFullDataTaskDto());
+        TaskDto taskDto = taskService.get(task.getId());
+
+        verify(taskRepository, times(1)).findById(task.getId());
+        Assertions.assertThat(taskDto.getName()).isEqualTo(task.getName());
+    }
+
+    @Test
+    public void get_whenCalledConcurrentlyWithoutCache_thenShareOneLoad() throws Exception {
+        TaskService uncachedTaskService = new TaskService(taskRepository, new Mapper(), new NoOpTaskCache(new RecentWrites(Duration.ofSeconds(5))),
+                Validation.buildDefaultValidatorFactory().getValidator(), new TaskStats(taskRepository), taskEventStream, changeStampGenerator, taskSearchIndex,
+                new RecentWrites(Duration.ofSeconds(5)));
+        Task task = getFullDataTask();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        given(taskRepository.findById(task.getId())).willAnswer(invocation -> {
+            loading.countDown();
+            loaded.await();
+
+            return Optional.of(task);
+        });
+
+        List<TaskDto> tasksDto = concurrently(8, () -> uncachedTaskService.get(task.getId()), loading, loaded);
+
+        verify(taskRepository, times(1)).findById(task.getId());
+        Assertions.assertThat(tasksDto).hasSize(8).containsOnly(tasksDto.get(0));
+    }
+
+    @Test
+    public void get_whenTaskIsAddedWhileItsMissIsLoading_thenDoNotRememberTheMiss() throws Exception {
+        CaffeineTaskCache taskCache = new CaffeineTaskCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        TaskDto taskDto = new Mapper().convertToDto(getFullDataTask());
+        Thread adding = new Thread(() -> taskCache.put(taskDto));
+
+        Assertions.assertThatThrownBy(() -> taskCache.get(taskDto.getId(), id -> {
+            adding.start();
+            // blocked on the entry being loaded, past clearing the miss
+            while (adding.getState() != Thread.State.BLOCKED) {
+                Thread.yield();
+            }
+
+            throw new TaskNotFoundException();
+        })).isInstanceOf(TaskNotFoundException.class);
+        adding.join();
+
+        Assertions.assertThat(taskCache.get(taskDto.getId(), id -> null)).isSameAs(taskDto);
+    }
+
+    @Test
+    public void get_whenTaskIsWrittenDuringALoadWithoutCache_thenLaterReadsLoadAgain() throws Exception {
+        NoOpTaskCache taskCache = new NoOpTaskCache(new RecentWrites(Duration.ofSeconds(5)));
+        TaskDto before = new Mapper().convertToDto(getFullDataTask());
+        TaskDto after = new Mapper().convertToDto(getFullDataTask());
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<TaskDto> early = executor.submit(() -> taskCache.get(before.getId(), id -> {
+                loading.countDown();
+                try {
+                    loaded.await();
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return before;
+            }));
+            loading.await();
+            taskCache.put(after);
+            TaskDto late = taskCache.get(after.getId(), id -> after);
+            loaded.countDown();
+
+            Assertions.assertThat(late).isSameAs(after);
+            Assertions.assertThat(early.get(10, TimeUnit.SECONDS)).isSameAs(before);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void get_whenFieldsAreAskedConcurrently_thenShareOneLoadAndItsFailure() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        given(taskRepository.findFieldsById(eq(1L), any())).willAnswer(invocation -> {
+            loading.countDown();
+            loaded.await();
+
+            return Optional.empty();
+        });
+        given(taskRepository.findArchivedFieldsById(eq(1L), any())).willReturn(Optional.empty());
+
+        List<TaskDto> tasksDto = concurrently(8, () -> {
+            try {
+                return taskService.get(1L, Collections.singleton("name"));
+            } catch (TaskNotFoundException taskNotFoundException) {
+                return null;
+            }
+        }, loading, loaded);
+
+        verify(taskRepository, times(1)).findFieldsById(eq(1L), any());
+        Assertions.assertThat(tasksDto).hasSize(8).containsOnlyNulls();
+    }
+
     @Test
     public void add() {
         Task task = getFullDataTask();
@@ -86,47 +323,507 @@ public class TaskServiceTest {
         Assertions.assertThat(taskDto.getStatus()).isEqualTo(task.getStatus());
     }
 
+    @Test
+    public void add_thenCacheNewTask() {
+        Task task = getFullDataTask();
+        given(taskRepository.save(any(Task.class))).willReturn(task);
+
+        taskService.add(getFullDataTaskDto());
+        TaskDto taskDto = taskService.get(task.getId());
+
+        verify(taskRepository, never()).findById(anyLong());
+        Assertions.assertThat(taskDto.getName()).isEqualTo(task.getName());
+    }
+
     @Test
     public void update_whenChanges_thenReturnNewDto() {
         Task persistedTask = getFullDataTask();
-        given(taskRepository.findById(anyLong())).willReturn(Optional.of(persistedTask));
+        given(taskRepository.updateReturningPrevious(eq(persistedTask.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(persistedTask)));
 
-        Task updatedTask = getFullDataTask();
-        updatedTask.setName("Updated name");
-        updatedTask.setDescription("Updated description");
-        updatedTask.setStatus(Status.DONE);
+        TaskDto requestTaskDto = new TaskDto();
+        requestTaskDto.setName("Updated name");
+        requestTaskDto.setDescription("Updated description");
+        requestTaskDto.setStatus(Status.DONE);
+
+        TaskDto taskDto = taskService.update(persistedTask.getId(), requestTaskDto);
 
-        given(taskRepository.save(any(Task.class))).willReturn(updatedTask);
+        verify(taskRepository, times(1)).updateReturningPrevious(persistedTask.getId(), "Updated name", "Updated description", Status.DONE, null, 0L);
+        verify(taskRepository, never()).findById(anyLong());
+        verify(taskRepository, never()).save(any());
+        Assertions.assertThat(taskDto.getId()).isEqualTo(persistedTask.getId());
+        Assertions.assertThat(taskDto.getName()).isEqualTo(requestTaskDto.getName());
+        Assertions.assertThat(taskDto.getDescription()).isEqualTo(requestTaskDto.getDescription());
+        Assertions.assertThat(taskDto.getStatus()).isEqualTo(requestTaskDto.getStatus());
+    }
+
+    @Test
+    public void update_whenPartialChanges_thenKeepOtherFields() {
+        Task persistedTask = getFullDataTask();
+        given(taskRepository.updateReturningPrevious(eq(persistedTask.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(persistedTask)));
 
         TaskDto requestTaskDto = new TaskDto();
-        requestTaskDto.setName(updatedTask.getName());
-        requestTaskDto.setDescription(updatedTask.getDescription());
-        requestTaskDto.setStatus(updatedTask.getStatus());
+        requestTaskDto.setName("");
+        requestTaskDto.setStatus(Status.DONE);
 
         TaskDto taskDto = taskService.update(persistedTask.getId(), requestTaskDto);
 
+        Assertions.assertThat(taskDto.getId()).isEqualTo(persistedTask.getId());
+        Assertions.assertThat(taskDto.getName()).isEqualTo("My new task");
+        Assertions.assertThat(taskDto.getDescription()).isEqualTo("Task's description");
+        Assertions.assertThat(taskDto.getStatus()).isEqualTo(Status.DONE);
+    }
+
+    @Test(expected = TaskNotFoundException.class)
+    public void update_whenDoesNotExist() {
+        given(taskRepository.updateReturningPrevious(anyLong(), any(), any(), any(), any(), anyLong())).willReturn(Optional.empty());
+
+        taskService.update(1L, new TaskDto());
+    }
+
+    @Test(expected = TaskArchivedException.class)
+    public void update_whenTaskIsArchived_thenThrow() {
+        given(taskRepository.updateReturningPrevious(anyLong(), any(), any(), any(), any(), anyLong())).willReturn(Optional.empty());
+        given(taskRepository.findArchivedIds(Collections.singletonList(1L))).willReturn(Collections.singletonList(1L));
+
+        taskService.update(1L, new TaskDto());
+    }
+
+    @Test
+    public void update_thenIncrementVersion() {
+        Task persistedTask = getFullDataTask();
+        given(taskRepository.updateReturningPrevious(persistedTask.getId(), null, null, Status.DONE, 0L, 0L)).willReturn(Optional.of(snapshot(persistedTask)));
+
+        TaskDto requestTaskDto = new TaskDto();
+        requestTaskDto.setStatus(Status.DONE);
+
+        TaskDto taskDto = taskService.update(persistedTask.getId(), requestTaskDto, 0L);
+
+        Assertions.assertThat(taskDto.getVersion()).isEqualTo(1L);
+    }
+
+    @Test(expected = TaskVersionMismatchException.class)
+    public void update_whenVersionDoesNotMatch_thenThrow() {
+        given(taskRepository.updateReturningPrevious(anyLong(), any(), any(), any(), any(), anyLong())).willReturn(Optional.empty());
+        given(taskRepository.existsById(1L)).willReturn(true);
+
+        taskService.update(1L, new TaskDto(), 3L);
+    }
+
+    @Test(expected = TaskVersionMismatchException.class)
+    public void delete_whenVersionDoesNotMatch_thenThrow() {
+        given(taskRepository.deleteReturningPrevious(1L, 3L, 0L)).willReturn(Optional.empty());
+        given(taskRepository.existsById(1L)).willReturn(true);
+
+        taskService.delete(1L, 3L);
+    }
+
+    @Test
+    public void claim_whenRacesAreLost_thenLeaseFurtherCandidatesUpToLimit() {
+        given(taskRepository.findClaimable(eq(Status.TODO), any(), any())).willReturn(Arrays.asList(1L, 2L, 3L, 4L));
+        given(taskRepository.lease(any(), any(), any(), any())).willReturn(1);
+        given(taskRepository.findByLeaseIdOrderById(any())).willReturn(getTasks(1L, 3L));
+
+        TaskClaimDto claim = taskService.claim(2, Duration.ofSeconds(30));
+
+        verify(taskRepository, times(2)).lease(any(), eq(claim.getLeaseId()), any(), eq(claim.getExpiresAt()));
+        verify(taskRepository, times(1)).lease(argThat(ids -> ids.size() == 1), any(), any(), any());
+        Assertions.assertThat(claim.getTasks()).extracting(TaskDto::getId).containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void claim_whenNothingIsClaimable_thenReturnEmptyLease() {
+        given(taskRepository.findClaimable(eq(Status.TODO), any(), any())).willReturn(Collections.emptyList());
+
+        TaskClaimDto claim = taskService.claim(10, Duration.ofSeconds(30));
+
+        verify(taskRepository, never()).lease(any(), any(), any(), any());
+        verify(taskRepository, never()).findByLeaseIdOrderById(any());
+        Assertions.assertThat(claim.getTasks()).isEmpty();
+    }
+
+    @Test
+    public void ack_thenMarkTaskDoneAndCountIt() {
+        Task persistedTask = getFullDataTask();
+        given(taskRepository.ackReturningPrevious(eq(persistedTask.getId()), eq("lease"), any(), anyLong())).willReturn(Optional.of(snapshot(persistedTask)));
+
+        TaskDto taskDto = taskService.ack(persistedTask.getId(), "lease");
+
+        Assertions.assertThat(taskDto.getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(taskDto.getVersion()).isEqualTo(1L);
+        Assertions.assertThat(taskService.getStats()).containsEntry(Status.DONE, 1L);
+        verify(taskEventStream, times(1)).publish(TaskEvent.Type.UPDATED, taskDto);
+    }
+
+    @Test(expected = TaskLeaseLostException.class)
+    public void ack_whenLeaseIsLost_thenThrow() {
+        given(taskRepository.ackReturningPrevious(eq(1L), eq("lease"), any(), anyLong())).willReturn(Optional.empty());
+        given(taskRepository.existsById(1L)).willReturn(true);
+
+        taskService.ack(1L, "lease");
+    }
+
+    @Test(expected = TaskNotFoundException.class)
+    public void nack_whenDoesNotExist_thenThrow() {
+        given(taskRepository.release(eq(1L), eq("lease"), any())).willReturn(0);
+
+        taskService.nack(1L, "lease");
+    }
+
+    @Test
+    public void update_thenRefreshCachedTask() {
+        Task persistedTask = getFullDataTask();
+        given(taskRepository.findById(persistedTask.getId())).willReturn(Optional.of(persistedTask));
+        given(taskRepository.updateReturningPrevious(eq(persistedTask.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(persistedTask)));
+        taskService.get(persistedTask.getId());
+
+        TaskDto requestTaskDto = new TaskDto();
+        requestTaskDto.setStatus(Status.DONE);
+        taskService.update(persistedTask.getId(), requestTaskDto);
+
+        Assertions.assertThat(taskService.get(persistedTask.getId()).getStatus()).isEqualTo(Status.DONE);
         verify(taskRepository, times(1)).findById(persistedTask.getId());
-        verify(taskRepository, times(1)).save(persistedTask);
-        Assertions.assertThat(taskDto.getName()).isEqualTo(updatedTask.getName());
-        Assertions.assertThat(taskDto.getDescription()).isEqualTo(updatedTask.getDescription());
-        Assertions.assertThat(taskDto.getStatus()).isEqualTo(updatedTask.getStatus());
     }
 
     @Test
     public void delete_whenExist() {
         Task task = getFullDataTask();
-        given(taskRepository.findById(anyLong())).willReturn(Optional.of(task));
+        given(taskRepository.deleteReturningPrevious(anyLong(), any(), anyLong())).willReturn(Optional.of(snapshot(task)));
 
-        taskService.delete(anyLong());
+        taskService.delete(1L);
 
-        verify(taskRepository, times(1)).deleteById(anyLong());
+        verify(taskRepository, times(1)).deleteReturningPrevious(anyLong(), any(), anyLong());
+        verify(taskRepository, never()).findById(anyLong());
+    }
+
+    @Test(expected = TaskNotFoundException.class)
+    public void delete_thenEvictCachedTask() {
+        Task task = getFullDataTask();
+        given(taskRepository.findById(task.getId())).willReturn(Optional.of(task)).willReturn(Optional.empty());
+        given(taskRepository.deleteReturningPrevious(task.getId(), null, 0L)).willReturn(Optional.of(snapshot(task)));
+        taskService.get(task.getId());
+
+        taskService.delete(task.getId());
+
+        taskService.get(task.getId());
     }
 
     @Test(expected = TaskNotFoundException.class)
     public void delete_whenDoesNotExist() {
-        given(taskRepository.findById(anyLong())).willReturn(Optional.empty());
+        given(taskRepository.deleteReturningPrevious(anyLong(), any(), anyLong())).willReturn(Optional.empty());
+
+        taskService.delete(1L);
+    }
+
+    @Test
+    public void addAll_whenSomeInvalid_thenSaveOnlyValidTasks() {
+        Task task = getFullDataTask();
+        given(taskRepository.saveAll(any())).willReturn(Collections.singletonList(task));
+
+        List<TaskBatchResultDto> results = taskService.addAll(Arrays.asList(new TaskDto(), getFullDataTaskDto()));
+
+        verify(taskRepository, times(1)).saveAll(any());
+        Assertions.assertThat(results).hasSize(2);
+        Assertions.assertThat(results.get(0).getStatus()).isEqualTo(400);
+        Assertions.assertThat(results.get(0).getErrors()).hasSize(2);
+        Assertions.assertThat(results.get(1).getStatus()).isEqualTo(201);
+        Assertions.assertThat(results.get(1).getId()).isEqualTo(task.getId());
+        Assertions.assertThat(results.get(1).getTask().getStatus()).isEqualTo(Status.TODO);
+    }
+
+    @Test(expected = BatchSizeExceededException.class)
+    public void addAll_whenBatchTooLarge_thenThrow() {
+        taskService.addAll(Collections.nCopies(TaskService.MAX_BATCH_SIZE + 1, getFullDataTaskDto()));
+    }
+
+    @Test
+    public void updateAll_thenReportEveryItem() {
+        Task task = getFullDataTask();
+        given(taskRepository.findAllById(Arrays.asList(1L, 2L))).willReturn(Collections.singletonList(task));
+        given(taskRepository.saveAll(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        TaskDto done = new TaskDto();
+        done.setId(1L);
+        done.setStatus(Status.DONE);
+        TaskDto missing = new TaskDto();
+        missing.setId(2L);
+
+        List<TaskBatchResultDto> results = taskService.updateAll(Arrays.asList(done, missing, new TaskDto()));
+
+        Assertions.assertThat(results.get(0).getStatus()).isEqualTo(200);
+        Assertions.assertThat(results.get(0).getTask().getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(results.get(0).getTask().getName()).isEqualTo(task.getName());
+        Assertions.assertThat(results.get(1).getStatus()).isEqualTo(404);
+        Assertions.assertThat(results.get(2).getStatus()).isEqualTo(400);
+        Assertions.assertThat(results.get(2).getErrors()).hasSize(1);
+    }
+
+    @Test
+    public void updateStatuses_thenLeaveOutMissingTasksAndAnnounceOnlyChangedOnes() {
+        Map<Long, Status> statuses = new LinkedHashMap<Long, Status>();
+        statuses.put(1L, Status.DONE);
+        statuses.put(2L, Status.TODO);
+        statuses.put(3L, Status.DONE);
+        given(taskRepository.findAllForUpdate(statuses.keySet())).willReturn(getTasks(1L, 2L));
+        given(taskRepository.saveAll(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        Map<Long, TaskDto> updated = taskService.updateStatuses(statuses);
+
+        Assertions.assertThat(updated).containsOnlyKeys(1L, 2L);
+        Assertions.assertThat(updated.get(1L).getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(updated.get(2L).getStatus()).isEqualTo(Status.TODO);
+        Assertions.assertThat(taskService.getStats()).containsEntry(Status.DONE, 1L);
+        verify(taskRepository, times(1)).flush();
+        verify(taskEventStream, times(1)).publish(eq(TaskEvent.Type.UPDATED), argThat(taskDto -> taskDto.getId().equals(1L)));
+    }
+
+    @Test
+    public void getStats_shouldFollowAddUpdateAndDelete() {
+        Task task = getFullDataTask();
+        given(taskRepository.save(any(Task.class))).willReturn(task);
+        given(taskRepository.updateReturningPrevious(eq(task.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(task)));
+        taskService.add(getFullDataTaskDto());
+        taskService.add(getFullDataTaskDto());
+
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(Status.DONE);
+        taskService.update(task.getId(), taskDto);
+
+        task.setStatus(Status.DONE);
+        given(taskRepository.deleteReturningPrevious(task.getId(), null, 0L)).willReturn(Optional.of(snapshot(task)));
+        taskService.delete(task.getId());
+
+        Assertions.assertThat(taskService.getStats()).containsEntry(Status.TODO, 1L).containsEntry(Status.DONE, 0L);
+        verify(taskRepository, never()).countByStatus();
+    }
+
+    @Test
+    public void addUpdateDelete_shouldPublishEvents() {
+        Task task = getFullDataTask();
+        given(taskRepository.save(any(Task.class))).willReturn(task);
+        given(taskRepository.updateReturningPrevious(eq(task.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(task)));
+        given(taskRepository.deleteReturningPrevious(task.getId(), null, 0L)).willReturn(Optional.of(snapshot(task)));
+
+        taskService.add(getFullDataTaskDto());
+        taskService.update(task.getId(), new TaskDto());
+        taskService.delete(task.getId());
+
+        verify(taskEventStream, times(1)).publish(eq(TaskEvent.Type.CREATED), any(TaskDto.class));
+        verify(taskEventStream, times(1)).publish(eq(TaskEvent.Type.UPDATED), any(TaskDto.class));
+        verify(taskEventStream, times(1)).publish(eq(TaskEvent.Type.DELETED), any(TaskDto.class));
+    }
+
+    @Test
+    public void reconcileStats_shouldCorrectDrift() {
+        TaskStats taskStats = new TaskStats(taskRepository);
+        taskStats.added(Status.TODO);
+        given(taskRepository.countByStatus()).willReturn(Collections.singletonList(statusCount(Status.DONE, 7L)));
+
+        taskStats.reconcile();
+
+        Assertions.assertThat(taskStats.snapshot()).containsEntry(Status.TODO, 0L).containsEntry(Status.DONE, 7L);
+    }
+
+    @Test
+    public void reconcileStats_whenTaskIsAddedDuringTheCount_shouldKeepIt() {
+        TaskStats taskStats = new TaskStats(taskRepository);
+        taskStats.added(Status.TODO);
+        given(taskRepository.countByStatus()).willAnswer(invocation -> {
+            taskStats.added(Status.TODO);
+
+            return Collections.singletonList(statusCount(Status.TODO, 3L));
+        });
+
+        taskStats.reconcile();
+
+        Assertions.assertThat(taskStats.snapshot()).containsEntry(Status.TODO, 4L);
+    }
 
-        taskService.delete(anyLong());
+    @Test
+    public void reconcileStats_shouldCountArchivedTasks() {
+        TaskStats taskStats = new TaskStats(taskRepository);
+        given(taskRepository.countByStatus()).willReturn(Collections.singletonList(statusCount(Status.DONE, 7L)));
+        given(taskRepository.countArchivedByStatus()).willReturn(Collections.singletonList(statusCount(Status.DONE, 3L)));
+
+        taskStats.reconcile();
+
+        Assertions.assertThat(taskStats.snapshot()).containsEntry(Status.DONE, 10L);
+    }
+
+    @Test
+    public void deleteAll_thenDeleteFoundTasks() {
+        Task task = getFullDataTask();
+        given(taskRepository.findAllById(Arrays.asList(1L, 2L))).willReturn(Collections.singletonList(task));
+
+        List<TaskBatchResultDto> results = taskService.deleteAll(Arrays.asList(1L, 2L));
+
+        verify(taskRepository, times(1)).saveAll(Collections.singletonList(task));
+        Assertions.assertThat(task.isDeleted()).isTrue();
+        Assertions.assertThat(results.get(0).getStatus()).isEqualTo(204);
+        Assertions.assertThat(results.get(1).getStatus()).isEqualTo(404);
+    }
+
+    @Test
+    public void search_shouldRankNameMatchesFirstAndMatchPrefixes() {
+        taskSearchIndex.index(1L, 0L, "Buy milk", "Remember the groceries");
+        taskSearchIndex.index(2L, 0L, "Call mom", "Ask about the groceries list");
+        taskSearchIndex.index(3L, 0L, "Groceries", "Milk, bread and eggs");
+        given(taskRepository.findAllById(Arrays.asList(3L, 1L, 2L))).willReturn(getTasks(1L, 2L, 3L));
+
+        TaskSearchResultDto result = taskService.search("grocer", 0, 10);
+
+        Assertions.assertThat(result.getTasks()).extracting(TaskDto::getId).containsExactly(3L, 1L, 2L);
+        Assertions.assertThat(result.getNextOffset()).isNull();
+    }
+
+    @Test
+    public void search_whenIndexedTaskIsGone_thenFillPageFromFurtherHits() {
+        taskSearchIndex.index(1L, 0L, "Buy milk", null);
+        taskSearchIndex.index(2L, 0L, "Buy bread", null);
+        taskSearchIndex.index(3L, 0L, "Buy eggs", null);
+        taskSearchIndex.index(4L, 0L, "Buy butter", null);
+        given(taskRepository.findAllById(Arrays.asList(1L, 2L))).willReturn(getTasks(1L));
+        given(taskRepository.findAllById(Collections.singletonList(3L))).willReturn(getTasks(3L));
+
+        TaskSearchResultDto result = taskService.search("buy", 0, 2);
+
+        Assertions.assertThat(result.getTasks()).extracting(TaskDto::getId).containsExactly(1L, 3L);
+        Assertions.assertThat(result.getNextOffset()).isEqualTo(3);
+    }
+
+    @Test
+    public void search_whenIndexedTaskIsArchived_thenReadItFromTheArchive() {
+        TaskTuple tuple = new TaskTuple();
+        tuple.add("id", 2L);
+        tuple.add("name", "Buy bread");
+        taskSearchIndex.index(1L, 0L, "Buy milk", null);
+        taskSearchIndex.index(2L, 0L, "Buy bread", null);
+        given(taskRepository.findAllById(Arrays.asList(1L, 2L))).willReturn(getTasks(1L));
+        given(taskRepository.findArchivedFieldsById(2L, TaskFields.ALL_FIELDS)).willReturn(Optional.of(tuple));
+
+        TaskSearchResultDto result = taskService.search("buy", 0, 2);
+
+        Assertions.assertThat(result.getTasks()).extracting(TaskDto::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void search_shouldRequireEveryWordAndPage() {
+        taskSearchIndex.index(1L, 0L, "Buy milk", "Remember the groceries");
+        taskSearchIndex.index(2L, 0L, "Buy bread", "Remember the groceries");
+        taskSearchIndex.index(3L, 0L, "Sell milk", null);
+
+        Assertions.assertThat(taskSearchIndex.search("BUY milk", 0, 10)).containsExactly(1L);
+        Assertions.assertThat(taskSearchIndex.search("buy", 0, 1)).containsExactly(1L);
+        Assertions.assertThat(taskSearchIndex.search("buy", 1, 1)).containsExactly(2L);
+        Assertions.assertThat(taskSearchIndex.search("buy", 2, 1)).isEmpty();
+    }
+
+    @Test
+    public void search_whenTaskUpdatedOrDeleted_thenIndexFollows() {
+        Task persistedTask = getFullDataTask();
+        taskSearchIndex.index(persistedTask.getId(), 0L, persistedTask.getName(), persistedTask.getDescription());
+        given(taskRepository.updateReturningPrevious(eq(persistedTask.getId()), any(), any(), any(), any(), anyLong())).willReturn(Optional.of(snapshot(persistedTask)));
+        given(taskRepository.deleteReturningPrevious(persistedTask.getId(), null, 0L)).willReturn(Optional.of(snapshot(persistedTask)));
+
+        TaskDto taskDto = new TaskDto();
+        taskDto.setName("Renamed");
+        taskService.update(persistedTask.getId(), taskDto);
+
+        Assertions.assertThat(taskSearchIndex.search("new", 0, 10)).isEmpty();
+        Assertions.assertThat(taskSearchIndex.search("renamed", 0, 10)).containsExactly(persistedTask.getId());
+
+        taskService.delete(persistedTask.getId());
+
+        Assertions.assertThat(taskSearchIndex.search("renamed", 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void search_whenRebuildReadsOlderVersion_thenKeepNewerEntry() {
+        taskSearchIndex.index(1L, 2L, "Newer name", null);
+        taskSearchIndex.index(1L, 1L, "Older name", null);
+
+        Assertions.assertThat(taskSearchIndex.search("older", 0, 10)).isEmpty();
+        Assertions.assertThat(taskSearchIndex.search("newer", 0, 10)).containsExactly(1L);
+    }
+
+    @Test
+    public void getChanges_shouldSplitTombstonesAndAdvanceWatermark() {
+        Task changed = getFullDataTask();
+        changed.setChangeStamp(11L);
+        Task deleted = getFullDataTask();
+        deleted.setId(2L);
+        deleted.setChangeStamp(12L);
+        deleted.setDeleted(true);
+        given(taskRepository.findChangedSince(10L, 100)).willReturn(Arrays.asList(changed, deleted));
+        given(changeStampGenerator.committedUpTo()).willReturn(12L);
+
+        TaskChangesDto changes = taskService.getChanges(10L, 100);
+
+        Assertions.assertThat(changes.getChanged()).extracting(TaskDto::getId).containsExactly(1L);
+        Assertions.assertThat(changes.getDeleted()).containsExactly(2L);
+        Assertions.assertThat(changes.getWatermark()).isEqualTo(12L);
+    }
+
+    @Test
+    public void getChanges_whenOlderStampIsStillInFlight_thenStopBelowIt() {
+        Task committed = getFullDataTask();
+        committed.setChangeStamp(11L);
+        Task overtaking = getFullDataTask();
+        overtaking.setId(2L);
+        overtaking.setChangeStamp(13L);
+        given(taskRepository.findChangedSince(10L, 100)).willReturn(Arrays.asList(committed, overtaking));
+        given(changeStampGenerator.committedUpTo()).willReturn(11L);
+
+        TaskChangesDto changes = taskService.getChanges(10L, 100);
+
+        Assertions.assertThat(changes.getChanged()).extracting(TaskDto::getId).containsExactly(1L);
+        Assertions.assertThat(changes.getWatermark()).isEqualTo(11L);
+    }
+
+    @Test
+    public void getChanges_whenNothingChanged_thenKeepWatermark() {
+        given(taskRepository.findChangedSince(10L, 100)).willReturn(Collections.emptyList());
+        given(changeStampGenerator.committedUpTo()).willReturn(10L);
+
+        TaskChangesDto changes = taskService.getChanges(10L, 100);
+
+        Assertions.assertThat(changes.getChanged()).isEmpty();
+        Assertions.assertThat(changes.getWatermark()).isEqualTo(10L);
+    }
+
+    // the first caller blocks inside the load until every other caller is parked waiting for it
+    private static List<TaskDto> concurrently(int callers, Callable<TaskDto> call, CountDownLatch loading,
+                                              CountDownLatch loaded) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        List<Future<TaskDto>> futures = new ArrayList<Future<TaskDto>>();
+
+        try {
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> {
+                    threads.add(Thread.currentThread());
+
+                    return call.call();
+                }));
+
+                if (i == 0) {
+                    loading.await();
+                }
+            }
+
+            while (threads.size() < callers || threads.stream().filter(thread -> thread.getState() == Thread.State.WAITING).count() < callers) {
+                Thread.sleep(1);
+            }
+            loaded.countDown();
+
+            List<TaskDto> results = new ArrayList<TaskDto>();
+            for (Future<TaskDto> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     private Task getFullDataTask() {
@@ -135,9 +832,22 @@ public class TaskServiceTest {
         task.setDescription("Task's description");
         task.setStatus(Status.TODO);
         task.setId(1L);
+        task.setVersion(0L);
         return task;
     }
 
+    private TaskSnapshot snapshot(Task task) {
+        return new SpelAwareProxyProjectionFactory().createProjection(TaskSnapshot.class, task);
+    }
+
+    private StatusCount statusCount(Status status, long count) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("status", status);
+        values.put("count", count);
+
+        return new SpelAwareProxyProjectionFactory().createProjection(StatusCount.class, values);
+    }
+
     private TaskDto getFullDataTaskDto() {
         TaskDto taskDto = new TaskDto();
         taskDto.setName("My new task");
@@ -153,4 +863,15 @@ public class TaskServiceTest {
 
         return tasks;
     }
+
+    private List<Task> getTasks(Long... ids) {
+        List<Task> tasks = new ArrayList<Task>();
+        for (Long id : ids) {
+            Task task = getFullDataTask();
+            task.setId(id);
+            tasks.add(task);
+        }
+
+        return tasks;
+    }
 }
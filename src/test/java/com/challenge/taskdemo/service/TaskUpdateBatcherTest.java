@@ -0,0 +1,187 @@
+package com.challenge.taskdemo.service;
+
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.exception.TaskArchivedException;
+import com.challenge.taskdemo.exception.TaskNotFoundException;
+import com.challenge.taskdemo.util.Status;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskUpdateBatcherTest {
+
+    @Mock
+    private TaskService taskService;
+
+    private TaskUpdateBatcher taskUpdateBatcher;
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (taskUpdateBatcher != null) {
+            taskUpdateBatcher.stop();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void update_WhenDisabled_ShouldDelegateToService() {
+        taskUpdateBatcher = batcher(false, 10, 10);
+        TaskDto taskDto = statusChange(Status.DONE);
+        given(taskService.update(1L, taskDto, null)).willReturn(taskDto);
+
+        Assertions.assertThat(taskUpdateBatcher.update(1L, taskDto, null)).isSameAs(taskDto);
+        verify(taskService, never()).updateStatuses(any());
+    }
+
+    @Test
+    public void update_WhenConditionalOrChangingText_ShouldBypassQueue() {
+        taskUpdateBatcher = batcher(true, 10, 10);
+        TaskDto conditional = statusChange(Status.DONE);
+        TaskDto renamed = statusChange(Status.DONE);
+        renamed.setName("Renamed");
+
+        taskUpdateBatcher.update(1L, conditional, 3L);
+        taskUpdateBatcher.update(1L, renamed, null);
+
+        verify(taskService, times(1)).update(1L, conditional, 3L);
+        verify(taskService, times(1)).update(1L, renamed, null);
+        verify(taskService, never()).updateStatuses(any());
+    }
+
+    @Test
+    public void update_WhenCalledConcurrently_ShouldCommitOneMergedBatch() throws Exception {
+        taskUpdateBatcher = batcher(true, 100, 8);
+        given(taskService.updateStatuses(any())).willAnswer(invocation -> updated(invocation.getArgument(0)));
+
+        List<Future<TaskDto>> results = new ArrayList<Future<TaskDto>>();
+        for (int i = 0; i < 8; i++) {
+            long id = i % 4 + 1;
+            results.add(executor.submit(() -> taskUpdateBatcher.update(id, statusChange(Status.DONE), null)));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertThat(results.get(i).get(5, TimeUnit.SECONDS).getId()).isEqualTo(i % 4 + 1L);
+        }
+        verify(taskService, times(1)).updateStatuses(argThat(statuses -> statuses.keySet().equals(new HashSet<Long>(Arrays.asList(1L, 2L, 3L, 4L)))));
+        verify(taskService, never()).update(any(), any(), any());
+    }
+
+    @Test
+    public void update_WhenBatchFails_ShouldRetryEachTaskAlone() throws Exception {
+        taskUpdateBatcher = batcher(true, 100, 3);
+        given(taskService.updateStatuses(argThat(statuses -> statuses.size() > 1))).willThrow(new DataIntegrityViolationException("batch"));
+        given(taskService.updateStatuses(Collections.singletonMap(1L, Status.DONE))).willReturn(updated(Collections.singletonMap(1L, Status.DONE)));
+        given(taskService.updateStatuses(Collections.singletonMap(2L, Status.DONE))).willReturn(Collections.emptyMap());
+        given(taskService.updateStatuses(Collections.singletonMap(3L, Status.DONE))).willThrow(new DataIntegrityViolationException("row"));
+        given(taskService.notFound(2L)).willReturn(new TaskNotFoundException());
+
+        Future<TaskDto> updated = executor.submit(() -> taskUpdateBatcher.update(1L, statusChange(Status.DONE), null));
+        Future<TaskDto> missing = executor.submit(() -> taskUpdateBatcher.update(2L, statusChange(Status.DONE), null));
+        Future<TaskDto> failed = executor.submit(() -> taskUpdateBatcher.update(3L, statusChange(Status.DONE), null));
+
+        Assertions.assertThat(updated.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThatThrownBy(() -> missing.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(TaskNotFoundException.class);
+        Assertions.assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    public void update_WhenTaskWasArchived_ShouldFailAsADirectUpdateWould() throws Exception {
+        taskUpdateBatcher = batcher(true, 100, 1);
+        given(taskService.updateStatuses(Collections.singletonMap(1L, Status.DONE))).willReturn(Collections.emptyMap());
+        given(taskService.notFound(1L)).willReturn(new TaskArchivedException());
+
+        Future<TaskDto> archived = executor.submit(() -> taskUpdateBatcher.update(1L, statusChange(Status.DONE), null));
+
+        Assertions.assertThatThrownBy(() -> archived.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(TaskArchivedException.class);
+    }
+
+    @Test
+    public void update_WhenQueueIsFull_ShouldRejectAndFlushQueuedOnStop() throws Exception {
+        taskUpdateBatcher = batcher(true, 1, 2);
+        given(taskService.updateStatuses(any())).willAnswer(invocation -> updated(invocation.getArgument(0)));
+
+        Thread queued = new Thread(() -> taskUpdateBatcher.update(1L, statusChange(Status.DONE), null));
+        queued.start();
+        while (queued.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        Assertions.assertThatThrownBy(() -> taskUpdateBatcher.update(2L, statusChange(Status.DONE), null)).isInstanceOf(RejectedExecutionException.class);
+
+        taskUpdateBatcher.stop();
+        queued.join(5000);
+        Assertions.assertThat(queued.isAlive()).isFalse();
+        verify(taskService, times(1)).updateStatuses(Collections.singletonMap(1L, Status.DONE));
+    }
+
+    @Test
+    public void update_WhenBatchDoesNotCommitInTime_ShouldGiveUpWaiting() throws Exception {
+        taskUpdateBatcher = batcher(true, 100, 1, Duration.ofMillis(100));
+        CountDownLatch commit = new CountDownLatch(1);
+        given(taskService.updateStatuses(any())).willAnswer(invocation -> {
+            commit.await();
+
+            return updated(invocation.getArgument(0));
+        });
+
+        try {
+            Assertions.assertThatThrownBy(() -> taskUpdateBatcher.update(1L, statusChange(Status.DONE), null)).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            commit.countDown();
+        }
+    }
+
+    private TaskUpdateBatcher batcher(boolean enabled, int capacity, int batchSize) {
+        return batcher(enabled, capacity, batchSize, Duration.ofSeconds(30));
+    }
+
+    private TaskUpdateBatcher batcher(boolean enabled, int capacity, int batchSize, Duration awaitTimeout) {
+        // batches only leave early in these tests when they are full or the batcher stops
+        TaskUpdateBatcher batcher = new TaskUpdateBatcher(taskService, enabled, capacity, batchSize, Duration.ofMinutes(1), awaitTimeout);
+        batcher.start();
+
+        return batcher;
+    }
+
+    private static Map<Long, TaskDto> updated(Map<Long, Status> statuses) {
+        Map<Long, TaskDto> updated = new HashMap<Long, TaskDto>();
+
+        for (Map.Entry<Long, Status> entry : statuses.entrySet()) {
+            TaskDto taskDto = statusChange(entry.getValue());
+            taskDto.setId(entry.getKey());
+            updated.put(entry.getKey(), taskDto);
+        }
+
+        return updated;
+    }
+
+    private static TaskDto statusChange(Status status) {
+        TaskDto taskDto = new TaskDto();
+        taskDto.setStatus(status);
+
+        return taskDto;
+    }
+}
@@ -0,0 +1,316 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.repository.TaskSnapshot;
+import com.challenge.taskdemo.util.Status;
+import org.assertj.core.api.Assertions;
+import org.assertj.core.groups.Tuple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogTaskRepositoryTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private TaskLog taskLog;
+    private ChangeStampGenerator changeStampGenerator;
+    private LogTaskRepository taskRepository;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath();
+        open();
+    }
+
+    @After
+    public void tearDown() {
+        taskLog.close();
+    }
+
+    @Test
+    public void save_ShouldAssignIdVersionAndChangeStamp() {
+        Task task = taskRepository.save(getTask("Write report"));
+
+        Optional<Task> found = taskRepository.findById(task.getId());
+
+        Assertions.assertThat(task.getId()).isEqualTo(1L);
+        Assertions.assertThat(task.getVersion()).isEqualTo(0L);
+        Assertions.assertThat(task.getCreatedAt()).isNotNull();
+        Assertions.assertThat(found).isPresent();
+        Assertions.assertThat(found.get().getName()).isEqualTo("Write report");
+        Assertions.assertThat(found.get().getChangeStamp()).isEqualTo(task.getChangeStamp());
+    }
+
+    @Test(expected = ObjectOptimisticLockingFailureException.class)
+    public void save_WhenVersionIsStale_ShouldThrowException() {
+        Task task = taskRepository.save(getTask("Write report"));
+        Task stale = taskRepository.findById(task.getId()).get();
+        taskRepository.save(task);
+
+        taskRepository.save(stale);
+    }
+
+    @Test
+    public void saveAll_WhenOneVersionIsStale_ShouldWriteNothing() {
+        List<Task> tasks = saveTasks("First", "Second");
+        Task stale = taskRepository.findById(tasks.get(1).getId()).get();
+        taskRepository.save(tasks.get(1));
+        Task first = taskRepository.findById(tasks.get(0).getId()).get();
+        first.setName("First renamed");
+        stale.setName("Second renamed");
+
+        Assertions.assertThatThrownBy(() -> taskRepository.saveAll(Arrays.asList(first, stale)))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        Assertions.assertThat(taskRepository.findAll()).extracting(Task::getName).containsExactly("First", "Second");
+    }
+
+    @Test(expected = EmptyResultDataAccessException.class)
+    public void deleteById_WhenAlreadyDeleted_ShouldThrowException() {
+        Task task = taskRepository.save(getTask("Write report"));
+        taskRepository.deleteById(task.getId());
+
+        taskRepository.deleteById(task.getId());
+    }
+
+    @Test
+    public void updateReturningPrevious_ShouldKeepBlankFieldsAndBumpVersion() {
+        Task task = taskRepository.save(getTask("Write report"));
+
+        Optional<TaskSnapshot> previous = taskRepository.updateReturningPrevious(task.getId(), "", null, Status.DONE, 0L, changeStampGenerator.next());
+        Optional<TaskSnapshot> conflict = taskRepository.updateReturningPrevious(task.getId(), "Other", null, null, 0L, changeStampGenerator.next());
+
+        Task updated = taskRepository.findById(task.getId()).get();
+        Assertions.assertThat(previous).isPresent();
+        Assertions.assertThat(previous.get().getStatus()).isEqualTo(Status.TODO);
+        Assertions.assertThat(conflict).isEmpty();
+        Assertions.assertThat(updated.getName()).isEqualTo("Write report");
+        Assertions.assertThat(updated.getStatus()).isEqualTo(Status.DONE);
+        Assertions.assertThat(updated.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void deleteReturningPrevious_ShouldHideTaskAndKeepTombstone() {
+        Task task = taskRepository.save(getTask("Write report"));
+        long since = task.getChangeStamp();
+
+        taskRepository.deleteReturningPrevious(task.getId(), null, changeStampGenerator.next());
+
+        List<Task> changed = taskRepository.findChangedSince(since, 10);
+        Assertions.assertThat(taskRepository.findById(task.getId())).isEmpty();
+        Assertions.assertThat(taskRepository.count()).isZero();
+        Assertions.assertThat(changed).hasSize(1);
+        Assertions.assertThat(changed.get(0).isDeleted()).isTrue();
+    }
+
+    @Test
+    public void findChangedSince_ShouldReturnLatestChangeOfEachTaskInStampOrder() {
+        List<Task> tasks = saveTasks("First", "Second", "Third");
+        taskRepository.update(tasks.get(0).getId(), "First again", null, null, null, changeStampGenerator.next());
+
+        List<Task> changed = taskRepository.findChangedSince(tasks.get(0).getChangeStamp(), 10);
+
+        Assertions.assertThat(changed).extracting(Task::getName).containsExactly("Second", "Third", "First again");
+        Assertions.assertThat(taskRepository.findChangedSince(0, 2)).extracting(Task::getName).containsExactly("Second", "Third");
+    }
+
+    @Test
+    public void committedUpTo_WhileAnOlderStampIsUnwritten_ShouldStayBelowIt() {
+        long unwritten = changeStampGenerator.next();
+        Task overtaking = saveTasks("Overtaking").get(0);
+
+        long whileInFlight = changeStampGenerator.committedUpTo();
+        changeStampGenerator.release(unwritten);
+
+        Assertions.assertThat(taskRepository.findChangedSince(0, 10)).extracting(Task::getChangeStamp).containsExactly(overtaking.getChangeStamp());
+        Assertions.assertThat(whileInFlight).isEqualTo(unwritten - 1);
+        Assertions.assertThat(changeStampGenerator.committedUpTo()).isEqualTo(overtaking.getChangeStamp());
+    }
+
+    @Test
+    public void findAll_WhenSortedByNameDescending_ShouldPageWithKeyset() {
+        List<Task> tasks = saveTasks("b", "a", "c", "a");
+        tasks.get(2).setStatus(Status.DONE);
+        taskRepository.save(tasks.get(2));
+
+        TaskQuery query = new TaskQuery();
+        query.setSort("name,desc");
+        query.setLimit(2);
+        List<Task> firstPage = taskRepository.findAll(query);
+        query.setAfter(firstPage.get(1).getId());
+        List<Task> secondPage = taskRepository.findAll(query);
+        query.setAfter(null);
+        query.setStatus(Status.TODO);
+        query.setSort(null);
+        List<Task> todo = taskRepository.findAll(query);
+
+        Assertions.assertThat(firstPage).extracting(Task::getName).containsExactly("c", "b");
+        Assertions.assertThat(secondPage).extracting(Task::getId).containsExactly(4L, 2L);
+        Assertions.assertThat(todo).extracting(Task::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void lease_ShouldSkipTasksLeasedByOthersUntilReleased() {
+        List<Long> ids = saveTasks("First", "Second").stream().map(Task::getId).collect(Collectors.toList());
+        Instant now = Instant.now();
+
+        int leased = taskRepository.lease(ids.subList(0, 1), "lease-1", now, now.plusSeconds(30));
+        List<Long> claimable = taskRepository.findClaimable(Status.TODO, now, PageRequest.of(0, 10));
+        int stolen = taskRepository.lease(ids, "lease-2", now, now.plusSeconds(30));
+        int released = taskRepository.release(ids.get(0), "lease-1", now);
+
+        Assertions.assertThat(leased).isEqualTo(1);
+        Assertions.assertThat(claimable).containsExactly(ids.get(1));
+        Assertions.assertThat(stolen).isEqualTo(1);
+        Assertions.assertThat(released).isEqualTo(1);
+        Assertions.assertThat(taskRepository.findByLeaseIdOrderById("lease-2")).extracting(Task::getId).containsExactly(ids.get(1));
+        Assertions.assertThat(taskRepository.findById(ids.get(0)).get().getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void reopen_ShouldRecoverTasksAndContinueIdsAndChangeStamps() {
+        List<Task> tasks = saveTasks("First", "Second", "Third");
+        taskRepository.markDeleted(tasks.get(1).getId(), null, changeStampGenerator.next());
+        long lastChangeStamp = taskLog.lastChangeStamp();
+
+        reopen();
+        Task added = taskRepository.save(getTask("Fourth"));
+
+        Assertions.assertThat(taskRepository.findAll()).extracting(Task::getName).containsExactly("First", "Third", "Fourth");
+        Assertions.assertThat(added.getId()).isEqualTo(4L);
+        Assertions.assertThat(added.getChangeStamp()).isGreaterThan(lastChangeStamp);
+        Assertions.assertThat(taskRepository.findChangedSince(0, 10)).extracting(Task::getId).containsExactly(1L, 3L, 2L, 4L);
+    }
+
+    @Test
+    public void reopen_ShouldRebuildStatusAndLeaseIndexes() {
+        List<Long> ids = saveTasks("First", "Second", "Third", "Fourth").stream().map(Task::getId).collect(Collectors.toList());
+        Instant now = Instant.now();
+        taskRepository.lease(ids.subList(0, 2), "lease-1", now, now.plusSeconds(30));
+        taskRepository.complete(ids.get(1), changeStampGenerator.next());
+        taskRepository.markDeleted(ids.get(2), null, changeStampGenerator.next());
+
+        reopen();
+        TaskQuery query = new TaskQuery();
+        query.setStatus(Status.TODO);
+        query.setSort("id,desc");
+        query.setAfter(ids.get(3));
+
+        Assertions.assertThat(taskRepository.count()).isEqualTo(3L);
+        Assertions.assertThat(taskRepository.countByStatus()).extracting(StatusCount::getStatus, StatusCount::getCount)
+                .containsExactly(Tuple.tuple(Status.TODO, 2L), Tuple.tuple(Status.DONE, 1L));
+        Assertions.assertThat(taskRepository.findClaimable(Status.TODO, now, PageRequest.of(0, 10))).containsExactly(ids.get(3));
+        Assertions.assertThat(taskRepository.findClaimable(Status.TODO, now.plusSeconds(60), PageRequest.of(0, 10))).containsExactly(ids.get(0), ids.get(3));
+        Assertions.assertThat(taskRepository.findByLeaseIdOrderById("lease-1")).extracting(Task::getId).containsExactly(ids.get(0));
+        Assertions.assertThat(taskRepository.findAll(query)).extracting(Task::getId).containsExactly(ids.get(0));
+    }
+
+    @Test
+    public void reopen_WhenLastRecordIsTorn_ShouldDropOnlyThatRecord() throws IOException {
+        saveTasks("First", "Second");
+        taskLog.close();
+
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int torn = indexOf(bytes, "Second".getBytes(StandardCharsets.UTF_8));
+        bytes[torn] = 'X';
+        Files.write(segment, bytes);
+
+        open();
+        taskRepository.save(getTask("Third"));
+        reopen();
+
+        Assertions.assertThat(taskRepository.findAll()).extracting(Task::getName).containsExactly("First", "Third");
+    }
+
+    @Test
+    public void compact_ShouldDropOverwrittenRecordsAndKeepLatest() throws IOException {
+        Task task = taskRepository.save(getTask("Rewritten"));
+        for (int i = 0; i < 100; i++) {
+            taskRepository.update(task.getId(), "Rewritten " + i, null, null, null, changeStampGenerator.next());
+        }
+        int segmentsBefore = segments().size();
+
+        while (taskLog.compact()) {
+            // drain
+        }
+        reopen();
+
+        Task found = taskRepository.findById(task.getId()).get();
+        Assertions.assertThat(segmentsBefore).isGreaterThan(2);
+        Assertions.assertThat(segments()).hasSize(1);
+        Assertions.assertThat(found.getName()).isEqualTo("Rewritten 99");
+        Assertions.assertThat(found.getVersion()).isEqualTo(100L);
+        Assertions.assertThat(taskRepository.findChangedSince(0, 10)).hasSize(1);
+    }
+
+    private void open() {
+        taskLog = new TaskLog(directory, SEGMENT_SIZE, 0.5, false, Duration.ZERO);
+        changeStampGenerator = new ChangeStampGenerator(null);
+        changeStampGenerator.advanceTo(taskLog.lastChangeStamp());
+        taskRepository = new LogTaskRepository(taskLog, changeStampGenerator);
+    }
+
+    private void reopen() {
+        taskLog.close();
+        open();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<Task> saveTasks(String... names) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (String name : names) {
+            tasks.add(taskRepository.save(getTask(name)));
+        }
+
+        return tasks;
+    }
+
+    private static Task getTask(String name) {
+        Task task = new Task();
+        task.setName(name);
+        task.setDescription("Description of " + name);
+        task.setStatus(Status.TODO);
+
+        return task;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + part.length), part)) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException();
+    }
+}
@@ -0,0 +1,236 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskBatchResultDto;
+import com.challenge.taskdemo.dto.TaskDto;
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.TaskRepository;
+import com.challenge.taskdemo.service.TaskService;
+import com.challenge.taskdemo.util.Status;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.Tuple;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharded-0;DB_CLOSE_DELAY=-1",
+        "tasks.datasource.shards=jdbc:h2:mem:sharded-1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:sharded-2;DB_CLOSE_DELAY=-1"})
+public class ShardedJpaTaskRepositoryTest {
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private JpaTaskShards jpaTaskShards;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ChangeStampGenerator changeStampGenerator;
+
+    @Test
+    public void save_ShouldSpreadTasksOverTheShardsWithIdsTheirShardsOwn() {
+        List<Task> tasks = saveTasks("Spread", 9);
+        Map<Integer, Long> perShard = tasks.stream().collect(Collectors.groupingBy(task -> jpaTaskShards.shardFor(task.getId()), Collectors.counting()));
+
+        Assertions.assertThat(AopProxyUtils.ultimateTargetClass(taskRepository)).isEqualTo(ShardedJpaTaskRepository.class);
+        Assertions.assertThat(perShard).containsOnly(entry(0, 3L), entry(1, 3L), entry(2, 3L));
+        for (Task task : tasks) {
+            int shard = jpaTaskShards.shardFor(task.getId());
+
+            Assertions.assertThat(task.getChangeStamp()).isNotNull();
+            for (int other = 0; other < jpaTaskShards.all().size(); other++) {
+                Assertions.assertThat(jpaTaskShards.all().get(other).findById(task.getId()).isPresent()).isEqualTo(other == shard);
+            }
+            Assertions.assertThat(taskRepository.findById(task.getId()).get().getName()).isEqualTo(task.getName());
+        }
+    }
+
+    @Test
+    public void rebalance_ShouldMoveTasksToTheShardOwningThem() {
+        long id = jpaTaskShards.nextId();
+        int owner = jpaTaskShards.shardFor(id);
+        int other = (owner + 1) % jpaTaskShards.all().size();
+        Task task = new Task();
+        task.setId(id);
+        task.setName("Misplaced");
+        task.setStatus(Status.TODO);
+        Task stored = jpaTaskShards.all().get(other).save(task);
+
+        int moved = jpaTaskShards.rebalance();
+
+        Assertions.assertThat(moved).isEqualTo(1);
+        Assertions.assertThat(jpaTaskShards.all().get(other).findById(id)).isEmpty();
+        Assertions.assertThat(jpaTaskShards.all().get(owner).findById(id)).hasValueSatisfying(found -> {
+            Assertions.assertThat(found.getName()).isEqualTo("Misplaced");
+            Assertions.assertThat(found.getVersion()).isEqualTo(stored.getVersion());
+            Assertions.assertThat(found.getChangeStamp()).isEqualTo(stored.getChangeStamp());
+        });
+        Assertions.assertThat(taskRepository.findById(id).get().getName()).isEqualTo("Misplaced");
+        Assertions.assertThat(jpaTaskShards.rebalance()).isZero();
+    }
+
+    @Test
+    public void findAll_WhenSortedByNameAcrossShards_ShouldMergeAndPageWithKeyset() {
+        List<Task> tasks = saveTasks("Keyset", 20);
+        List<Long> expected = tasks.stream()
+                .sorted(Comparator.comparing(Task::getName).thenComparing(Task::getId).reversed())
+                .map(Task::getId)
+                .collect(Collectors.toList());
+
+        TaskQuery query = new TaskQuery();
+        query.setNameStartsWith("Keyset");
+        query.setSort("name,desc");
+        query.setLimit(6);
+        List<Long> paged = new ArrayList<Long>();
+        List<Task> page = taskRepository.findAll(query);
+        while (!page.isEmpty()) {
+            page.forEach(task -> paged.add(task.getId()));
+            query.setAfter(page.get(page.size() - 1).getId());
+            page = taskRepository.findAll(query);
+        }
+
+        query.setAfter(null);
+        query.setLimit(null);
+        List<Tuple> names = taskRepository.findAll(query, Collections.singletonList("name"));
+
+        Assertions.assertThat(paged).containsExactlyElementsOf(expected);
+        Assertions.assertThat(names).allSatisfy(tuple -> Assertions.assertThat(tuple.getElements()).hasSize(1));
+        Assertions.assertThat(names).extracting(tuple -> tuple.get("name"))
+                .containsExactlyElementsOf(tasks.stream().map(Task::getName).sorted(Comparator.reverseOrder()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findChangedSince_ShouldMergeShardsInStampOrder() {
+        List<Task> tasks = saveTasks("Changes", 6);
+        taskRepository.markDeleted(tasks.get(0).getId(), null, stamp());
+
+        List<Task> changed = taskRepository.findChangedSince(tasks.get(1).getChangeStamp(), 100);
+
+        Assertions.assertThat(changed).extracting(Task::getId).containsExactly(tasks.get(2).getId(), tasks.get(3).getId(),
+                tasks.get(4).getId(), tasks.get(5).getId(), tasks.get(0).getId());
+        Assertions.assertThat(changed.get(4).isDeleted()).isTrue();
+    }
+
+    @Test
+    public void saveAll_WhenOneVersionIsStaleOnAnotherShard_ShouldWriteNothing() {
+        List<Task> tasks = saveTasks("Stale", 3);
+        Task first = taskRepository.findById(tasks.get(0).getId()).get();
+        Task second = taskRepository.findById(tasks.get(1).getId()).get();
+        first.setName("Changed in batch");
+        second.setName("Changed in batch");
+        second.setVersion(second.getVersion() + 1);
+
+        Assertions.assertThat(jpaTaskShards.shardFor(first.getId())).isNotEqualTo(jpaTaskShards.shardFor(second.getId()));
+        Assertions.assertThatThrownBy(() -> taskRepository.saveAll(Arrays.asList(first, second)))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        Assertions.assertThat(taskRepository.findById(first.getId()).get().getName()).isEqualTo(tasks.get(0).getName());
+        Assertions.assertThat(taskRepository.findById(first.getId()).get().getVersion()).isZero();
+    }
+
+    @Test
+    public void updateAll_AcrossShards_ShouldAnswerWithTheVersionsWritten() {
+        List<Task> tasks = saveTasks("Batch", 3);
+        List<TaskDto> changes = new ArrayList<TaskDto>();
+        for (Task task : tasks) {
+            TaskDto taskDto = new TaskDto();
+            taskDto.setId(task.getId());
+            taskDto.setName("Renamed in batch");
+            changes.add(taskDto);
+        }
+
+        List<TaskBatchResultDto> results = taskService.updateAll(changes);
+
+        Assertions.assertThat(results).extracting(TaskBatchResultDto::getStatus).containsOnly(200);
+        for (TaskBatchResultDto result : results) {
+            Task stored = taskRepository.findById(result.getId()).get();
+
+            Assertions.assertThat(stored.getName()).isEqualTo("Renamed in batch");
+            Assertions.assertThat(result.getTask().getVersion()).isEqualTo(1L).isEqualTo(stored.getVersion());
+            Assertions.assertThat(result.getTask().getChangeStamp()).isEqualTo(stored.getChangeStamp());
+        }
+    }
+
+    @Test
+    public void updateStatuses_AcrossShards_ShouldLockAndWriteEveryShard() {
+        List<Task> tasks = saveTasks("Statuses", 3);
+        Map<Long, Status> statuses = tasks.stream().collect(Collectors.toMap(Task::getId, task -> Status.DONE));
+
+        Map<Long, TaskDto> updated = taskService.updateStatuses(statuses);
+
+        Assertions.assertThat(updated).containsOnlyKeys(statuses.keySet());
+        for (Task task : tasks) {
+            Task stored = taskRepository.findById(task.getId()).get();
+
+            Assertions.assertThat(stored.getStatus()).isEqualTo(Status.DONE);
+            Assertions.assertThat(stored.getVersion()).isEqualTo(1L).isEqualTo(updated.get(task.getId()).getVersion());
+        }
+    }
+
+    @Test
+    public void findAll_ShouldMergeEveryShardInIdOrder() {
+        List<Task> tasks = saveTasks("Everything", 6);
+
+        List<Long> ids = new ArrayList<Long>();
+        taskRepository.findAll().forEach(task -> ids.add(task.getId()));
+
+        Assertions.assertThat(ids).isSorted().doesNotHaveDuplicates();
+        Assertions.assertThat(ids).containsAll(tasks.stream().map(Task::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void archive_ShouldMoveTheDoneTasksOfEveryShardToItsOwnArchive() {
+        List<Task> tasks = saveTasks("Archive", 3);
+        List<Long> ids = tasks.stream().map(Task::getId).collect(Collectors.toList());
+        for (Long id : ids) {
+            taskRepository.updateReturningPrevious(id, null, null, Status.DONE, null, stamp());
+        }
+
+        List<Long> archived = taskRepository.archive(Instant.now().plusSeconds(60), Instant.now(), 1000);
+
+        Assertions.assertThat(archived).containsAll(ids);
+        Assertions.assertThat(taskRepository.findAllById(ids)).isEmpty();
+        Assertions.assertThat(taskRepository.findArchivedIds(ids)).containsExactlyInAnyOrderElementsOf(ids);
+        for (Long id : ids) {
+            Assertions.assertThat(jpaTaskShards.owner(id).findArchivedIds(Collections.singletonList(id))).containsExactly(id);
+            Assertions.assertThat(taskRepository.findArchivedFieldsById(id, Collections.singletonList("status")).get().get("status")).isEqualTo(Status.DONE);
+        }
+    }
+
+    private List<Task> saveTasks(String prefix, int count) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (int i = 0; i < count; i++) {
+            Task task = new Task();
+            task.setName(prefix + " " + (i * 7 % count));
+            task.setDescription("Description of " + prefix);
+            task.setStatus(Status.TODO);
+            tasks.add(taskRepository.save(task));
+        }
+
+        return tasks;
+    }
+
+    private long stamp() {
+        long stamp = changeStampGenerator.next();
+        changeStampGenerator.release(stamp);
+
+        return stamp;
+    }
+
+    private static Map.Entry<Integer, Long> entry(int shard, long count) {
+        return new AbstractMap.SimpleEntry<Integer, Long>(shard, count);
+    }
+}
@@ -0,0 +1,262 @@
+package com.challenge.taskdemo.storage;
+
+import com.challenge.taskdemo.dto.TaskQuery;
+import com.challenge.taskdemo.entity.Task;
+import com.challenge.taskdemo.repository.ChangeStampGenerator;
+import com.challenge.taskdemo.repository.StatusCount;
+import com.challenge.taskdemo.util.Status;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class ShardedTaskRepositoryTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<TaskLog> logs;
+    private ChangeStampGenerator changeStampGenerator;
+    private TaskShards taskShards;
+    private ShardedTaskRepository taskRepository;
+
+    @Before
+    public void setUp() {
+        open(3);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        taskShards.close();
+    }
+
+    @Test
+    public void save_ShouldNumberTasksOnEachShardWithItsOwnIdsAndStoreEachOnThatShardOnly() {
+        List<Task> tasks = saveTasks(60);
+
+        Assertions.assertThat(tasks).extracting(Task::getId).doesNotHaveDuplicates().allMatch(id -> id > 0 && id < 200);
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+
+            Assertions.assertThat(taskShards.shardFor(task.getId())).isEqualTo(i % logs.size());
+            Assertions.assertThat(shardsHolding(task.getId())).containsExactly(taskShards.shardFor(task.getId()));
+            Assertions.assertThat(taskRepository.findById(task.getId()).get().getName()).isEqualTo(task.getName());
+            if (i >= logs.size()) {
+                Assertions.assertThat(task.getId()).isGreaterThan(tasks.get(i - logs.size()).getId());
+            }
+        }
+        for (int shard = 0; shard < logs.size(); shard++) {
+            Assertions.assertThat(taskShards.all().get(shard).count()).isEqualTo(20L);
+        }
+    }
+
+    @Test
+    public void findAll_WhenSortedByNameAcrossShards_ShouldMergeAndPageWithKeyset() {
+        List<Task> tasks = saveTasks(40);
+        List<Long> expected = tasks.stream()
+                .sorted(Comparator.comparing(Task::getName).thenComparing(Task::getId).reversed())
+                .map(Task::getId)
+                .collect(Collectors.toList());
+
+        TaskQuery query = new TaskQuery();
+        query.setSort("name,desc");
+        query.setLimit(7);
+        List<Long> paged = new ArrayList<Long>();
+        List<Task> page = taskRepository.findAll(query);
+        while (!page.isEmpty()) {
+            page.forEach(task -> paged.add(task.getId()));
+            query.setAfter(page.get(page.size() - 1).getId());
+            page = taskRepository.findAll(query);
+        }
+
+        Assertions.assertThat(paged).containsExactlyElementsOf(expected);
+        Assertions.assertThat(taskRepository.findAll()).extracting(Task::getId).containsExactlyElementsOf(sortedIds(tasks));
+    }
+
+    @Test
+    public void findChangedSince_ShouldMergeShardsInStampOrder() {
+        List<Task> tasks = saveTasks(20);
+        long since = tasks.get(9).getChangeStamp();
+        taskRepository.update(tasks.get(0).getId(), "Changed", null, null, null, changeStampGenerator.next());
+        taskRepository.markDeleted(tasks.get(1).getId(), null, changeStampGenerator.next());
+
+        List<Task> changed = taskRepository.findChangedSince(since, 100);
+
+        List<Long> ids = tasks.stream().map(Task::getId).collect(Collectors.toList());
+        Assertions.assertThat(changed).extracting(Task::getId).containsExactlyElementsOf(concat(ids.subList(10, 20), ids.subList(0, 2)));
+        Assertions.assertThat(changed.get(11).isDeleted()).isTrue();
+        Assertions.assertThat(taskRepository.findChangedSince(since, 3)).extracting(Task::getId).containsExactlyElementsOf(ids.subList(10, 13));
+    }
+
+    @Test
+    public void lease_ShouldClaimAcrossShardsAndCountByStatus() {
+        List<Long> ids = sortedIds(saveTasks(12));
+        Instant now = Instant.now();
+
+        List<Long> claimable = taskRepository.findClaimable(Status.TODO, now, PageRequest.of(1, 4));
+        int leased = taskRepository.lease(claimable, "lease-1", now, now.plusSeconds(30));
+        taskRepository.ackReturningPrevious(ids.get(4), "lease-1", now, changeStampGenerator.next());
+
+        Map<Status, Long> counts = taskRepository.countByStatus().stream()
+                .collect(Collectors.toMap(StatusCount::getStatus, StatusCount::getCount));
+        Assertions.assertThat(claimable).containsExactlyElementsOf(ids.subList(4, 8));
+        Assertions.assertThat(leased).isEqualTo(4);
+        Assertions.assertThat(taskRepository.findByLeaseIdOrderById("lease-1")).extracting(Task::getId).containsExactlyElementsOf(ids.subList(5, 8));
+        Assertions.assertThat(taskRepository.findClaimable(Status.TODO, now, PageRequest.of(0, 5)))
+                .containsExactlyElementsOf(concat(ids.subList(0, 4), ids.subList(8, 9)));
+        Assertions.assertThat(counts).containsEntry(Status.TODO, 11L).containsEntry(Status.DONE, 1L);
+        Assertions.assertThat(taskRepository.count()).isEqualTo(12L);
+    }
+
+    @Test
+    public void rebalance_AfterAddingShard_ShouldMoveOnlyTasksOfTheNewShardAndKeepEverything() throws InterruptedException {
+        taskShards.close();
+        open(2);
+        List<Task> tasks = saveTasks(300);
+        taskRepository.markDeleted(tasks.get(0).getId(), null, changeStampGenerator.next());
+        List<Long> ids = sortedIds(tasks);
+        List<Long> live = ids.stream().filter(id -> !id.equals(tasks.get(0).getId())).collect(Collectors.toList());
+        Map<Long, Integer> before = owners(ids);
+        taskShards.close();
+
+        open(3);
+        long movingId = ownedBy(live, 2);
+        Task read = taskRepository.findById(movingId).get();
+        int updated = taskRepository.update(movingId, "Updated while rebalancing", null, null, null, changeStampGenerator.next());
+        int moved = taskShards.rebalance();
+        Map<Long, Integer> after = owners(ids);
+        taskShards.close();
+        open(3);
+
+        Assertions.assertThat(read.getName()).isEqualTo(tasks.stream().filter(task -> task.getId() == movingId).findFirst().get().getName());
+        Assertions.assertThat(updated).isEqualTo(1);
+        Assertions.assertThat(moved).isBetween(50, 150);
+        for (long id : ids) {
+            Assertions.assertThat(after.get(id)).isIn(before.get(id), 2);
+            Assertions.assertThat(shardsHolding(id)).containsExactly(after.get(id));
+        }
+        Assertions.assertThat(taskShards.isRebalancing()).isTrue();
+        Assertions.assertThat(taskShards.rebalance()).isZero();
+        Assertions.assertThat(taskRepository.findById(movingId).get().getName()).isEqualTo("Updated while rebalancing");
+        Assertions.assertThat(taskRepository.findAll()).extracting(Task::getId).containsExactlyElementsOf(live);
+        Assertions.assertThat(taskRepository.findChangedSince(0, 1000)).hasSize(300).extracting(Task::getId).doesNotHaveDuplicates();
+        Assertions.assertThat(taskRepository.save(getTask("Next")).getId()).isGreaterThan(ids.get(ids.size() - 1));
+    }
+
+    @Test
+    public void rebalance_WhenAMoveWasCutShortAndTheOwnerCopyChanged_ShouldKeepTheNewerCopyAndCountItOnce() throws InterruptedException {
+        taskShards.close();
+        open(2);
+        List<Long> ids = sortedIds(saveTasks(30));
+        taskShards.close();
+
+        open(3);
+        long id = ownedBy(ids, 2);
+        // the owner got its copy but the old record was never marked as moved
+        logs.get(2).write(logs.get(heldBy(id)).get(id));
+        long counted = taskRepository.count();
+        taskRepository.update(id, "Changed on the owner", null, null, null, changeStampGenerator.next());
+        taskShards.rebalance();
+
+        Assertions.assertThat(counted).isEqualTo(30L);
+        Assertions.assertThat(taskRepository.findById(id).get().getName()).isEqualTo("Changed on the owner");
+        Assertions.assertThat(shardsHolding(id)).containsExactly(2);
+        Assertions.assertThat(taskRepository.count()).isEqualTo(30L);
+    }
+
+    @Test
+    public void saveAll_WhenOneVersionIsStaleOnAnotherShard_ShouldWriteNothing() {
+        List<Long> ids = sortedIds(saveTasks(30));
+        Task first = taskRepository.findById(ownedBy(ids, 0)).get();
+        Task second = taskRepository.findById(ownedBy(ids, 1)).get();
+        String name = first.getName();
+        first.setName("Changed in batch");
+        second.setName("Changed in batch");
+        second.setVersion(second.getVersion() + 1);
+
+        Assertions.assertThatThrownBy(() -> taskRepository.saveAll(Arrays.asList(first, second)))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        Assertions.assertThat(taskRepository.findById(first.getId()).get().getName()).isEqualTo(name);
+        Assertions.assertThat(taskRepository.findById(first.getId()).get().getVersion()).isZero();
+    }
+
+    private void open(int shards) {
+        Path root = folder.getRoot().toPath();
+        logs = new ArrayList<TaskLog>();
+        changeStampGenerator = new ChangeStampGenerator(null);
+
+        for (int shard = 0; shard < shards; shard++) {
+            logs.add(new TaskLog(root.resolve("shard-" + shard), SEGMENT_SIZE, 0.5, false, Duration.ZERO));
+            changeStampGenerator.advanceTo(logs.get(shard).lastChangeStamp());
+        }
+
+        taskShards = new TaskShards(logs, changeStampGenerator);
+        taskRepository = new ShardedTaskRepository(taskShards);
+    }
+
+    private List<Integer> shardsHolding(long id) {
+        List<Integer> shards = new ArrayList<Integer>();
+
+        for (int shard = 0; shard < logs.size(); shard++) {
+            if (logs.get(shard).holds(id)) {
+                shards.add(shard);
+            }
+        }
+
+        return shards;
+    }
+
+    private int heldBy(long id) {
+        return shardsHolding(id).get(0);
+    }
+
+    private Map<Long, Integer> owners(List<Long> ids) {
+        return ids.stream().collect(Collectors.toMap(id -> id, id -> taskShards.shardFor(id)));
+    }
+
+    private long ownedBy(List<Long> ids, int shard) {
+        return ids.stream().filter(id -> taskShards.shardFor(id) == shard).findFirst().get();
+    }
+
+    private List<Task> saveTasks(int count) {
+        List<Task> tasks = new ArrayList<Task>();
+
+        for (int i = 1; i <= count; i++) {
+            tasks.add(taskRepository.save(getTask("Task " + i)));
+        }
+
+        return tasks;
+    }
+
+    private static List<Long> sortedIds(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).sorted().collect(Collectors.toList());
+    }
+
+    private static List<Long> concat(List<Long> first, List<Long> second) {
+        List<Long> ids = new ArrayList<Long>(first);
+        ids.addAll(second);
+
+        return ids;
+    }
+
+    private static Task getTask(String name) {
+        Task task = new Task();
+        task.setName(name);
+        task.setDescription("Description of " + name);
+        task.setStatus(Status.TODO);
+
+        return task;
+    }
+}